@@ -22,8 +22,7 @@ public class InitialAdminSetup implements CommandLineRunner {
     @Override
     public void run(String... args) throws Exception {
         // Check if any admin user exists
-        boolean adminExists = userRepository.findAll().stream()
-                .anyMatch(user -> "Admin".equals(user.getRole()));
+        boolean adminExists = userRepository.existsByRole("Admin");
         
         if (!adminExists) {
             // Create initial admin user
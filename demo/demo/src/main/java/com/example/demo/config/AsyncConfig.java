@@ -0,0 +1,149 @@
+package com.example.demo.config;
+
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executors for @Async methods, background work and @Scheduled jobs.
+ *
+ * Every pool is bounded in threads and queue length, so a burst of work cannot exhaust
+ * memory; what happens when a pool is full is chosen per pool and counted (see
+ * GET /api/automated-inventory/executors):
+ * - notificationExecutor drops the alert. Alerts are best effort and must never hold up
+ *   a dispensing request.
+ * - inventoryExecutor runs the task on the calling thread, slowing the caller down
+ *   instead of losing prescription processing.
+ * - sseExecutor rejects; QueueEventService retries a display's send on its next event.
+ * - reevaluationExecutor rejects; the periodic blocked-prescription reconciliation picks up
+ *   the prescriptions a rejected restock would have re-evaluated. It has a single thread, so
+ *   re-evaluations of stock-blocked prescriptions never run in parallel with each other.
+ */
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class AsyncConfig implements AsyncConfigurer {
+
+    @Value("${async.notification.pool-size:2}")
+    private int notificationPoolSize;
+
+    @Value("${async.notification.queue-capacity:500}")
+    private int notificationQueueCapacity;
+
+    @Value("${async.inventory.pool-size:4}")
+    private int inventoryPoolSize;
+
+    @Value("${async.inventory.queue-capacity:200}")
+    private int inventoryQueueCapacity;
+
+    @Value("${async.reevaluation.queue-capacity:500}")
+    private int reevaluationQueueCapacity;
+
+    @Value("${async.sse.pool-size:4}")
+    private int ssePoolSize;
+
+    @Value("${async.sse.queue-capacity:1000}")
+    private int sseQueueCapacity;
+
+    @Value("${async.scheduler.pool-size:4}")
+    private int schedulerPoolSize;
+
+    @Bean
+    public ThreadPoolTaskExecutor notificationExecutor() {
+        return boundedExecutor("notification-", notificationPoolSize, notificationQueueCapacity,
+            new CountingRejectionHandler(new ThreadPoolExecutor.DiscardPolicy()));
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor inventoryExecutor() {
+        return boundedExecutor("inventory-", inventoryPoolSize, inventoryQueueCapacity,
+            new CountingRejectionHandler(new ThreadPoolExecutor.CallerRunsPolicy()));
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor reevaluationExecutor() {
+        return boundedExecutor("reevaluation-", 1, reevaluationQueueCapacity,
+            new CountingRejectionHandler(new ThreadPoolExecutor.AbortPolicy()));
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor sseExecutor() {
+        return boundedExecutor("queue-sse-send-", ssePoolSize, sseQueueCapacity,
+            new CountingRejectionHandler(new ThreadPoolExecutor.AbortPolicy()));
+    }
+
+    // Used by @Scheduled methods; each job is kept from overlapping itself by ScheduledJobGuard
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(schedulerPoolSize);
+        scheduler.setThreadNamePrefix("scheduled-");
+        scheduler.setDaemon(true);
+        scheduler.setErrorHandler(e -> System.err.println("Scheduled job failed: " + e.getMessage()));
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        return scheduler;
+    }
+
+    // @Async without an executor name runs on the inventory pool
+    @Override
+    public Executor getAsyncExecutor() {
+        return inventoryExecutor();
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (e, method, params) ->
+            System.err.println("Error in async " + method.getDeclaringClass().getSimpleName() + "." + method.getName() + ": " + e.getMessage());
+    }
+
+    private ThreadPoolTaskExecutor boundedExecutor(String threadNamePrefix, int poolSize, int queueCapacity,
+                                                   RejectedExecutionHandler rejectionHandler) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(rejectionHandler);
+        executor.setDaemon(true);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+
+    /**
+     * Applies a pool's rejection policy and counts how often it had to
+     */
+    public static class CountingRejectionHandler implements RejectedExecutionHandler {
+
+        private final RejectedExecutionHandler policy;
+        private final AtomicLong rejected = new AtomicLong();
+
+        CountingRejectionHandler(RejectedExecutionHandler policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            rejected.incrementAndGet();
+            policy.rejectedExecution(task, executor);
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public String getPolicy() {
+            return policy.getClass().getSimpleName();
+        }
+    }
+}
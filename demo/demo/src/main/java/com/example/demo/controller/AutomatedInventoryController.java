@@ -1,6 +1,9 @@
 package com.example.demo.controller;
 
 import com.example.demo.service.AutomatedInventoryService;
+import com.example.demo.service.ExecutorMetrics;
+import com.example.demo.service.ExpiryScheduler;
+import com.example.demo.service.IdempotencyService;
 import com.example.demo.service.NotificationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -21,6 +24,15 @@ public class AutomatedInventoryController {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private ExecutorMetrics executorMetrics;
+
+    @Autowired
+    private ExpiryScheduler expiryScheduler;
+
     /**
      * Get real-time inventory status for dashboard
      */
@@ -60,12 +72,18 @@ public class AutomatedInventoryController {
     }
 
     /**
-     * Auto-dispense prescription
+     * Auto-dispense prescription; a retry with the same Idempotency-Key gets the first response
      */
     @PostMapping("/dispense-prescription/{prescriptionId}")
     public ResponseEntity<Map<String, Object>> autoDispensePrescription(
             @PathVariable Long prescriptionId,
-            @RequestBody Map<String, Object> dispensingData) {
+            @RequestBody Map<String, Object> dispensingData,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("POST /api/automated-inventory/dispense-prescription/" + prescriptionId,
+            idempotencyKey, dispensingData, () -> autoDispensePrescriptionOnce(prescriptionId, dispensingData));
+    }
+
+    private ResponseEntity<Map<String, Object>> autoDispensePrescriptionOnce(Long prescriptionId, Map<String, Object> dispensingData) {
         try {
             String dispensedBy = (String) dispensingData.get("dispensedBy");
             if (dispensedBy == null || dispensedBy.trim().isEmpty()) {
@@ -97,7 +115,12 @@ public class AutomatedInventoryController {
     public ResponseEntity<Map<String, Object>> triggerInventoryMonitoring() {
         try {
             // Trigger manual monitoring (normally runs on schedule)
-            automatedInventoryService.monitorInventoryLevels();
+            if (!automatedInventoryService.triggerInventoryMonitoring()) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("message", "Inventory monitoring is already running");
+                return ResponseEntity.status(409).body(response);
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -223,6 +246,26 @@ public class AutomatedInventoryController {
         }
     }
 
+    /**
+     * Thread pool and scheduled job metrics: queue depth, active threads, rejections, skipped overlaps
+     */
+    @GetMapping("/executors")
+    public ResponseEntity<Map<String, Object>> getExecutorStats() {
+        Map<String, Object> stats = executorMetrics.getStats();
+        stats.put("success", true);
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Expiry transition index: medicines tracked, transitions pending and fired, next transition date
+     */
+    @GetMapping("/expiry-schedule")
+    public ResponseEntity<Map<String, Object>> getExpirySchedule() {
+        Map<String, Object> stats = expiryScheduler.getStats();
+        stats.put("success", true);
+        return ResponseEntity.ok(stats);
+    }
+
     /**
      * Configuration endpoint for automation settings
      */
@@ -8,6 +8,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -82,12 +83,18 @@ public class InventoryController {
     }
 
     @PostMapping("/check")
-    public ResponseEntity<String> runInventoryCheck() {
+    public ResponseEntity<Map<String, Object>> runInventoryCheck() {
         try {
-            inventoryService.runInventoryCheck();
-            return ResponseEntity.ok("Inventory check completed successfully");
+            // Counts of alerts created, updated, resolved and left unchanged
+            Map<String, Object> response = inventoryService.runInventoryCheck().toMap();
+            response.put("success", true);
+            response.put("message", "Inventory check completed successfully");
+            return ResponseEntity.ok(response);
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to run inventory check: " + e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Failed to run inventory check: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
 
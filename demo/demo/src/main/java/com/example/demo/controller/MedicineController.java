@@ -2,6 +2,12 @@ package com.example.demo.controller;
 
 import com.example.demo.entity.Medicine;
 import com.example.demo.repository.MedicineRepository;
+import com.example.demo.service.AutomatedInventoryService;
+import com.example.demo.service.ExpiryScheduler;
+import com.example.demo.service.IdempotencyService;
+import com.example.demo.service.InventoryLedger;
+import com.example.demo.service.MedicineCache;
+import com.example.demo.service.StockService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -9,6 +15,8 @@ import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,6 +30,24 @@ public class MedicineController {
     @Autowired
     private MedicineRepository medicineRepository;
     
+    @Autowired
+    private StockService stockService;
+    
+    @Autowired
+    private AutomatedInventoryService automatedInventoryService;
+    
+    @Autowired
+    private IdempotencyService idempotencyService;
+    
+    @Autowired
+    private MedicineCache medicineCache;
+    
+    @Autowired
+    private ExpiryScheduler expiryScheduler;
+    
+    @Autowired
+    private InventoryLedger inventoryLedger;
+    
     // Get all medicines
     @GetMapping
     public ResponseEntity<List<Medicine>> getAllMedicines() {
@@ -53,6 +79,10 @@ public class MedicineController {
             medicine.setLastUpdated(LocalDateTime.now());
             
             Medicine savedMedicine = medicineRepository.save(medicine);
+            medicineCache.refresh(savedMedicine.getId());
+            expiryScheduler.track(savedMedicine);
+            inventoryLedger.record(savedMedicine.getId(), InventoryLedger.ADDED, savedMedicine.getQuantity(),
+                savedMedicine.getQuantity(), 0, null);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -79,9 +109,8 @@ public class MedicineController {
             if (optionalMedicine.isPresent()) {
                 Medicine medicine = optionalMedicine.get();
                 
-                // Update fields
+                // Update fields; stock is not written by save (see Medicine.quantity)
                 medicine.setName(medicineDetails.getName());
-                medicine.setQuantity(medicineDetails.getQuantity());
                 medicine.setExpiry(medicineDetails.getExpiry());
                 medicine.setCategory(medicineDetails.getCategory());
                 medicine.setMinStock(medicineDetails.getMinStock());
@@ -90,6 +119,19 @@ public class MedicineController {
                 medicine.setLastUpdated(LocalDateTime.now());
                 
                 Medicine updatedMedicine = medicineRepository.save(medicine);
+                if (medicineDetails.getQuantity() != null) {
+                    // Applied to the stock as it is now, not as it was when this request read it
+                    StockService.QuantityChange change = stockService.setQuantity(id, medicineDetails.getQuantity());
+                    if (change != null) {
+                        updatedMedicine = change.medicine();
+                        // Restocked: prescriptions waiting on this medicine get another look
+                        if (updatedMedicine.getQuantity() > change.previousQuantity()) {
+                            automatedInventoryService.stockIncreased(id);
+                        }
+                    }
+                }
+                medicineCache.refresh(id);
+                expiryScheduler.track(updatedMedicine);
                 
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
@@ -117,8 +159,15 @@ public class MedicineController {
     @DeleteMapping("/{id}")
     public ResponseEntity<Map<String, Object>> deleteMedicine(@PathVariable Long id) {
         try {
-            if (medicineRepository.existsById(id)) {
+            Optional<Medicine> optionalMedicine = medicineRepository.findById(id);
+            if (optionalMedicine.isPresent()) {
+                Medicine medicine = optionalMedicine.get();
                 medicineRepository.deleteById(id);
+                medicineCache.evict(id);
+                expiryScheduler.untrack(id);
+                // The ledger ends at zero, so balances before the delete can still be worked out
+                inventoryLedger.record(id, InventoryLedger.REMOVED, medicine.getQuantity(),
+                    -medicine.getQuantity(), -medicine.getReservedQuantity(), null);
                 
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
@@ -145,31 +194,29 @@ public class MedicineController {
     @PutMapping("/{id}/quantity")
     public ResponseEntity<Map<String, Object>> updateMedicineQuantity(@PathVariable Long id, @RequestBody Map<String, Integer> request) {
         try {
-            Optional<Medicine> optionalMedicine = medicineRepository.findById(id);
-            
-            if (optionalMedicine.isPresent()) {
-                Medicine medicine = optionalMedicine.get();
-                Integer newQuantity = request.get("quantity");
+            Integer newQuantity = request.get("quantity");
+            if (newQuantity == null || newQuantity < 0) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("message", "Invalid quantity provided");
                 
-                if (newQuantity != null && newQuantity >= 0) {
-                    medicine.setQuantity(newQuantity);
-                    medicine.setLastUpdated(LocalDateTime.now());
-                    
-                    Medicine updatedMedicine = medicineRepository.save(medicine);
-                    
-                    Map<String, Object> response = new HashMap<>();
-                    response.put("success", true);
-                    response.put("message", "Medicine quantity updated successfully");
-                    response.put("medicine", updatedMedicine);
-                    
-                    return ResponseEntity.ok(response);
-                } else {
-                    Map<String, Object> response = new HashMap<>();
-                    response.put("success", false);
-                    response.put("message", "Invalid quantity provided");
-                    
-                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+            }
+            
+            // One locked UPDATE, so stock dispensed or reserved meanwhile is not written back
+            StockService.QuantityChange change = stockService.setQuantity(id, newQuantity);
+            
+            if (change != null) {
+                if (newQuantity > change.previousQuantity()) {
+                    automatedInventoryService.stockIncreased(id);
                 }
+                
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", true);
+                response.put("message", "Medicine quantity updated successfully");
+                response.put("medicine", change.medicine());
+                
+                return ResponseEntity.ok(response);
             } else {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
@@ -187,30 +234,62 @@ public class MedicineController {
     }
     
     // Dispense medicines (reduce quantities for multiple medicines)
+    // mode=partial (default) takes what is in stock; mode=all-or-nothing dispenses nothing unless every medicine is available
+    // A retry with the same Idempotency-Key gets the first response instead of taking stock again
     @PostMapping("/dispense")
-    public ResponseEntity<Map<String, Object>> dispenseMedicines(@RequestBody List<Map<String, Object>> prescribedMedicines) {
+    public ResponseEntity<Map<String, Object>> dispenseMedicines(
+            @RequestBody List<Map<String, Object>> prescribedMedicines,
+            @RequestParam(defaultValue = "partial") String mode,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("POST /api/medicines/dispense?mode=" + mode, idempotencyKey, prescribedMedicines,
+            () -> dispenseMedicinesOnce(prescribedMedicines, mode));
+    }
+    
+    private ResponseEntity<Map<String, Object>> dispenseMedicinesOnce(List<Map<String, Object>> prescribedMedicines, String mode) {
         try {
             Map<String, Object> response = new HashMap<>();
             
+            if (!"partial".equals(mode) && !"all-or-nothing".equals(mode)) {
+                response.put("success", false);
+                response.put("message", "mode must be 'partial' or 'all-or-nothing'");
+                return ResponseEntity.badRequest().body(response);
+            }
+            
+            List<StockService.StockChange> changes = new ArrayList<>();
             for (Map<String, Object> prescribedMed : prescribedMedicines) {
                 Long medicineId = Long.valueOf(prescribedMed.get("medicineId").toString());
                 Integer quantityToDispense = Integer.valueOf(prescribedMed.get("quantity").toString());
-                
-                Optional<Medicine> optionalMedicine = medicineRepository.findById(medicineId);
-                
-                if (optionalMedicine.isPresent()) {
-                    Medicine medicine = optionalMedicine.get();
-                    int currentQuantity = medicine.getQuantity();
-                    int newQuantity = Math.max(0, currentQuantity - quantityToDispense);
-                    
-                    medicine.setQuantity(newQuantity);
-                    medicine.setLastUpdated(LocalDateTime.now());
-                    medicineRepository.save(medicine);
+                changes.add(new StockService.StockChange(medicineId, quantityToDispense));
+            }
+            
+            boolean allOrNothing = "all-or-nothing".equals(mode);
+            stockService.dispenseAll(changes, allOrNothing);
+            
+            List<Map<String, Object>> results = new ArrayList<>();
+            boolean fullyDispensed = true;
+            for (StockService.StockChange change : changes) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("medicineId", change.getMedicineId());
+                result.put("requestedQuantity", change.getRequested());
+                result.put("dispensedQuantity", change.getDispensed());
+                result.put("remainingStock", change.getRemaining());
+                if (change.getError() != null) {
+                    result.put("error", change.getError());
                 }
+                fullyDispensed &= change.isFullyDispensed();
+                results.add(result);
+            }
+            
+            response.put("results", results);
+            response.put("fullyDispensed", fullyDispensed);
+            if (allOrNothing && !fullyDispensed) {
+                response.put("success", false);
+                response.put("message", "Not all medicines are available; nothing was dispensed");
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
             }
             
             response.put("success", true);
-            response.put("message", "Medicines dispensed successfully");
+            response.put("message", fullyDispensed ? "Medicines dispensed successfully" : "Medicines partially dispensed");
             
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -291,6 +370,79 @@ public class MedicineController {
         }
     }
     
+    // Inventory ledger of one medicine, newest first; from/to are ISO date-times
+    @GetMapping("/{id}/transactions")
+    public ResponseEntity<Map<String, Object>> getMedicineTransactions(
+            @PathVariable Long id,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            LocalDateTime fromTime = from != null ? LocalDateTime.parse(from) : LocalDateTime.of(1970, 1, 1, 0, 0);
+            LocalDateTime toTime = to != null ? LocalDateTime.parse(to) : LocalDateTime.now().plusDays(1);
+            response.put("success", true);
+            response.put("transactions", inventoryLedger.history(id, fromTime, toTime, Math.max(1, Math.min(limit, 1000))));
+            return ResponseEntity.ok(response);
+        } catch (DateTimeParseException e) {
+            response.put("success", false);
+            response.put("message", "from and to must be ISO date-times, e.g. 2024-01-31T09:00:00");
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "Error fetching inventory transactions: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+    
+    // Stock of a medicine at a point in time, reconstructed from the inventory ledger
+    @GetMapping("/{id}/balance")
+    public ResponseEntity<Map<String, Object>> getMedicineBalance(@PathVariable Long id, @RequestParam String at) {
+        try {
+            Map<String, Object> response = inventoryLedger.balanceAt(id, LocalDateTime.parse(at));
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (DateTimeParseException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "at must be an ISO date-time, e.g. 2024-01-31T09:00:00");
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Error reconstructing balance: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+    
+    // Inventory ledger writer figures
+    @GetMapping("/ledger")
+    public ResponseEntity<Map<String, Object>> getLedgerStats() {
+        return ResponseEntity.ok(inventoryLedger.getStats());
+    }
+    
+    // Inventory cache hit/miss figures
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(medicineCache.getStats());
+    }
+    
+    // Compare the inventory cache with the database; entries that differ are dropped and listed
+    @PostMapping("/cache/verify")
+    public ResponseEntity<Map<String, Object>> verifyCache() {
+        try {
+            Map<String, Object> response = medicineCache.verify();
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Error verifying medicine cache: " + e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+    
     // Initialize default medicines (for first-time setup)
     @PostMapping("/initialize")
     public ResponseEntity<Map<String, Object>> initializeDefaultMedicines() {
@@ -319,7 +471,10 @@ public class MedicineController {
             };
             
             for (Medicine medicine : defaultMedicines) {
-                medicineRepository.save(medicine);
+                Medicine savedMedicine = medicineRepository.save(medicine);
+                expiryScheduler.track(savedMedicine);
+                inventoryLedger.record(savedMedicine.getId(), InventoryLedger.ADDED, savedMedicine.getQuantity(),
+                    savedMedicine.getQuantity(), 0, null);
             }
             
             Map<String, Object> response = new HashMap<>();
@@ -336,4 +491,4 @@ public class MedicineController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
-}
\ No newline at end of file
+}
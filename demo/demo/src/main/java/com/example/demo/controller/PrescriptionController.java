@@ -1,12 +1,22 @@
 package com.example.demo.controller;
 
+import com.example.demo.dto.PrescriptionCursor;
+import com.example.demo.dto.PrescriptionDto;
+import com.example.demo.dto.PrescriptionSummaryDto;
 import com.example.demo.entity.Prescription;
 import com.example.demo.entity.PrescriptionMedicine;
 import com.example.demo.repository.PrescriptionRepository;
 import com.example.demo.repository.PrescriptionMedicineRepository;
 import com.example.demo.repository.MedicineRepository;
 import com.example.demo.entity.Medicine;
+import com.example.demo.service.AutomatedInventoryService;
+import com.example.demo.service.IdempotencyService;
 import com.example.demo.service.InventoryService;
+import com.example.demo.service.PrescriptionClaimService;
+import com.example.demo.service.PrescriptionQueryService;
+import com.example.demo.service.PrescriptionStatistics;
+import com.example.demo.service.PrescriptionWriteService;
+import com.example.demo.service.ReservationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -23,6 +33,11 @@ import java.util.Optional;
 @CrossOrigin(origins = "*")
 public class PrescriptionController {
     
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    
     @Autowired
     private PrescriptionRepository prescriptionRepository;
     
@@ -35,30 +50,47 @@ public class PrescriptionController {
     @Autowired
     private InventoryService inventoryService;
     
+    @Autowired
+    private PrescriptionQueryService prescriptionQueryService;
+    
+    @Autowired
+    private PrescriptionWriteService prescriptionWriteService;
+    
+    @Autowired
+    private IdempotencyService idempotencyService;
+    
+    @Autowired
+    private PrescriptionClaimService prescriptionClaimService;
+    
+    @Autowired
+    private ReservationService reservationService;
+    
+    @Autowired
+    private PrescriptionStatistics prescriptionStatistics;
+    
+    @Autowired
+    private AutomatedInventoryService automatedInventoryService;
+    
     // Get all prescriptions
     @GetMapping
-    public ResponseEntity<List<Prescription>> getAllPrescriptions() {
-        try {
-            List<Prescription> prescriptions = prescriptionRepository.findAll();
-            return ResponseEntity.ok(prescriptions);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+    public ResponseEntity<List<PrescriptionSummaryDto>> getAllPrescriptions(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return listPage(null, null, cursor, limit);
     }
     
     // Get prescription by ID with medicines
     @GetMapping("/{id}")
     public ResponseEntity<Map<String, Object>> getPrescriptionById(@PathVariable Long id) {
         try {
-            Optional<Prescription> optionalPrescription = prescriptionRepository.findById(id);
+            Optional<PrescriptionDto> optionalPrescription = prescriptionQueryService.findById(id);
             
             if (optionalPrescription.isPresent()) {
-                Prescription prescription = optionalPrescription.get();
-                List<PrescriptionMedicine> medicines = prescriptionMedicineRepository.findByPrescriptionIdOrderByCreatedDateAsc(id);
+                PrescriptionDto prescription = optionalPrescription.get();
                 
                 Map<String, Object> response = new HashMap<>();
                 response.put("prescription", prescription);
-                response.put("medicines", medicines);
+                response.put("medicines", prescription.medicines());
                 response.put("success", true);
                 
                 return ResponseEntity.ok(response);
@@ -78,9 +110,16 @@ public class PrescriptionController {
         }
     }
     
-    // Create new prescription (from doctor)
+    // Create new prescription (from doctor); a retry with the same Idempotency-Key gets the first response
     @PostMapping
-    public ResponseEntity<Map<String, Object>> createPrescription(@RequestBody Map<String, Object> prescriptionData) {
+    public ResponseEntity<Map<String, Object>> createPrescription(
+            @RequestBody Map<String, Object> prescriptionData,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("POST /api/prescriptions", idempotencyKey, prescriptionData,
+            () -> createPrescriptionOnce(prescriptionData));
+    }
+    
+    private ResponseEntity<Map<String, Object>> createPrescriptionOnce(Map<String, Object> prescriptionData) {
         try {
             // Extract prescription details
             String patientName = (String) prescriptionData.get("patientName");
@@ -117,7 +156,6 @@ public class PrescriptionController {
             prescription.setDoctorName(doctorName);
             prescription.setPrescriptionText(prescriptionText);
             prescription.setInstructions(instructions);
-            prescription.setTotalMedicines(medicinesData != null ? medicinesData.size() : 0);
             prescription.setStatus("Pending");
             
             // Save digital signature if provided
@@ -137,55 +175,8 @@ public class PrescriptionController {
                 System.out.println("⚠️ No digital signature provided");
             }
             
-            // Save prescription
-            Prescription savedPrescription = prescriptionRepository.save(prescription);
-            
-            // Create prescription medicines
-            if (medicinesData != null && !medicinesData.isEmpty()) {
-                for (Map<String, Object> medicineData : medicinesData) {
-                    PrescriptionMedicine prescriptionMedicine = new PrescriptionMedicine();
-                    prescriptionMedicine.setPrescription(savedPrescription);
-                    
-                    Object medicineIdObj = medicineData.get("medicineId");
-                    if (medicineIdObj != null) {
-                        Long medicineId = Long.valueOf(medicineIdObj.toString());
-                        prescriptionMedicine.setMedicineId(medicineId);
-                    }
-                    
-                    prescriptionMedicine.setMedicineName((String) medicineData.get("medicineName"));
-                    prescriptionMedicine.setDosage((String) medicineData.get("dosage"));
-                    prescriptionMedicine.setFrequency((String) medicineData.get("frequency"));
-                    prescriptionMedicine.setDuration((String) medicineData.get("duration"));
-                    prescriptionMedicine.setInstructions((String) medicineData.get("instructions"));
-                    
-                    Object quantityObj = medicineData.get("quantity");
-                    if (quantityObj != null) {
-                        prescriptionMedicine.setQuantity(Integer.valueOf(quantityObj.toString()));
-                    }
-                    
-                    prescriptionMedicineRepository.save(prescriptionMedicine);
-                }
-            }
-            
-            // Check medicine availability for the prescription
-            try {
-                List<PrescriptionMedicine> prescriptionMedicines = prescriptionMedicineRepository.findByPrescriptionIdOrderByCreatedDateAsc(savedPrescription.getId());
-                Map<String, Object> availability = inventoryService.checkMedicineAvailability(prescriptionMedicines);
-                
-                // Update inventory status on prescription
-                Boolean allAvailable = (Boolean) availability.get("allAvailable");
-                if (allAvailable != null && !allAvailable) {
-                    savedPrescription.setInventoryStatus("Partial Stock Available");
-                } else {
-                    savedPrescription.setInventoryStatus("All Medicines Available");
-                }
-                prescriptionRepository.save(savedPrescription);
-                
-            } catch (Exception e) {
-                System.err.println("Error in prescription inventory check: " + e.getMessage());
-                savedPrescription.setInventoryStatus("Inventory Check Failed");
-                prescriptionRepository.save(savedPrescription);
-            }
+            // Save prescription and its medicines; inventory status is worked out before the first write
+            Prescription savedPrescription = prescriptionWriteService.create(prescription, medicinesData);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -206,47 +197,85 @@ public class PrescriptionController {
         }
     }
     
-    // Get pending prescriptions (for pharmacy queue)
+    // Get pending prescriptions (for pharmacy queue), with their medicines loaded in one extra query
     @GetMapping("/pending")
-    public ResponseEntity<List<Map<String, Object>>> getPendingPrescriptions() {
+    public ResponseEntity<List<PrescriptionDto>> getPendingPrescriptions() {
         try {
-            List<Prescription> prescriptions = prescriptionRepository.findPendingPrescriptions();
-            List<Map<String, Object>> response = prescriptions.stream().map(prescription -> {
-                Map<String, Object> prescriptionData = new HashMap<>();
-                prescriptionData.put("id", prescription.getId());
-                prescriptionData.put("patientName", prescription.getPatientName());
-                prescriptionData.put("patientId", prescription.getPatientId());
-                prescriptionData.put("studentId", prescription.getStudentId());
-                prescriptionData.put("queueNo", prescription.getQueueNo());
-                prescriptionData.put("doctorName", prescription.getDoctorName());
-                prescriptionData.put("prescriptionText", prescription.getPrescriptionText());
-                prescriptionData.put("status", prescription.getStatus());
-                prescriptionData.put("totalMedicines", prescription.getTotalMedicines());
-                prescriptionData.put("instructions", prescription.getInstructions());
-                prescriptionData.put("createdDate", prescription.getCreatedDate().toString());
-                
-                // Get medicines for this prescription
-                List<PrescriptionMedicine> medicines = prescriptionMedicineRepository.findByPrescriptionIdOrderByCreatedDateAsc(prescription.getId());
-                prescriptionData.put("medicines", medicines);
-                
-                return prescriptionData;
-            }).toList();
-            
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(prescriptionQueryService.findPending());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
     
-    // Get prescriptions by status
-    @GetMapping("/status/{status}")
-    public ResponseEntity<List<Prescription>> getPrescriptionsByStatus(@PathVariable String status) {
+    // Claim the oldest unclaimed pending prescription for a pharmacist
+    @PostMapping("/claim-next")
+    public ResponseEntity<Map<String, Object>> claimNextPrescription(@RequestBody Map<String, Object> claimData) {
+        Map<String, Object> response = new HashMap<>();
+        String pharmacist = (String) claimData.get("pharmacist");
+        if (pharmacist == null || pharmacist.isBlank()) {
+            response.put("success", false);
+            response.put("message", "pharmacist is required");
+            return ResponseEntity.badRequest().body(response);
+        }
+        
         try {
-            List<Prescription> prescriptions = prescriptionRepository.findByStatusOrderByCreatedDateDesc(status);
-            return ResponseEntity.ok(prescriptions);
+            Optional<PrescriptionClaimService.Claim> claim = prescriptionClaimService.claimNext(pharmacist);
+            if (claim.isEmpty()) {
+                response.put("success", false);
+                response.put("message", "No unclaimed pending prescriptions");
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+            
+            response.put("success", true);
+            response.put("prescription", claim.get().prescription());
+            response.put("claimedBy", pharmacist);
+            response.put("leaseExpiresAt", claim.get().leaseExpiresAt());
+            return ResponseEntity.ok(response);
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            response.put("success", false);
+            response.put("message", "Error claiming prescription: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+    
+    // Extend the lease on a claimed prescription
+    @PostMapping("/{id}/lease/renew")
+    public ResponseEntity<Map<String, Object>> renewLease(@PathVariable Long id, @RequestBody Map<String, Object> claimData) {
+        Map<String, Object> response = new HashMap<>();
+        Optional<LocalDateTime> expiresAt = prescriptionClaimService.renew(id, (String) claimData.get("pharmacist"));
+        if (expiresAt.isEmpty()) {
+            response.put("success", false);
+            response.put("message", "Lease is not held by this pharmacist or has expired");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
+        
+        response.put("success", true);
+        response.put("leaseExpiresAt", expiresAt.get());
+        return ResponseEntity.ok(response);
+    }
+    
+    // Hand a claimed prescription back to the queue
+    @PostMapping("/{id}/lease/release")
+    public ResponseEntity<Map<String, Object>> releaseLease(@PathVariable Long id, @RequestBody Map<String, Object> claimData) {
+        Map<String, Object> response = new HashMap<>();
+        if (!prescriptionClaimService.release(id, (String) claimData.get("pharmacist"))) {
+            response.put("success", false);
+            response.put("message", "Prescription is not claimed by this pharmacist");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
         }
+        
+        response.put("success", true);
+        response.put("message", "Prescription returned to the queue");
+        return ResponseEntity.ok(response);
+    }
+    
+    // Get prescriptions by status
+    @GetMapping("/status/{status}")
+    public ResponseEntity<List<PrescriptionSummaryDto>> getPrescriptionsByStatus(
+            @PathVariable String status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return listPage(status, null, cursor, limit);
     }
     
     // Update prescription status
@@ -270,6 +299,13 @@ public class PrescriptionController {
                 
                 Prescription updatedPrescription = prescriptionRepository.save(prescription);
                 
+                // A closed prescription no longer needs its reserved stock
+                if ("Cancelled".equals(newStatus) || "Completed".equals(newStatus)) {
+                    for (Long medicineId : reservationService.release(id)) {
+                        automatedInventoryService.stockIncreased(medicineId);
+                    }
+                }
+                
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
                 response.put("message", "Prescription status updated successfully");
@@ -294,10 +330,30 @@ public class PrescriptionController {
     
     // Search prescriptions
     @GetMapping("/search")
-    public ResponseEntity<List<Prescription>> searchPrescriptions(@RequestParam String term) {
+    public ResponseEntity<List<PrescriptionSummaryDto>> searchPrescriptions(
+            @RequestParam String term,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return listPage(null, term, cursor, limit);
+    }
+    
+    // One keyset page of list rows; the cursor for the next page goes in the X-Next-Cursor header
+    private ResponseEntity<List<PrescriptionSummaryDto>> listPage(String status, String term, String cursor, Integer limit) {
+        PrescriptionCursor position;
         try {
-            List<Prescription> prescriptions = prescriptionRepository.searchPrescriptions(term);
-            return ResponseEntity.ok(prescriptions);
+            position = PrescriptionCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        
+        try {
+            PrescriptionQueryService.Page page = prescriptionQueryService.listPage(status, term, position, size);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.nextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+            }
+            return response.body(page.items());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
@@ -306,6 +362,11 @@ public class PrescriptionController {
     // Get prescription statistics
     @GetMapping("/statistics")
     public ResponseEntity<Map<String, Object>> getPrescriptionStatistics() {
+        // Served from memory once the counters are seeded
+        if (prescriptionStatistics.isSeeded()) {
+            return ResponseEntity.ok(prescriptionStatistics.getStats());
+        }
+        
         try {
             Map<String, Object> stats = new HashMap<>();
             
@@ -340,11 +401,17 @@ public class PrescriptionController {
         }
     }
     
-    // Dispense prescription medicines
+    // Dispense prescription medicines; a retry with the same Idempotency-Key does not take stock again
     @PostMapping("/{id}/dispense")
     public ResponseEntity<Map<String, Object>> dispensePrescription(
             @PathVariable Long id,
-            @RequestBody Map<String, Object> dispensingData) {
+            @RequestBody Map<String, Object> dispensingData,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("POST /api/prescriptions/" + id + "/dispense", idempotencyKey, dispensingData,
+            () -> dispensePrescriptionOnce(id, dispensingData));
+    }
+    
+    private ResponseEntity<Map<String, Object>> dispensePrescriptionOnce(Long id, Map<String, Object> dispensingData) {
         try {
             Optional<Prescription> optionalPrescription = prescriptionRepository.findById(id);
             
@@ -358,6 +425,15 @@ public class PrescriptionController {
             Prescription prescription = optionalPrescription.get();
             String dispensedBy = (String) dispensingData.get("dispensedBy");
             
+            // Another pharmacist is working on this one
+            if (prescription.isLeasedToOtherThan(dispensedBy, LocalDateTime.now())) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("message", "Prescription is claimed by " + prescription.getClaimedBy());
+                response.put("leaseExpiresAt", prescription.getLeaseExpiresAt());
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            }
+            
             @SuppressWarnings("unchecked")
             List<Map<String, Object>> dispensedMedicines = (List<Map<String, Object>>) dispensingData.get("medicines");
             
@@ -390,6 +466,8 @@ public class PrescriptionController {
             // Update prescription status
             prescription.setStatus("In Progress");
             prescription.setDispensedBy(dispensedBy);
+            prescription.setClaimedBy(null);
+            prescription.setLeaseExpiresAt(null);
             
             // Check if all medicines are fully dispensed
             List<PrescriptionMedicine> allMedicines = prescriptionMedicineRepository.findByPrescriptionIdOrderByCreatedDateAsc(id);
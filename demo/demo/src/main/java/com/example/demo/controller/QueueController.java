@@ -1,12 +1,30 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.QueueEntry;
+import com.example.demo.model.QueueEntryPayload;
 import com.example.demo.repository.QueueEntryRepository;
+import com.example.demo.service.DuplicateCheckInDetector;
+import com.example.demo.service.QueueEntryPayloadService;
+import com.example.demo.service.QueueEventService;
+import com.example.demo.service.QueueHistoryService;
+import com.example.demo.service.QueueIndex;
+import com.example.demo.service.QueueNumberAllocator;
+import com.example.demo.service.QueueScheduler;
+import com.example.demo.service.QueueStatistics;
+import com.example.demo.service.QueueTransitionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 
 @RestController
@@ -17,29 +35,45 @@ public class QueueController {
     @Autowired
     private QueueEntryRepository queueEntryRepository;
 
-    private int queueCounter = 1; // Starting queue number from 1
+    @Autowired
+    private QueueNumberAllocator queueNumberAllocator;
 
-    // Generate unique queue number
-    private synchronized String generateQueueNumber() {
-        // Check for the highest existing queue number in database to avoid duplicates
-        try {
-            String maxQueueNo = queueEntryRepository.findMaxQueueNo();
-            if (maxQueueNo != null && !maxQueueNo.isEmpty()) {
-                int maxNum = Integer.parseInt(maxQueueNo);
-                queueCounter = Math.max(queueCounter, maxNum + 1);
-            } else {
-                // If no entries exist, start from 1
-                queueCounter = 1;
-            }
-        } catch (Exception e) {
-            // If there's an error, continue with current counter
-            System.err.println("Warning: Could not get max queue number from database: " + e.getMessage());
-        }
-        
-        String queueNo = String.format("%03d", queueCounter);
-        queueCounter++;
-        return queueNo;
-    }
+    @Autowired
+    private QueueEventService queueEventService;
+
+    @Autowired
+    private QueueIndex queueIndex;
+
+    @Autowired
+    private DuplicateCheckInDetector duplicateCheckInDetector;
+
+    @Autowired
+    private QueueEntryPayloadService queueEntryPayloadService;
+
+    @Autowired
+    private QueueStatistics queueStatistics;
+
+    @Autowired
+    private QueueTransitionService queueTransitionService;
+
+    @Autowired
+    private QueueHistoryService queueHistoryService;
+
+    @Autowired
+    private QueueScheduler queueScheduler;
+
+    @Value("${queue.transitions.max-batch:500}")
+    private int maxTransitionBatch;
+
+    private static final Set<String> PAYLOAD_TYPES = Set.of(QueueEntryPayload.MEDICAL_DATA, QueueEntryPayload.PRESCRIPTION);
+
+    private static final String TRANSITION_ALL_OR_NOTHING = "all-or-nothing";
+    private static final String TRANSITION_BEST_EFFORT = "best-effort";
+
+    private static final Set<String> STREAM_STAGES = Set.of("reception", "doctor", "pharmacy", QueueEventService.ALL_STAGES);
+
+    // Tries at saving a new entry when its queue number is already taken (see QueueNumberAllocator)
+    private static final int MAX_QUEUE_NUMBER_ATTEMPTS = 3;
 
     // Add student to reception queue
     @PostMapping("/add-student")
@@ -58,10 +92,10 @@ public class QueueController {
             String medicalRecordId = (String) medicalData.get("id");
 
             // Check for duplicates in reception queue only
-            List<QueueEntry> duplicates = queueEntryRepository.findDuplicates(email, nic, medicalRecordId);
+            Optional<QueueEntry> duplicate = findReceptionDuplicate(email, nic, medicalRecordId);
             
-            if (!duplicates.isEmpty()) {
-                QueueEntry existingEntry = duplicates.get(0);
+            if (duplicate.isPresent()) {
+                QueueEntry existingEntry = duplicate.get();
                 response.put("isDuplicate", true);
                 response.put("message", "Student " + student.get("fullName") + " is already in the reception queue (Queue #" + existingEntry.getQueueNo() + ")");
                 response.put("queueEntry", convertToMap(existingEntry));
@@ -69,30 +103,39 @@ public class QueueController {
             }
             
             // Check if student exists in other stages for informational purposes
-            List<QueueEntry> anyExisting = queueEntryRepository.findAnyExistingEntry(email, nic, medicalRecordId);
             String existingStageInfo = "";
-            if (!anyExisting.isEmpty()) {
-                QueueEntry existingInOtherStage = anyExisting.get(0);
-                if (!existingInOtherStage.getStage().equals("reception")) {
-                    existingStageInfo = " (Note: Student was previously in " + existingInOtherStage.getStage() + " queue)";
-                }
+            Optional<String> existingStage = findExistingStage(email, nic, medicalRecordId);
+            if (existingStage.isPresent() && !existingStage.get().equals("reception")) {
+                existingStageInfo = " (Note: Student was previously in " + existingStage.get() + " queue)";
             }
 
-            // Create new queue entry
-            String queueNumber = generateQueueNumber();
-            QueueEntry queueEntry = new QueueEntry(
-                queueNumber,
-                (String) student.get("fullName"),
-                (String) student.get("studentRegistrationNumber"),
-                email,
-                nic,
-                (String) student.get("telephoneNumber"),
-                medicalRecordId,
-                request.toString() // Store medical data as JSON string
-            );
-
-            // Save to database
-            QueueEntry savedEntry = queueEntryRepository.save(queueEntry);
+            QueueEntry savedEntry = null;
+            for (int attempt = 1; savedEntry == null; attempt++) {
+                // Create new queue entry
+                String queueNumber = queueNumberAllocator.nextQueueNumber();
+                QueueEntry queueEntry = new QueueEntry(
+                    queueNumber,
+                    (String) student.get("fullName"),
+                    (String) student.get("studentRegistrationNumber"),
+                    email,
+                    nic,
+                    (String) student.get("telephoneNumber"),
+                    medicalRecordId
+                );
+
+                // Save to database with the full request as compressed JSON beside the entry, in one
+                // transaction; the index, duplicate detector and stream only hear of it once committed
+                try {
+                    savedEntry = queueEntryPayloadService.createWithPayload(queueEntry, QueueEntryPayload.MEDICAL_DATA, request);
+                } catch (DataIntegrityViolationException e) {
+                    // A block reserved before another node reset the numbering can repeat a number; take a fresh block
+                    if (attempt >= MAX_QUEUE_NUMBER_ATTEMPTS || queueEntryRepository.findByQueueNo(queueNumber).isEmpty()) {
+                        throw e;
+                    }
+                    queueNumberAllocator.discardBlock();
+                }
+            }
+            recordChange("added", null, savedEntry);
 
             response.put("isDuplicate", false);
             response.put("success", true);
@@ -112,14 +155,7 @@ public class QueueController {
     @GetMapping("/reception")
     public ResponseEntity<List<Map<String, Object>>> getReceptionQueue() {
         try {
-            List<QueueEntry> queue = queueEntryRepository.findByStageOrderByAddedTimeAsc("reception");
-            List<Map<String, Object>> responseQueue = new ArrayList<>();
-            
-            for (QueueEntry entry : queue) {
-                responseQueue.add(convertToMap(entry));
-            }
-            
-            return ResponseEntity.ok(responseQueue);
+            return ResponseEntity.ok(toScheduledList("reception", loadStage("reception")));
         } catch (Exception e) {
             return ResponseEntity.status(500).body(new ArrayList<>());
         }
@@ -129,14 +165,7 @@ public class QueueController {
     @GetMapping("/doctor")
     public ResponseEntity<List<Map<String, Object>>> getDoctorQueue() {
         try {
-            List<QueueEntry> queue = queueEntryRepository.findByStageOrderByAddedTimeAsc("doctor");
-            List<Map<String, Object>> responseQueue = new ArrayList<>();
-            
-            for (QueueEntry entry : queue) {
-                responseQueue.add(convertToMap(entry));
-            }
-            
-            return ResponseEntity.ok(responseQueue);
+            return ResponseEntity.ok(toScheduledList("doctor", loadStage("doctor")));
         } catch (Exception e) {
             return ResponseEntity.status(500).body(new ArrayList<>());
         }
@@ -146,14 +175,7 @@ public class QueueController {
     @GetMapping("/pharmacy")
     public ResponseEntity<List<Map<String, Object>>> getPharmacyQueue() {
         try {
-            List<QueueEntry> queue = queueEntryRepository.findByStageOrderByAddedTimeAsc("pharmacy");
-            List<Map<String, Object>> responseQueue = new ArrayList<>();
-            
-            for (QueueEntry entry : queue) {
-                responseQueue.add(convertToMap(entry));
-            }
-            
-            return ResponseEntity.ok(responseQueue);
+            return ResponseEntity.ok(toScheduledList("pharmacy", loadStage("pharmacy")));
         } catch (Exception e) {
             return ResponseEntity.status(500).body(new ArrayList<>());
         }
@@ -165,20 +187,14 @@ public class QueueController {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            Optional<QueueEntry> optionalEntry = queueEntryRepository.findByQueueNo(queueNo);
-            
-            if (!optionalEntry.isPresent()) {
-                response.put("success", false);
-                response.put("error", "Student not found in queue");
-                return ResponseEntity.notFound().build();
+            QueueTransitionService.Transition transition =
+                queueTransitionService.transition(queueNo, Map.of("targetStage", "doctor"), true);
+            if (!transition.isApplied()) {
+                return transitionRejected(transition, response);
             }
 
-            QueueEntry entry = optionalEntry.get();
-            entry.setStage("doctor");
-            entry.setStatus("Waiting for Doctor");
-            entry.setMovedToDoctorTime(LocalDateTime.now());
-
-            QueueEntry updatedEntry = queueEntryRepository.save(entry);
+            QueueEntry updatedEntry = transition.getEntry();
+            recordChange("moved", transition.getPreviousStage(), updatedEntry);
 
             response.put("success", true);
             response.put("message", "Student moved to doctor queue successfully");
@@ -201,22 +217,14 @@ public class QueueController {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            Optional<QueueEntry> optionalEntry = queueEntryRepository.findByQueueNo(queueNo);
-            
-            if (!optionalEntry.isPresent()) {
-                response.put("success", false);
-                response.put("error", "Student not found in queue");
-                return ResponseEntity.notFound().build();
+            QueueTransitionService.Transition transition = queueTransitionService.transition(
+                queueNo, Map.of("targetStage", "pharmacy"), true, QueueEntryPayload.PRESCRIPTION, prescriptionData);
+            if (!transition.isApplied()) {
+                return transitionRejected(transition, response);
             }
 
-            QueueEntry entry = optionalEntry.get();
-            entry.setStage("pharmacy");
-            entry.setStatus("Prescription Ready");
-            entry.setPrescriptionTime(LocalDateTime.now());
-            entry.setPrescription(prescriptionData.toString()); // Store as JSON string
-            entry.setPharmacyStatus("Pending");
-
-            QueueEntry updatedEntry = queueEntryRepository.save(entry);
+            QueueEntry updatedEntry = transition.getEntry();
+            recordChange("moved", transition.getPreviousStage(), updatedEntry);
 
             response.put("success", true);
             response.put("message", "Student moved to pharmacy queue with prescription");
@@ -237,21 +245,14 @@ public class QueueController {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            Optional<QueueEntry> optionalEntry = queueEntryRepository.findByQueueNo(queueNo);
-            
-            if (!optionalEntry.isPresent()) {
-                response.put("success", false);
-                response.put("error", "Student not found in queue");
-                return ResponseEntity.notFound().build();
+            QueueTransitionService.Transition transition =
+                queueTransitionService.transition(queueNo, Map.of("targetStage", "completed"), true);
+            if (!transition.isApplied()) {
+                return transitionRejected(transition, response);
             }
 
-            QueueEntry entry = optionalEntry.get();
-            entry.setStage("completed");
-            entry.setStatus("Completed");
-            entry.setCompletedTime(LocalDateTime.now());
-            entry.setPharmacyStatus("Dispensed");
-
-            QueueEntry updatedEntry = queueEntryRepository.save(entry);
+            QueueEntry updatedEntry = transition.getEntry();
+            recordChange("completed", transition.getPreviousStage(), updatedEntry);
 
             response.put("success", true);
             response.put("message", "Student process completed successfully");
@@ -266,6 +267,85 @@ public class QueueController {
         }
     }
 
+    // Apply several stage/status/priority changes in one transaction
+    @PostMapping("/transitions")
+    public ResponseEntity<Map<String, Object>> applyTransitions(@RequestBody Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            String mode = request.get("mode") != null ? request.get("mode").toString() : TRANSITION_ALL_OR_NOTHING;
+            if (!TRANSITION_ALL_OR_NOTHING.equals(mode) && !TRANSITION_BEST_EFFORT.equals(mode)) {
+                response.put("success", false);
+                response.put("error", "mode must be '" + TRANSITION_ALL_OR_NOTHING + "' or '" + TRANSITION_BEST_EFFORT + "'");
+                return ResponseEntity.badRequest().body(response);
+            }
+
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> operations = (List<Map<String, Object>>) request.get("operations");
+            if (operations == null || operations.isEmpty()) {
+                response.put("success", false);
+                response.put("error", "operations must be a non-empty list");
+                return ResponseEntity.badRequest().body(response);
+            }
+            if (operations.size() > maxTransitionBatch) {
+                response.put("success", false);
+                response.put("error", "At most " + maxTransitionBatch + " operations are accepted per batch");
+                return ResponseEntity.badRequest().body(response);
+            }
+
+            List<QueueTransitionService.Transition> transitions =
+                queueTransitionService.apply(operations, TRANSITION_ALL_OR_NOTHING.equals(mode));
+
+            // Index, statistics and displays are only told once the batch has committed
+            List<Map<String, Object>> results = new ArrayList<>();
+            int applied = 0;
+            for (QueueTransitionService.Transition transition : transitions) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("queueNo", transition.getQueueNo());
+                result.put("success", transition.isApplied());
+                if (transition.isApplied()) {
+                    QueueEntry entry = transition.getEntry();
+                    String previousStage = transition.getPreviousStage();
+                    if (previousStage.equals(entry.getStage())) {
+                        recordChange("updated", previousStage, entry);
+                    } else {
+                        recordChange("completed".equals(entry.getStage()) ? "completed" : "moved", previousStage, entry);
+                    }
+                    result.put("queueEntry", convertToMap(entry));
+                    applied++;
+                } else {
+                    result.put("error", transition.getError());
+                }
+                results.add(result);
+            }
+
+            boolean allApplied = applied == transitions.size();
+            response.put("success", allApplied);
+            response.put("mode", mode);
+            response.put("applied", applied);
+            response.put("failed", transitions.size() - applied);
+            response.put("results", results);
+            response.put("message", allApplied
+                ? "All " + applied + " transitions applied"
+                : applied + " of " + transitions.size() + " transitions applied");
+            
+            if (!allApplied && applied == 0) {
+                return ResponseEntity.badRequest().body(response);
+            }
+            return ResponseEntity.ok(response);
+
+        } catch (ObjectOptimisticLockingFailureException e) {
+            // Another request changed one of the entries between the batch's read and its flush
+            response.put("success", false);
+            response.put("error", "An entry in the batch was changed by another user; nothing was applied");
+            return ResponseEntity.status(409).body(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "Failed to apply transitions: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
     // Get student by queue number
     @GetMapping("/student/{queueNo}")
     public ResponseEntity<Map<String, Object>> getStudentByQueueNumber(@PathVariable String queueNo) {
@@ -284,6 +364,44 @@ public class QueueController {
         }
     }
 
+    // Stream the medical data or prescription payload of one entry as JSON
+    @GetMapping("/student/{queueNo}/payload/{type}")
+    public ResponseEntity<StreamingResponseBody> getEntryPayload(
+            @PathVariable String queueNo,
+            @PathVariable String type,
+            @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding) {
+        try {
+            if (!PAYLOAD_TYPES.contains(type)) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            Optional<QueueEntry> optionalEntry = queueIndex.findActive(queueNo);
+            if (!optionalEntry.isPresent()) {
+                optionalEntry = queueEntryRepository.findByQueueNo(queueNo);
+            }
+            // Payloads are deleted when their entry is archived
+            if (!optionalEntry.isPresent()) {
+                return ResponseEntity.notFound().build();
+            }
+
+            Optional<QueueEntryPayload> payload = queueEntryPayloadService.find(optionalEntry.get().getId(), type);
+            if (!payload.isPresent()) {
+                return ResponseEntity.notFound().build();
+            }
+
+            boolean gzipAccepted = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Vary", "Accept-Encoding");
+            if (gzipAccepted) {
+                builder.header("Content-Encoding", "gzip");
+            }
+            return builder.body(out -> queueEntryPayloadService.writeTo(payload.get(), out, gzipAccepted));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).build();
+        }
+    }
+
     // Update queue entry status
     @PutMapping("/update-status/{queueNo}")
     public ResponseEntity<Map<String, Object>> updateQueueEntryStatus(
@@ -292,33 +410,25 @@ public class QueueController {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            Optional<QueueEntry> optionalEntry = queueEntryRepository.findByQueueNo(queueNo);
-            
-            if (!optionalEntry.isPresent()) {
-                response.put("success", false);
-                response.put("error", "Entry not found in queue");
-                return ResponseEntity.notFound().build();
+            // Status and priority are optional; a stage change must follow the allowed transitions
+            Map<String, Object> operation = new HashMap<>();
+            operation.put("status", updates.get("status"));
+            operation.put("priority", updates.get("priority"));
+            operation.put("targetStage", updates.get("stage"));
+
+            QueueTransitionService.Transition transition = queueTransitionService.transition(queueNo, operation, false);
+            if (!transition.isApplied()) {
+                return transitionRejected(transition, response);
             }
 
-            QueueEntry entry = optionalEntry.get();
-            
-            // Update status if provided
-            if (updates.containsKey("status")) {
-                entry.setStatus(updates.get("status"));
-            }
-            
-            // Update priority if provided
-            if (updates.containsKey("priority")) {
-                entry.setPriority(updates.get("priority"));
-            }
-            
-            // Update stage if provided
-            if (updates.containsKey("stage")) {
-                entry.setStage(updates.get("stage"));
+            QueueEntry updatedEntry = transition.getEntry();
+            String previousStage = transition.getPreviousStage();
+            if (previousStage.equals(updatedEntry.getStage())) {
+                recordChange("updated", previousStage, updatedEntry);
+            } else {
+                recordChange("completed".equals(updatedEntry.getStage()) ? "completed" : "moved", previousStage, updatedEntry);
             }
 
-            QueueEntry updatedEntry = queueEntryRepository.save(entry);
-
             response.put("success", true);
             response.put("message", "Queue entry updated successfully");
             response.put("queueEntry", convertToMap(updatedEntry));
@@ -332,16 +442,53 @@ public class QueueController {
         }
     }
 
+    // Stream queue changes (snapshot first, then added/moved/completed deltas)
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamQueue(
+            @RequestParam(defaultValue = QueueEventService.ALL_STAGES) String stage,
+            @RequestParam(required = false) String lastEventId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader) {
+        if (!STREAM_STAGES.contains(stage)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // EventSource sends Last-Event-ID on reconnect; the query parameter is for manual resumes
+        String resumeFrom = lastEventId;
+        if (lastEventIdHeader != null && !lastEventIdHeader.isBlank()) {
+            resumeFrom = lastEventIdHeader.trim();
+        }
+
+        SseEmitter emitter = queueEventService.subscribe(stage, resumeFrom, () -> {
+            List<QueueEntry> entries;
+            if (QueueEventService.ALL_STAGES.equals(stage)) {
+                entries = queueIndex.isLoaded() ? queueIndex.getActiveEntries() : queueEntryRepository.findActiveEntries();
+            } else {
+                entries = loadStage(stage);
+            }
+            List<Map<String, Object>> snapshot = new ArrayList<>();
+            for (QueueEntry entry : entries) {
+                snapshot.add(convertToMap(entry));
+            }
+            return snapshot;
+        });
+        return ResponseEntity.ok(emitter);
+    }
+
     // Get queue statistics
     @GetMapping("/stats")
     public ResponseEntity<Map<String, Object>> getQueueStats() {
         try {
-            Map<String, Object> stats = new HashMap<>();
-            stats.put("reception", queueEntryRepository.countByStage("reception"));
-            stats.put("doctor", queueEntryRepository.countByStage("doctor"));
-            stats.put("pharmacy", queueEntryRepository.countByStage("pharmacy"));
-            stats.put("completed", queueEntryRepository.countByStage("completed"));
-            stats.put("total", queueEntryRepository.count());
+            Map<String, Object> stats;
+            if (queueStatistics.isSeeded()) {
+                stats = queueStatistics.getStats();
+            } else {
+                stats = new HashMap<>();
+                stats.put("reception", queueEntryRepository.countByStage("reception"));
+                stats.put("doctor", queueEntryRepository.countByStage("doctor"));
+                stats.put("pharmacy", queueEntryRepository.countByStage("pharmacy"));
+                stats.put("completed", queueEntryRepository.countByStage("completed"));
+                stats.put("total", queueEntryRepository.count());
+            }
             
             return ResponseEntity.ok(stats);
         } catch (Exception e) {
@@ -349,6 +496,69 @@ public class QueueController {
         }
     }
 
+    // Archived visits from queue_entry_history, newest first
+    @GetMapping("/history")
+    public ResponseEntity<Map<String, Object>> getQueueHistory(
+            @RequestParam(required = false) String queueNo,
+            @RequestParam(required = false) String studentId,
+            @RequestParam(required = false) String email,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = "50") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            LocalDate fromDate = from != null ? LocalDate.parse(from) : null;
+            LocalDate toDate = to != null ? LocalDate.parse(to) : null;
+            int pageSize = Math.max(1, Math.min(limit, 500));
+
+            List<Map<String, Object>> history = queueHistoryService.findHistory(queueNo, studentId, email, fromDate, toDate, pageSize);
+            response.put("success", true);
+            response.put("history", history);
+            response.put("count", history.size());
+            
+            return ResponseEntity.ok(response);
+        } catch (DateTimeParseException e) {
+            response.put("success", false);
+            response.put("error", "from and to must be dates in yyyy-MM-dd format");
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "Failed to load queue history: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    // Move old completed entries to the history table now instead of waiting for the schedule
+    @PostMapping("/history/archive")
+    public ResponseEntity<Map<String, Object>> archiveCompletedEntries() {
+        try {
+            Map<String, Object> report = queueHistoryService.archive();
+            report.put("success", true);
+            return ResponseEntity.ok(report);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "Failed to archive completed entries: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    // Compare the in-memory queue index with the database and repair drift
+    @PostMapping("/index/reconcile")
+    public ResponseEntity<Map<String, Object>> reconcileQueueIndex() {
+        try {
+            Map<String, Object> report = queueIndex.reconcile();
+            report.put("success", true);
+            return ResponseEntity.ok(report);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "Failed to reconcile queue index: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
     // Clear all queues (for testing)
     @DeleteMapping("/clear-all")
     public ResponseEntity<Map<String, Object>> clearAllQueues() {
@@ -356,7 +566,10 @@ public class QueueController {
         
         try {
             queueEntryRepository.deleteAll();
-            queueCounter = 1; // Reset counter to start from 1
+            queueEntryPayloadService.deleteAll();
+            queueNumberAllocator.reset(); // Restart queue numbers from 1
+            queueIndex.cleared();
+            queueEventService.publish("cleared", null, null, new HashMap<>());
             
             response.put("success", true);
             response.put("message", "All queues cleared successfully");
@@ -369,6 +582,77 @@ public class QueueController {
         }
     }
 
+    // 404 for an unknown entry, 409 with the current state for a conflicting or disallowed transition
+    private ResponseEntity<Map<String, Object>> transitionRejected(QueueTransitionService.Transition transition, Map<String, Object> response) {
+        if (transition.isNotFound()) {
+            return ResponseEntity.notFound().build();
+        }
+        response.put("success", false);
+        response.put("error", transition.getError());
+        if (transition.isConflict()) {
+            response.put("conflict", true);
+            response.put("queueEntry", convertToMap(transition.getCurrent()));
+            return ResponseEntity.status(409).body(response);
+        }
+        return ResponseEntity.badRequest().body(response);
+    }
+
+    // Active entries of a stage in calling order (priority with aging), or arrival order before the index is loaded
+    private List<QueueEntry> loadStage(String stage) {
+        if (queueScheduler.isReady()) {
+            return queueScheduler.getStage(stage);
+        }
+        return queueEntryRepository.findByStageOrderByAddedTimeAsc(stage);
+    }
+
+    // Stage list with each entry's position and estimated wait from the stage's recent service rate
+    private List<Map<String, Object>> toScheduledList(String stage, List<QueueEntry> queue) {
+        List<Map<String, Object>> responseQueue = new ArrayList<>();
+        for (int position = 0; position < queue.size(); position++) {
+            Map<String, Object> map = convertToMap(queue.get(position));
+            map.put("position", position + 1);
+            map.put("priorityClass", QueueScheduler.priorityClass(queue.get(position).getPriority()));
+            map.put("estimatedWaitMinutes", queueScheduler.estimateWaitMinutes(stage, position));
+            responseQueue.add(map);
+        }
+        return responseQueue;
+    }
+
+    // Reception entry for the same student, from the in-memory duplicate keys when available
+    private Optional<QueueEntry> findReceptionDuplicate(String email, String nic, String medicalRecordId) {
+        if (duplicateCheckInDetector.isReady()) {
+            Optional<String> queueNo = duplicateCheckInDetector.findReceptionDuplicate(email, nic, medicalRecordId);
+            if (queueNo.isPresent()) {
+                Optional<QueueEntry> indexed = queueIndex.findActive(queueNo.get());
+                return indexed.isPresent() ? indexed : queueEntryRepository.findByQueueNo(queueNo.get());
+            }
+            return Optional.empty();
+        }
+        List<QueueEntry> duplicates = queueEntryRepository.findDuplicates(email, nic, medicalRecordId);
+        return duplicates.isEmpty() ? Optional.empty() : Optional.of(duplicates.get(0));
+    }
+
+    // Stage the student was last seen in, if any
+    private Optional<String> findExistingStage(String email, String nic, String medicalRecordId) {
+        if (duplicateCheckInDetector.isReady()) {
+            return duplicateCheckInDetector.findExistingStage(email, nic, medicalRecordId);
+        }
+        List<QueueEntry> anyExisting = queueEntryRepository.findAnyExistingEntry(email, nic, medicalRecordId);
+        return anyExisting.isEmpty() ? Optional.empty() : Optional.of(anyExisting.get(0).getStage());
+    }
+
+    // Write a saved change through to the queue index and statistics, and push it to the live displays
+    private void recordChange(String type, String fromStage, QueueEntry entry) {
+        if (fromStage == null) {
+            queueIndex.added(entry);
+            queueStatistics.recordAdded(entry);
+        } else {
+            queueIndex.updated(fromStage, entry);
+            queueStatistics.recordTransition(fromStage, entry);
+        }
+        queueEventService.publish(type, fromStage, entry.getStage(), convertToMap(entry));
+    }
+
     // Helper method to convert QueueEntry to Map for JSON response
     private Map<String, Object> convertToMap(QueueEntry entry) {
         Map<String, Object> map = new HashMap<>();
@@ -383,6 +667,7 @@ public class QueueController {
         map.put("status", entry.getStatus());
         map.put("priority", entry.getPriority());
         map.put("stage", entry.getStage());
+        map.put("version", entry.getVersion());
         map.put("addedTime", entry.getAddedTime().toString());
         
         // Calculate wait time
@@ -404,10 +689,10 @@ public class QueueController {
             map.put("completedTime", entry.getCompletedTime().toString());
         }
         
+        // Prescription payload is fetched separately from /student/{queueNo}/payload/prescription
+        map.put("hasPrescription", entry.getPrescriptionTime() != null);
+        
         // Include additional data if it exists
-        if (entry.getPrescription() != null) {
-            map.put("prescription", entry.getPrescription());
-        }
         if (entry.getPharmacyStatus() != null) {
             map.put("pharmacyStatus", entry.getPharmacyStatus());
         }
@@ -0,0 +1,40 @@
+package com.example.demo.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a prescription list ordered by (createdDate, id) descending. Sent to clients as
+ * an opaque URL-safe token; the next page starts strictly after this row.
+ */
+public record PrescriptionCursor(LocalDateTime createdDate, long id) {
+
+    // Sorts after every real row, so the first page uses the same query as the others
+    public static final PrescriptionCursor START = new PrescriptionCursor(LocalDateTime.of(9999, 12, 31, 23, 59), Long.MAX_VALUE);
+
+    public static PrescriptionCursor after(PrescriptionSummaryDto row) {
+        return new PrescriptionCursor(row.createdDate(), row.id());
+    }
+
+    public String encode() {
+        String raw = createdDate + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Throws IllegalArgumentException for tokens this class did not produce
+    public static PrescriptionCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return START;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new PrescriptionCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                                          Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
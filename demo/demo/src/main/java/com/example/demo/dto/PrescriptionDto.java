@@ -0,0 +1,41 @@
+package com.example.demo.dto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prescription as returned by the list and detail endpoints. The signature is left out
+ * (see GET /api/prescriptions/{id}/signature); signedAt tells whether there is one.
+ */
+public record PrescriptionDto(
+        Long id,
+        String patientName,
+        String patientId,
+        String studentId,
+        String queueNo,
+        String doctorName,
+        String prescriptionText,
+        String status,
+        Integer totalMedicines,
+        String instructions,
+        String inventoryStatus,
+        LocalDateTime createdDate,
+        LocalDateTime updatedDate,
+        LocalDateTime completedDate,
+        String dispensedBy,
+        LocalDateTime dispensedDate,
+        LocalDateTime signedAt,
+        List<PrescriptionMedicineDto> medicines) {
+
+    // Used by the JPQL constructor expressions; medicines are attached afterwards
+    public PrescriptionDto(Long id, String patientName, String patientId, String studentId, String queueNo,
+                           String doctorName, String prescriptionText, String status, Integer totalMedicines,
+                           String instructions, String inventoryStatus, LocalDateTime createdDate,
+                           LocalDateTime updatedDate, LocalDateTime completedDate, String dispensedBy,
+                           LocalDateTime dispensedDate, LocalDateTime signedAt) {
+        this(id, patientName, patientId, studentId, queueNo, doctorName, prescriptionText, status, totalMedicines,
+             instructions, inventoryStatus, createdDate, updatedDate, completedDate, dispensedBy, dispensedDate,
+             signedAt, new ArrayList<>());
+    }
+}
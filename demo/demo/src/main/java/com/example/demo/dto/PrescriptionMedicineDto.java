@@ -0,0 +1,25 @@
+package com.example.demo.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.LocalDateTime;
+
+/**
+ * One prescribed medicine, as listed inside a PrescriptionDto
+ */
+public record PrescriptionMedicineDto(
+        Long id,
+        @JsonIgnore Long prescriptionId,
+        Long medicineId,
+        String medicineName,
+        String dosage,
+        Integer quantity,
+        String frequency,
+        String duration,
+        String instructions,
+        Integer dispensedQuantity,
+        String status,
+        LocalDateTime createdDate,
+        LocalDateTime dispensedDate,
+        String dispensedBy) {
+}
@@ -0,0 +1,23 @@
+package com.example.demo.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Prescription row for the paged list endpoints. Leaves out the signature and the free-text
+ * prescriptionText/instructions columns; the detail endpoint returns those.
+ */
+public record PrescriptionSummaryDto(
+        Long id,
+        String patientName,
+        String patientId,
+        String studentId,
+        String queueNo,
+        String doctorName,
+        String status,
+        Integer totalMedicines,
+        String inventoryStatus,
+        LocalDateTime createdDate,
+        LocalDateTime completedDate,
+        String dispensedBy,
+        LocalDateTime signedAt) {
+}
@@ -0,0 +1,124 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One row of the append-only inventory ledger (see InventoryLedger). Rows are only ever inserted.
+ */
+@Entity
+@Table(name = "inventory_transactions", indexes = {
+    @Index(name = "idx_inventory_transactions_medicine", columnList = "medicine_id, recorded_at, id")
+})
+public class InventoryTransaction {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "medicine_id", nullable = false)
+    private Long medicineId;
+    
+    @Column(name = "transaction_type", nullable = false, length = 32)
+    private String transactionType; // ADDED, ADJUSTED, REMOVED, DISPENSED, RESERVED, RELEASED, REORDER_REQUIRED
+    
+    // Units the event is about, e.g. the quantity dispensed or suggested for reorder
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    // Signed effect on the medicine's quantity
+    @Column(name = "quantity_change", nullable = false)
+    private Integer quantityChange;
+    
+    // Signed effect on the medicine's reserved quantity
+    @Column(name = "reserved_change", nullable = false)
+    private Integer reservedChange;
+    
+    // Prescription the event belongs to, if any
+    @Column(name = "related_id")
+    private Long relatedId;
+    
+    @Column(name = "recorded_at", nullable = false)
+    private LocalDateTime recordedAt;
+    
+    // Constructors
+    public InventoryTransaction() {
+        this.recordedAt = LocalDateTime.now();
+    }
+    
+    public InventoryTransaction(Long medicineId, String transactionType, Integer quantity, Integer quantityChange,
+                                Integer reservedChange, Long relatedId) {
+        this();
+        this.medicineId = medicineId;
+        this.transactionType = transactionType;
+        this.quantity = quantity;
+        this.quantityChange = quantityChange;
+        this.reservedChange = reservedChange;
+        this.relatedId = relatedId;
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public Long getMedicineId() {
+        return medicineId;
+    }
+    
+    public void setMedicineId(Long medicineId) {
+        this.medicineId = medicineId;
+    }
+    
+    public String getTransactionType() {
+        return transactionType;
+    }
+    
+    public void setTransactionType(String transactionType) {
+        this.transactionType = transactionType;
+    }
+    
+    public Integer getQuantity() {
+        return quantity;
+    }
+    
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+    
+    public Integer getQuantityChange() {
+        return quantityChange;
+    }
+    
+    public void setQuantityChange(Integer quantityChange) {
+        this.quantityChange = quantityChange;
+    }
+    
+    public Integer getReservedChange() {
+        return reservedChange;
+    }
+    
+    public void setReservedChange(Integer reservedChange) {
+        this.reservedChange = reservedChange;
+    }
+    
+    public Long getRelatedId() {
+        return relatedId;
+    }
+    
+    public void setRelatedId(Long relatedId) {
+        this.relatedId = relatedId;
+    }
+    
+    public LocalDateTime getRecordedAt() {
+        return recordedAt;
+    }
+    
+    public void setRecordedAt(LocalDateTime recordedAt) {
+        this.recordedAt = recordedAt;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.demo.entity;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -15,9 +16,15 @@ public class Medicine {
     @Column(nullable = false)
     private String name;
     
-    @Column(nullable = false)
+    // Set when the medicine is added; afterwards only StockService changes it, with conditional UPDATEs
+    @Column(nullable = false, updatable = false)
     private Integer quantity;
     
+    // Part of quantity held by active stock reservations (see ReservationService); never written from the entity
+    @Column(name = "reserved_quantity", nullable = false, insertable = false, updatable = false, columnDefinition = "INT DEFAULT 0")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private int reservedQuantity;
+    
     @Column(nullable = false)
     private LocalDate expiry;
     
@@ -87,6 +94,14 @@ public class Medicine {
         this.lastUpdated = LocalDateTime.now();
     }
     
+    public int getReservedQuantity() {
+        return reservedQuantity;
+    }
+    
+    public void setReservedQuantity(int reservedQuantity) {
+        this.reservedQuantity = reservedQuantity;
+    }
+    
     public LocalDate getExpiry() {
         return expiry;
     }
@@ -152,6 +167,11 @@ public class Medicine {
     }
     
     // Helper methods
+    // On-hand stock not promised to a reservation
+    public int getAvailableToPromise() {
+        return Math.max(0, quantity - reservedQuantity);
+    }
+    
     public boolean isLowStock() {
         return quantity <= minStock;
     }
@@ -1,11 +1,17 @@
 package com.example.demo.entity;
 
+import com.example.demo.service.PrescriptionStatisticsListener;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "prescriptions")
+@EntityListeners(PrescriptionStatisticsListener.class)
+@Table(name = "prescriptions", indexes = {
+    @Index(name = "idx_prescriptions_created", columnList = "created_date, id"),
+    @Index(name = "idx_prescriptions_status_created", columnList = "status, created_date, id")
+})
 public class Prescription {
     
     @Id
@@ -63,6 +69,18 @@ public class Prescription {
     @Column(name = "signed_at")
     private LocalDateTime signedAt;
     
+    // Pharmacist working on this pending prescription, until the lease expires
+    @Column(name = "claimed_by")
+    private String claimedBy;
+    
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+    
+    // Status as last read from or written to the database (see PrescriptionStatisticsListener)
+    @Transient
+    @JsonIgnore
+    private String persistedStatus;
+    
     // One-to-Many relationship with PrescriptionMedicine
     @OneToMany(mappedBy = "prescription", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<PrescriptionMedicine> prescriptionMedicines;
@@ -239,6 +257,31 @@ public class Prescription {
         this.signedAt = signedAt;
     }
     
+    @JsonIgnore
+    public String getPersistedStatus() {
+        return persistedStatus;
+    }
+    
+    public void setPersistedStatus(String persistedStatus) {
+        this.persistedStatus = persistedStatus;
+    }
+    
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+    
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+    
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+    
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+    
     // Helper methods
     public boolean isPending() {
         return "Pending".equals(status);
@@ -248,6 +291,12 @@ public class Prescription {
         return "In Progress".equals(status);
     }
     
+    // Claimed by another pharmacist whose lease has not run out
+    public boolean isLeasedToOtherThan(String pharmacist, LocalDateTime now) {
+        return claimedBy != null && leaseExpiresAt != null && leaseExpiresAt.isAfter(now)
+            && !claimedBy.equals(pharmacist);
+    }
+    
     public boolean isCompleted() {
         return "Completed".equals(status);
     }
@@ -8,8 +8,13 @@ import java.time.LocalDateTime;
 @Table(name = "prescription_medicines")
 public class PrescriptionMedicine {
     
+    // Ids come from a pooled table generator rather than AUTO_INCREMENT so the lines of a
+    // prescription can be inserted as one JDBC batch (see PrescriptionWriteService)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "prescription_medicine_ids")
+    @TableGenerator(name = "prescription_medicine_ids", table = "id_generators",
+                    pkColumnName = "sequence_name", valueColumnName = "next_val",
+                    pkColumnValue = "prescription_medicines", allocationSize = 50)
     private Long id;
     
     // Many-to-One relationship with Prescription
@@ -0,0 +1,129 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "stock_reservations", indexes = {
+    @Index(name = "idx_stock_reservations_prescription", columnList = "prescription_id, status"),
+    @Index(name = "idx_stock_reservations_line", columnList = "prescription_medicine_id, status"),
+    @Index(name = "idx_stock_reservations_expiry", columnList = "status, expires_at")
+})
+public class StockReservation {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "medicine_id", nullable = false)
+    private Long medicineId;
+    
+    @Column(name = "prescription_id", nullable = false)
+    private Long prescriptionId;
+    
+    @Column(name = "prescription_medicine_id")
+    private Long prescriptionMedicineId;
+    
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    @Column(nullable = false)
+    private String status; // ACTIVE, CONSUMED, RELEASED, EXPIRED
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+    
+    @Column(name = "closed_at")
+    private LocalDateTime closedAt;
+    
+    // Constructors
+    public StockReservation() {
+        this.createdAt = LocalDateTime.now();
+        this.status = "ACTIVE";
+    }
+    
+    public StockReservation(Long medicineId, Long prescriptionId, Long prescriptionMedicineId, Integer quantity, LocalDateTime expiresAt) {
+        this();
+        this.medicineId = medicineId;
+        this.prescriptionId = prescriptionId;
+        this.prescriptionMedicineId = prescriptionMedicineId;
+        this.quantity = quantity;
+        this.expiresAt = expiresAt;
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public Long getMedicineId() {
+        return medicineId;
+    }
+    
+    public void setMedicineId(Long medicineId) {
+        this.medicineId = medicineId;
+    }
+    
+    public Long getPrescriptionId() {
+        return prescriptionId;
+    }
+    
+    public void setPrescriptionId(Long prescriptionId) {
+        this.prescriptionId = prescriptionId;
+    }
+    
+    public Long getPrescriptionMedicineId() {
+        return prescriptionMedicineId;
+    }
+    
+    public void setPrescriptionMedicineId(Long prescriptionMedicineId) {
+        this.prescriptionMedicineId = prescriptionMedicineId;
+    }
+    
+    public Integer getQuantity() {
+        return quantity;
+    }
+    
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+    
+    public LocalDateTime getClosedAt() {
+        return closedAt;
+    }
+    
+    public void setClosedAt(LocalDateTime closedAt) {
+        this.closedAt = closedAt;
+    }
+}
@@ -53,20 +53,20 @@ public class QueueEntry {
     @Column
     private LocalDateTime completedTime;
 
-    @Column(columnDefinition = "TEXT")
-    private String medicalData; // JSON string of medical data
-
-    @Column(columnDefinition = "TEXT")
-    private String prescription; // JSON string of prescription data
-
     @Column
     private String pharmacyStatus;
 
+    // Bumped by every write; stage transitions are conditional on it (see QueueTransitionService)
+    @Version
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long version;
+
     // Constructors
     public QueueEntry() {}
 
+    // Medical data and prescription payloads live in queue_entry_payloads (see QueueEntryPayloadService)
     public QueueEntry(String queueNo, String studentName, String studentId, String email, String nic, 
-                     String phone, String medicalRecordId, String medicalData) {
+                     String phone, String medicalRecordId) {
         this.queueNo = queueNo;
         this.studentName = studentName;
         this.studentId = studentId;
@@ -74,7 +74,6 @@ public class QueueEntry {
         this.nic = nic;
         this.phone = phone;
         this.medicalRecordId = medicalRecordId;
-        this.medicalData = medicalData;
         this.addedTime = LocalDateTime.now();
     }
 
@@ -199,22 +198,6 @@ public class QueueEntry {
         this.completedTime = completedTime;
     }
 
-    public String getMedicalData() {
-        return medicalData;
-    }
-
-    public void setMedicalData(String medicalData) {
-        this.medicalData = medicalData;
-    }
-
-    public String getPrescription() {
-        return prescription;
-    }
-
-    public void setPrescription(String prescription) {
-        this.prescription = prescription;
-    }
-
     public String getPharmacyStatus() {
         return pharmacyStatus;
     }
@@ -222,4 +205,12 @@ public class QueueEntry {
     public void setPharmacyStatus(String pharmacyStatus) {
         this.pharmacyStatus = pharmacyStatus;
     }
-}
\ No newline at end of file
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
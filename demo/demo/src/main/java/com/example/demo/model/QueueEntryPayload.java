@@ -0,0 +1,101 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "queue_entry_payloads",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"queue_entry_id", "payload_type"}))
+public class QueueEntryPayload {
+
+    public static final String MEDICAL_DATA = "medical-data";
+    public static final String PRESCRIPTION = "prescription";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "queue_entry_id", nullable = false)
+    private Long queueEntryId;
+
+    @Column(name = "payload_type", nullable = false, length = 32)
+    private String payloadType; // medical-data, prescription
+
+    @Column(name = "content_encoding", nullable = false, length = 16)
+    private String contentEncoding = "gzip";
+
+    @Lob
+    @Column(name = "data", nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] data; // gzip-compressed JSON
+
+    @Column(name = "original_size")
+    private Integer originalSize;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public QueueEntryPayload() {}
+
+    public QueueEntryPayload(Long queueEntryId, String payloadType) {
+        this.queueEntryId = queueEntryId;
+        this.payloadType = payloadType;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getQueueEntryId() {
+        return queueEntryId;
+    }
+
+    public void setQueueEntryId(Long queueEntryId) {
+        this.queueEntryId = queueEntryId;
+    }
+
+    public String getPayloadType() {
+        return payloadType;
+    }
+
+    public void setPayloadType(String payloadType) {
+        this.payloadType = payloadType;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    public Integer getOriginalSize() {
+        return originalSize;
+    }
+
+    public void setOriginalSize(Integer originalSize) {
+        this.originalSize = originalSize;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "queue_sequences")
+public class QueueSequence {
+
+    @Id
+    @Column(name = "sequence_key", length = 64)
+    private String sequenceKey; // "queue" or "queue:yyyy-MM-dd" when numbers reset daily, plus "@<millis>" after a reset
+
+    @Column(name = "next_value", nullable = false)
+    private Long nextValue; // first number not yet handed to any node
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public QueueSequence() {}
+
+    public QueueSequence(String sequenceKey, Long nextValue) {
+        this.sequenceKey = sequenceKey;
+        this.nextValue = nextValue;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public String getSequenceKey() {
+        return sequenceKey;
+    }
+
+    public void setSequenceKey(String sequenceKey) {
+        this.sequenceKey = sequenceKey;
+    }
+
+    public Long getNextValue() {
+        return nextValue;
+    }
+
+    public void setNextValue(Long nextValue) {
+        this.nextValue = nextValue;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
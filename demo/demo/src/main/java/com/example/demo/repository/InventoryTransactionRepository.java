@@ -0,0 +1,30 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.InventoryTransaction;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface InventoryTransactionRepository extends JpaRepository<InventoryTransaction, Long> {
+    
+    // Ledger of one medicine within a time range, newest first
+    @Query("SELECT t FROM InventoryTransaction t WHERE t.medicineId = :medicineId AND t.recordedAt >= :from AND t.recordedAt < :to " +
+           "ORDER BY t.recordedAt DESC, t.id DESC")
+    List<InventoryTransaction> findHistory(@Param("medicineId") Long medicineId, @Param("from") LocalDateTime from,
+                                           @Param("to") LocalDateTime to, Pageable pageable);
+    
+    // Total (quantityChange, reservedChange) recorded for one medicine after the given time
+    @Query("SELECT COALESCE(SUM(t.quantityChange), 0), COALESCE(SUM(t.reservedChange), 0) FROM InventoryTransaction t " +
+           "WHERE t.medicineId = :medicineId AND t.recordedAt > :at")
+    List<Object[]> sumChangesAfter(@Param("medicineId") Long medicineId, @Param("at") LocalDateTime at);
+    
+    // When the ledger of one medicine starts
+    @Query("SELECT MIN(t.recordedAt) FROM InventoryTransaction t WHERE t.medicineId = :medicineId")
+    LocalDateTime findFirstRecordedAt(@Param("medicineId") Long medicineId);
+}
@@ -1,12 +1,15 @@
 package com.example.demo.repository;
 
 import com.example.demo.entity.Medicine;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -59,6 +62,60 @@ public interface MedicineRepository extends JpaRepository<Medicine, Long> {
     @Query("SELECT m FROM Medicine m WHERE m.quantity > :quantity")
     List<Medicine> findAvailableMedicines(@Param("quantity") Integer quantity);
     
+    // Keyset chunk of medicines in id order, for scans over the whole catalog (see ChunkedScanner)
+    List<Medicine> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+    
+    // Keyset chunk of (id, expiry) pairs in id order (see ExpiryScheduler)
+    @Query("SELECT m.id, m.expiry FROM Medicine m WHERE m.id > :id ORDER BY m.id")
+    List<Object[]> findExpiriesAfter(@Param("id") Long id, Pageable pageable);
+    
+    // Stock figures of several medicines as (id, name, category, quantity, reservedQuantity, minStock, expiry)
+    // rows; scalars, so they come from the database even when the persistence context holds the entities
+    @Query("SELECT m.id, m.name, m.category, m.quantity, m.reservedQuantity, m.minStock, m.expiry " +
+           "FROM Medicine m WHERE m.id IN :ids")
+    List<Object[]> findStockByIdIn(@Param("ids") Collection<Long> ids);
+    
+    // Current stock of one medicine, read from the database rather than the persistence context
+    @Query("SELECT m.quantity FROM Medicine m WHERE m.id = :id")
+    Integer findQuantityById(@Param("id") Long id);
+    
+    // Stock not held by reservations, read from the database rather than the persistence context
+    @Query("SELECT m.quantity - m.reservedQuantity FROM Medicine m WHERE m.id = :id")
+    Integer findAvailableToPromiseById(@Param("id") Long id);
+    
+    // Current stock of one medicine, locking its row until the transaction ends (see StockService.setQuantity)
+    @Query(value = "SELECT quantity FROM medicines WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Integer lockQuantityById(@Param("id") Long id);
+    
+    // Overwrite the stock after a stock count; the caller holds the row lock
+    @Modifying
+    @Query("UPDATE Medicine m SET m.quantity = :quantity, m.lastUpdated = CURRENT_TIMESTAMP WHERE m.id = :id")
+    int setQuantity(@Param("id") Long id, @Param("quantity") int quantity);
+    
+    // Take unreserved stock only if at least that much is left; returns 0 when it is not (see StockService)
+    @Modifying
+    @Query("UPDATE Medicine m SET m.quantity = m.quantity - :quantity, m.lastUpdated = CURRENT_TIMESTAMP " +
+           "WHERE m.id = :id AND m.quantity - m.reservedQuantity >= :quantity")
+    int decrementIfAvailable(@Param("id") Long id, @Param("quantity") int quantity);
+    
+    // Hold stock for a reservation only if that much is still unreserved
+    @Modifying
+    @Query("UPDATE Medicine m SET m.reservedQuantity = m.reservedQuantity + :quantity " +
+           "WHERE m.id = :id AND m.quantity - m.reservedQuantity >= :quantity")
+    int reserveIfAvailable(@Param("id") Long id, @Param("quantity") int quantity);
+    
+    // Give reserved stock back to available-to-promise
+    @Modifying
+    @Query("UPDATE Medicine m SET m.reservedQuantity = m.reservedQuantity - :quantity " +
+           "WHERE m.id = :id AND m.reservedQuantity >= :quantity")
+    int releaseReserved(@Param("id") Long id, @Param("quantity") int quantity);
+    
+    // Dispense taken units out of a reservation of reserved units; the rest of the reservation is released
+    @Modifying
+    @Query("UPDATE Medicine m SET m.quantity = m.quantity - :taken, m.reservedQuantity = m.reservedQuantity - :reserved, " +
+           "m.lastUpdated = CURRENT_TIMESTAMP WHERE m.id = :id AND m.reservedQuantity >= :reserved AND m.quantity >= :taken")
+    int consumeReserved(@Param("id") Long id, @Param("taken") int taken, @Param("reserved") int reserved);
+    
     // Get total inventory value (if price field is added later)
     @Query("SELECT COUNT(m), SUM(m.quantity) FROM Medicine m")
     Object[] getInventoryStats();
@@ -1,19 +1,33 @@
 package com.example.demo.repository;
 
+import com.example.demo.dto.PrescriptionMedicineDto;
 import com.example.demo.entity.PrescriptionMedicine;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface PrescriptionMedicineRepository extends JpaRepository<PrescriptionMedicine, Long> {
     
+    // Lines of stock-blocked prescriptions that still exceed the medicine's stock: (medicineId, prescriptionId, createdDate)
+    @Query("SELECT pm.medicineId, p.id, p.createdDate FROM PrescriptionMedicine pm JOIN pm.prescription p, Medicine m " +
+           "WHERE p.status = 'Pending - Insufficient Stock' AND m.id = pm.medicineId AND m.quantity < pm.quantity")
+    List<Object[]> findShortLinesOfBlockedPrescriptions();
+    
     // Find medicines by prescription ID
     List<PrescriptionMedicine> findByPrescriptionIdOrderByCreatedDateAsc(Long prescriptionId);
     
+    // Medicines of several prescriptions in one query, as DTOs
+    @Query("SELECT new com.example.demo.dto.PrescriptionMedicineDto(pm.id, pm.prescription.id, pm.medicineId, pm.medicineName, " +
+           "pm.dosage, pm.quantity, pm.frequency, pm.duration, pm.instructions, pm.dispensedQuantity, pm.status, " +
+           "pm.createdDate, pm.dispensedDate, pm.dispensedBy) FROM PrescriptionMedicine pm " +
+           "WHERE pm.prescription.id IN :prescriptionIds ORDER BY pm.createdDate ASC, pm.id ASC")
+    List<PrescriptionMedicineDto> findDtosByPrescriptionIdIn(@Param("prescriptionIds") Collection<Long> prescriptionIds);
+    
     // Find medicines by prescription ID and status
     List<PrescriptionMedicine> findByPrescriptionIdAndStatus(Long prescriptionId, String status);
     
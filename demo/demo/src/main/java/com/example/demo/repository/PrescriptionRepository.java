@@ -1,13 +1,19 @@
 package com.example.demo.repository;
 
+import com.example.demo.dto.PrescriptionDto;
+import com.example.demo.dto.PrescriptionSummaryDto;
 import com.example.demo.entity.Prescription;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PrescriptionRepository extends JpaRepository<Prescription, Long> {
@@ -34,6 +40,85 @@ public interface PrescriptionRepository extends JpaRepository<Prescription, Long
     @Query("SELECT p FROM Prescription p WHERE p.status = 'Pending' ORDER BY p.createdDate ASC")
     List<Prescription> findPendingPrescriptions();
     
+    // Pending prescriptions as DTOs, without the signature column
+    @Query("SELECT new com.example.demo.dto.PrescriptionDto(p.id, p.patientName, p.patientId, p.studentId, p.queueNo, " +
+           "p.doctorName, p.prescriptionText, p.status, p.totalMedicines, p.instructions, p.inventoryStatus, " +
+           "p.createdDate, p.updatedDate, p.completedDate, p.dispensedBy, p.dispensedDate, p.signedAt) FROM Prescription p " +
+           "WHERE p.status = 'Pending' ORDER BY p.createdDate ASC")
+    List<PrescriptionDto> findPendingPrescriptionDtos();
+    
+    // Keyset pages of list rows, newest first; the page starts after (createdDate, id)
+    @Query("SELECT new com.example.demo.dto.PrescriptionSummaryDto(p.id, p.patientName, p.patientId, p.studentId, " +
+           "p.queueNo, p.doctorName, p.status, p.totalMedicines, p.inventoryStatus, p.createdDate, p.completedDate, " +
+           "p.dispensedBy, p.signedAt) FROM Prescription p " +
+           "WHERE (p.createdDate < :createdDate OR (p.createdDate = :createdDate AND p.id < :id)) " +
+           "ORDER BY p.createdDate DESC, p.id DESC")
+    List<PrescriptionSummaryDto> findSummariesAfter(@Param("createdDate") LocalDateTime createdDate,
+                                                    @Param("id") Long id, Pageable page);
+    
+    @Query("SELECT new com.example.demo.dto.PrescriptionSummaryDto(p.id, p.patientName, p.patientId, p.studentId, " +
+           "p.queueNo, p.doctorName, p.status, p.totalMedicines, p.inventoryStatus, p.createdDate, p.completedDate, " +
+           "p.dispensedBy, p.signedAt) FROM Prescription p " +
+           "WHERE p.status = :status AND (p.createdDate < :createdDate OR (p.createdDate = :createdDate AND p.id < :id)) " +
+           "ORDER BY p.createdDate DESC, p.id DESC")
+    List<PrescriptionSummaryDto> findSummariesByStatusAfter(@Param("status") String status,
+                                                            @Param("createdDate") LocalDateTime createdDate,
+                                                            @Param("id") Long id, Pageable page);
+    
+    @Query("SELECT new com.example.demo.dto.PrescriptionSummaryDto(p.id, p.patientName, p.patientId, p.studentId, " +
+           "p.queueNo, p.doctorName, p.status, p.totalMedicines, p.inventoryStatus, p.createdDate, p.completedDate, " +
+           "p.dispensedBy, p.signedAt) FROM Prescription p " +
+           "WHERE (LOWER(p.patientName) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
+           "LOWER(p.patientId) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
+           "LOWER(p.studentId) LIKE LOWER(CONCAT('%', :searchTerm, '%'))) AND (p.createdDate < :createdDate OR (p.createdDate = :createdDate AND p.id < :id)) " +
+           "ORDER BY p.createdDate DESC, p.id DESC")
+    List<PrescriptionSummaryDto> searchSummariesAfter(@Param("searchTerm") String searchTerm,
+                                                      @Param("createdDate") LocalDateTime createdDate,
+                                                      @Param("id") Long id, Pageable page);
+    
+    // One prescription as a DTO
+    @Query("SELECT new com.example.demo.dto.PrescriptionDto(p.id, p.patientName, p.patientId, p.studentId, p.queueNo, " +
+           "p.doctorName, p.prescriptionText, p.status, p.totalMedicines, p.instructions, p.inventoryStatus, " +
+           "p.createdDate, p.updatedDate, p.completedDate, p.dispensedBy, p.dispensedDate, p.signedAt) FROM Prescription p " +
+           "WHERE p.id = :id")
+    Optional<PrescriptionDto> findDtoById(@Param("id") Long id);
+    
+    // Oldest pending prescription without a live lease, locked for the caller. Rows locked by
+    // concurrent claims are skipped rather than waited on.
+    @Query(value = "SELECT id FROM prescriptions WHERE status = 'Pending' " +
+                   "AND (lease_expires_at IS NULL OR lease_expires_at <= :now) " +
+                   "ORDER BY created_date ASC, id ASC LIMIT 1 FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<Long> lockNextClaimable(@Param("now") LocalDateTime now);
+    
+    // Lock one prescription row until the transaction ends; empty when it does not exist
+    @Query(value = "SELECT id FROM prescriptions WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockById(@Param("id") Long id);
+    
+    // Give a pending prescription to a pharmacist until leaseExpiresAt
+    @Modifying
+    @Query("UPDATE Prescription p SET p.claimedBy = :pharmacist, p.leaseExpiresAt = :leaseExpiresAt, p.updatedDate = :now " +
+           "WHERE p.id = :id")
+    int claim(@Param("id") Long id, @Param("pharmacist") String pharmacist,
+              @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt, @Param("now") LocalDateTime now);
+    
+    // Extend a lease; affects no row when the pharmacist no longer holds it
+    @Modifying
+    @Transactional
+    @Query("UPDATE Prescription p SET p.leaseExpiresAt = :leaseExpiresAt WHERE p.id = :id AND p.status = 'Pending' " +
+           "AND p.claimedBy = :pharmacist AND p.leaseExpiresAt > :now")
+    int renewLease(@Param("id") Long id, @Param("pharmacist") String pharmacist,
+                   @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt, @Param("now") LocalDateTime now);
+    
+    // Hand a claimed prescription back to the queue
+    @Modifying
+    @Transactional
+    @Query("UPDATE Prescription p SET p.claimedBy = NULL, p.leaseExpiresAt = NULL WHERE p.id = :id AND p.claimedBy = :pharmacist")
+    int releaseLease(@Param("id") Long id, @Param("pharmacist") String pharmacist);
+    
+    // Prescriptions waiting for stock, oldest first
+    @Query("SELECT p.id FROM Prescription p WHERE p.status = 'Pending - Insufficient Stock' ORDER BY p.createdDate ASC, p.id ASC")
+    List<Long> findStockBlockedIds();
+    
     // Find prescriptions in progress
     @Query("SELECT p FROM Prescription p WHERE p.status = 'In Progress' ORDER BY p.updatedDate DESC")
     List<Prescription> findInProgressPrescriptions();
@@ -63,6 +148,13 @@ public interface PrescriptionRepository extends JpaRepository<Prescription, Long
     @Query("SELECT p.status, COUNT(p) FROM Prescription p GROUP BY p.status")
     List<Object[]> countPrescriptionsByStatus();
     
+    // Counts per (status, doctor) and, for prescriptions created since the given time, per minute after it:
+    // (status, doctorName, minuteOffset or null, count). Seeds PrescriptionStatistics in one query.
+    @Query(value = "SELECT status, doctor_name, " +
+                   "CASE WHEN created_date >= :since THEN TIMESTAMPDIFF(MINUTE, :since, created_date) END AS minute_offset, " +
+                   "COUNT(*) FROM prescriptions GROUP BY status, doctor_name, minute_offset", nativeQuery = true)
+    List<Object[]> aggregateForStatistics(@Param("since") LocalDateTime since);
+    
     // Count prescriptions by doctor
     @Query("SELECT p.doctorName, COUNT(p) FROM Prescription p GROUP BY p.doctorName")
     List<Object[]> countPrescriptionsByDoctor();
@@ -0,0 +1,14 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.QueueEntryPayload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface QueueEntryPayloadRepository extends JpaRepository<QueueEntryPayload, Long> {
+
+    // Find the payload of one type for a queue entry
+    Optional<QueueEntryPayload> findByQueueEntryIdAndPayloadType(Long queueEntryId, String payloadType);
+}
@@ -1,11 +1,16 @@
 package com.example.demo.repository;
 
 import com.example.demo.model.QueueEntry;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +20,25 @@ public interface QueueEntryRepository extends JpaRepository<QueueEntry, Long> {
     // Find by queue number
     Optional<QueueEntry> findByQueueNo(String queueNo);
 
+    // Latest committed state of an entry. A locking read, so inside a REPEATABLE READ transaction it
+    // sees what a concurrent writer committed rather than the transaction's snapshot
+    @Query(value = "SELECT * FROM queue_entries WHERE queue_no = :queueNo FOR SHARE", nativeQuery = true)
+    Optional<QueueEntry> findLatestByQueueNo(@Param("queueNo") String queueNo);
+
+    // Write a transition only if the entry is still in the expected stage and version; returns 0 on conflict
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE QueueEntry q SET q.stage = :#{#entry.stage}, q.status = :#{#entry.status}, q.priority = :#{#entry.priority}, " +
+           "q.movedToDoctorTime = :#{#entry.movedToDoctorTime}, q.prescriptionTime = :#{#entry.prescriptionTime}, " +
+           "q.completedTime = :#{#entry.completedTime}, q.pharmacyStatus = :#{#entry.pharmacyStatus}, q.version = q.version + 1 " +
+           "WHERE q.id = :#{#entry.id} AND q.stage = :expectedStage AND q.version = :expectedVersion")
+    int updateIfUnchanged(@Param("entry") QueueEntry entry,
+                          @Param("expectedStage") String expectedStage,
+                          @Param("expectedVersion") long expectedVersion);
+
+    // Find several entries by queue number in one query
+    List<QueueEntry> findByQueueNoIn(Collection<String> queueNos);
+
     // Find by stage (reception, doctor, pharmacy, completed)
     List<QueueEntry> findByStageOrderByAddedTimeAsc(String stage);
 
@@ -42,6 +66,9 @@ public interface QueueEntryRepository extends JpaRepository<QueueEntry, Long> {
     @Query("SELECT q FROM QueueEntry q WHERE q.stage != 'completed' ORDER BY q.addedTime ASC")
     List<QueueEntry> findActiveEntries();
 
+    // Most recently completed entries first
+    List<QueueEntry> findByStageOrderByCompletedTimeDesc(String stage, Pageable pageable);
+
     // Find entries by stage and status
     List<QueueEntry> findByStageAndStatusOrderByAddedTimeAsc(String stage, String status);
 
@@ -49,7 +76,15 @@ public interface QueueEntryRepository extends JpaRepository<QueueEntry, Long> {
     @Query("SELECT COUNT(q) FROM QueueEntry q WHERE q.stage = :stage")
     long countByStage(@Param("stage") String stage);
 
+    // Count entries per stage in one pass
+    @Query("SELECT q.stage, COUNT(q) FROM QueueEntry q GROUP BY q.stage")
+    List<Object[]> countEntriesByStage();
+
+    // Stage timestamps of entries added since the given time (for service-time statistics)
+    @Query("SELECT q.addedTime, q.movedToDoctorTime, q.prescriptionTime, q.completedTime FROM QueueEntry q WHERE q.addedTime >= :since")
+    List<Object[]> findStageTimesSince(@Param("since") LocalDateTime since);
+
     // Find maximum queue number to avoid duplicates
-    @Query(value = "SELECT queue_no FROM queue_entries ORDER BY CAST(queue_no AS UNSIGNED) DESC LIMIT 1", nativeQuery = true)
+    @Query(value = "SELECT queue_no FROM queue_entries ORDER BY CAST(SUBSTRING_INDEX(queue_no, '-', -1) AS UNSIGNED) DESC LIMIT 1", nativeQuery = true)
     String findMaxQueueNo();
 }
\ No newline at end of file
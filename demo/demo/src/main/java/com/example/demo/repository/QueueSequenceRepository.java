@@ -0,0 +1,34 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.QueueSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface QueueSequenceRepository extends JpaRepository<QueueSequence, String> {
+
+    // Create the sequence row if no node has created it yet
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO queue_sequences (sequence_key, next_value, updated_at) VALUES (:key, :initialValue, NOW())", nativeQuery = true)
+    int insertIfAbsent(@Param("key") String key, @Param("initialValue") long initialValue);
+
+    // Read the current high-water mark of a sequence
+    @Query("SELECT s.nextValue FROM QueueSequence s WHERE s.sequenceKey = :key")
+    Long findNextValue(@Param("key") String key);
+
+    // Compare-and-set the high-water mark; returns 0 when another node advanced it first
+    @Modifying
+    @Transactional
+    @Query("UPDATE QueueSequence s SET s.nextValue = :newValue, s.updatedAt = CURRENT_TIMESTAMP WHERE s.sequenceKey = :key AND s.nextValue = :expectedValue")
+    int advance(@Param("key") String key, @Param("expectedValue") long expectedValue, @Param("newValue") long newValue);
+
+    // The row numbers are taken from: the latest reset ("key@<millis>"), else the key itself
+    @Query(value = "SELECT sequence_key FROM queue_sequences WHERE sequence_key = :key OR sequence_key LIKE :resetPattern " +
+                   "ORDER BY sequence_key DESC LIMIT 1", nativeQuery = true)
+    String findCurrentKey(@Param("key") String key, @Param("resetPattern") String resetPattern);
+}
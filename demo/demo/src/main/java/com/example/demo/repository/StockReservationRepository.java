@@ -0,0 +1,37 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.StockReservation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+    
+    // Active reservations of a prescription
+    @Query("SELECT r FROM StockReservation r WHERE r.prescriptionId = :prescriptionId AND r.status = 'ACTIVE'")
+    List<StockReservation> findActiveByPrescriptionId(@Param("prescriptionId") Long prescriptionId);
+    
+    // Active reservation of one prescription line
+    @Query("SELECT r FROM StockReservation r WHERE r.prescriptionMedicineId = :lineId AND r.status = 'ACTIVE'")
+    List<StockReservation> findActiveByPrescriptionMedicineId(@Param("lineId") Long prescriptionMedicineId);
+    
+    // Active reservations past their expiry, oldest first
+    @Query("SELECT r FROM StockReservation r WHERE r.status = 'ACTIVE' AND r.expiresAt <= :now ORDER BY r.expiresAt ASC")
+    List<StockReservation> findExpired(@Param("now") LocalDateTime now, Pageable page);
+    
+    // Close an active reservation; returns 0 when it was already closed, so each is closed exactly once
+    @Modifying
+    @Query("UPDATE StockReservation r SET r.status = :status, r.closedAt = :now WHERE r.id = :id AND r.status = 'ACTIVE'")
+    int closeIfActive(@Param("id") Long id, @Param("status") String status, @Param("now") LocalDateTime now);
+    
+    // Reserved quantity per medicine across active reservations: (medicineId, quantity)
+    @Query("SELECT r.medicineId, SUM(r.quantity) FROM StockReservation r WHERE r.status = 'ACTIVE' GROUP BY r.medicineId")
+    List<Object[]> sumActiveByMedicine();
+}
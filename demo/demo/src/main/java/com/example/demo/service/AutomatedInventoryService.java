@@ -7,18 +7,29 @@ import com.example.demo.repository.MedicineRepository;
 import com.example.demo.repository.PrescriptionRepository;
 import com.example.demo.repository.PrescriptionMedicineRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import jakarta.annotation.PostConstruct;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Transactional
@@ -38,79 +49,187 @@ public class AutomatedInventoryService {
     
     @Autowired
     private DatabaseTriggerService databaseTriggerService;
+    
+    @Autowired
+    private BlockedPrescriptionIndex blockedPrescriptionIndex;
+    
+    @Autowired
+    private ReservationService reservationService;
+    
+    @Autowired
+    private MedicineCache medicineCache;
+    
+    @Autowired
+    private InventoryLedger inventoryLedger;
+    
+    private static final String STOCK_BLOCKED = "Pending - Insufficient Stock";
+    
+    // Single-threaded, so two re-evaluations of a blocked prescription never interleave
+    @Autowired
+    @Qualifier("reevaluationExecutor")
+    private Executor reevaluationExecutor;
+    
+    @Autowired
+    private ScheduledJobGuard scheduledJobGuard;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private TransactionTemplate evaluationTransaction;
+    
+    @PostConstruct
+    public void start() {
+        evaluationTransaction = new TransactionTemplate(transactionManager);
+        evaluationTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            blockedPrescriptionIndex.reload(prescriptionMedicineRepository.findShortLinesOfBlockedPrescriptions());
+        } catch (Exception e) {
+            // The scheduled reconciliation fills the index later
+            System.err.println("Warning: Could not load stock-blocked prescriptions: " + e.getMessage());
+        }
+    }
 
     /**
      * Automatically process prescription and update inventory
      * Called when doctor creates a prescription
      */
-    @Async
+    @Async("inventoryExecutor")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public CompletableFuture<Map<String, Object>> processNewPrescription(Long prescriptionId) {
+        return CompletableFuture.completedFuture(evaluatePrescription(prescriptionId, false));
+    }
+
+    /**
+     * Check stock for every line of a prescription and mark it ready or blocked, in a transaction
+     * of its own: callers are internal calls and executor threads, which @Transactional does not reach.
+     * With onlyIfBlocked, prescriptions that left "Pending - Insufficient Stock" meanwhile are skipped.
+     */
+    private Map<String, Object> evaluatePrescription(Long prescriptionId, boolean onlyIfBlocked) {
+        // Warm the inventory cache first: a miss inside the transaction is read from its snapshot and not kept
+        medicineCache.getAll(prescriptionMedicineRepository.findByPrescriptionIdOrderByCreatedDateAsc(prescriptionId)
+            .stream().map(PrescriptionMedicine::getMedicineId).toList());
+        return evaluationTransaction.execute(status -> {
+            Map<String, Object> result = evaluate(prescriptionId, onlyIfBlocked);
+            if (!Boolean.TRUE.equals(result.get("success"))) {
+                status.setRollbackOnly();
+            }
+            return result;
+        });
+    }
+
+    private Map<String, Object> evaluate(Long prescriptionId, boolean onlyIfBlocked) {
         Map<String, Object> result = new HashMap<>();
         
         try {
             Optional<Prescription> optionalPrescription = prescriptionRepository.findById(prescriptionId);
             if (!optionalPrescription.isPresent()) {
+                blockedPrescriptionIndex.unblock(prescriptionId);
                 result.put("success", false);
                 result.put("message", "Prescription not found");
-                return CompletableFuture.completedFuture(result);
+                return result;
             }
             
             Prescription prescription = optionalPrescription.get();
+            if (onlyIfBlocked && !STOCK_BLOCKED.equals(prescription.getStatus())) {
+                blockedPrescriptionIndex.unblock(prescriptionId);
+                result.put("success", false);
+                result.put("message", "Prescription is no longer waiting for stock");
+                return result;
+            }
+            
             List<PrescriptionMedicine> prescriptionMedicines = prescriptionMedicineRepository.findByPrescriptionIdOrderByCreatedDateAsc(prescriptionId);
             
-            // Check inventory availability for all medicines
+            // Check inventory availability for all medicines; stock this prescription already holds counts as available to it
+            Map<Long, Integer> held = reservationService.reservedFor(prescriptionId);
             Map<String, Integer> unavailableMedicines = new HashMap<>();
+            List<Long> shortMedicineIds = new ArrayList<>();
             boolean canFullyFulfill = true;
             
             for (PrescriptionMedicine prescMed : prescriptionMedicines) {
-                Optional<Medicine> medicineOpt = medicineRepository.findById(prescMed.getMedicineId());
+                // Answered from the inventory cache; the reservation below re-checks against the row
+                Optional<MedicineCache.Stock> medicineOpt = medicineCache.get(prescMed.getMedicineId());
                 if (medicineOpt.isPresent()) {
-                    Medicine medicine = medicineOpt.get();
-                    int availableQuantity = medicine.getQuantity();
+                    MedicineCache.Stock medicine = medicineOpt.get();
+                    int availableQuantity = medicine.getAvailableToPromise() + held.getOrDefault(medicine.id(), 0);
                     int requiredQuantity = prescMed.getQuantity();
                     
                     if (availableQuantity < requiredQuantity) {
-                        unavailableMedicines.put(medicine.getName(), availableQuantity);
+                        unavailableMedicines.put(medicine.name(), availableQuantity);
+                        shortMedicineIds.add(medicine.id());
                         canFullyFulfill = false;
                     }
                     
                     // Check if this will trigger low stock alert
-                    if ((availableQuantity - requiredQuantity) <= medicine.getMinStock()) {
-                        notificationService.triggerLowStockAlert(medicine, availableQuantity - requiredQuantity);
+                    if ((availableQuantity - requiredQuantity) <= medicine.minStock()) {
+                        notificationService.triggerLowStockAlert(medicine.toMedicine(), availableQuantity - requiredQuantity);
                     }
                 }
             }
             
+            // Hold the stock now, so a later prescription cannot be promised the same units
+            if (canFullyFulfill) {
+                for (Long medicineId : reserveMedicinesForPrescription(prescriptionId, prescriptionMedicines)) {
+                    shortMedicineIds.add(medicineId);
+                    Integer available = medicineRepository.findAvailableToPromiseById(medicineId);
+                    unavailableMedicines.put(nameOf(medicineId, prescriptionMedicines), available != null ? available : 0);
+                    canFullyFulfill = false;
+                }
+            }
+            
             // Update prescription status based on availability
             if (canFullyFulfill) {
                 prescription.setStatus("Ready for Dispensing");
                 prescription.setInventoryStatus("Available");
             } else {
-                prescription.setStatus("Pending - Insufficient Stock");
+                prescription.setStatus(STOCK_BLOCKED);
                 prescription.setInventoryStatus("Partial/Unavailable");
                 
                 // Trigger stock shortage notification
                 notificationService.triggerStockShortageAlert(prescription, unavailableMedicines);
             }
             
-            // Reserve medicines (optional feature for high-priority prescriptions)
+            prescriptionRepository.save(prescription);
+            
+            // Wait for a restock of the short medicines, or stop waiting
             if (canFullyFulfill) {
-                reserveMedicinesForPrescription(prescriptionId);
+                blockedPrescriptionIndex.unblock(prescriptionId);
+            } else {
+                blockedPrescriptionIndex.block(prescriptionId, prescription.getCreatedDate(), shortMedicineIds);
             }
             
-            prescriptionRepository.save(prescription);
-            
             result.put("success", true);
             result.put("canFullyFulfill", canFullyFulfill);
             result.put("unavailableMedicines", unavailableMedicines);
             result.put("prescription", prescription);
             
-            return CompletableFuture.completedFuture(result);
+            return result;
             
         } catch (Exception e) {
             result.put("success", false);
             result.put("message", "Error processing prescription: " + e.getMessage());
-            return CompletableFuture.completedFuture(result);
+            return result;
+        }
+    }
+
+    /**
+     * Stock of a medicine went up: re-evaluate the prescriptions waiting on it, oldest first.
+     * Runs on the re-evaluation thread, off the request thread that restocked.
+     */
+    public void stockIncreased(Long medicineId) {
+        List<Long> waiting = blockedPrescriptionIndex.waitingOn(medicineId);
+        if (waiting.isEmpty()) {
+            return;
+        }
+        try {
+            reevaluationExecutor.execute(() -> {
+                for (Long prescriptionId : waiting) {
+                    evaluatePrescription(prescriptionId, true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The next blocked-prescription reconciliation re-evaluates them
+            System.err.println("Re-evaluation queue full; prescriptions waiting on medicine " + medicineId
+                + " are left to the periodic reconciliation");
         }
     }
 
@@ -183,24 +302,18 @@ public class AutomatedInventoryService {
         Map<String, Object> result = new HashMap<>();
         
         try {
-            Optional<Medicine> medicineOpt = medicineRepository.findById(prescMed.getMedicineId());
-            if (!medicineOpt.isPresent()) {
+            int requestedQuantity = prescMed.getQuantity();
+            
+            // Dispense out of the line's reservation, then what is in stock, up to the requested quantity
+            StockService.StockChange change = reservationService.dispenseLine(prescMed, requestedQuantity, true);
+            if (change.getMedicine() == null) {
                 result.put("success", false);
-                result.put("message", "Medicine not found in inventory");
+                result.put("message", change.getError() != null ? change.getError() : "Medicine not found in inventory");
                 return result;
             }
             
-            Medicine medicine = medicineOpt.get();
-            int currentStock = medicine.getQuantity();
-            int requestedQuantity = prescMed.getQuantity();
-            
-            // Calculate actual dispensed quantity
-            int dispensedQuantity = Math.min(currentStock, requestedQuantity);
-            
-            // Update inventory
-            medicine.setQuantity(currentStock - dispensedQuantity);
-            medicine.setLastUpdated(LocalDateTime.now());
-            medicineRepository.save(medicine);
+            Medicine medicine = change.getMedicine();
+            int dispensedQuantity = change.getDispensed();
             
             // Update prescription medicine record
             prescMed.setDispensedQuantity(dispensedQuantity);
@@ -209,9 +322,6 @@ public class AutomatedInventoryService {
             prescMed.setStatus(dispensedQuantity >= requestedQuantity ? "Dispensed" : "Partially Dispensed");
             prescriptionMedicineRepository.save(prescMed);
             
-            // Log inventory transaction
-            logInventoryTransaction(medicine, dispensedQuantity, "DISPENSED", prescMed.getPrescription().getId());
-            
             // Check for low stock alert
             if (medicine.getQuantity() <= medicine.getMinStock()) {
                 notificationService.triggerLowStockAlert(medicine, medicine.getQuantity());
@@ -233,90 +343,116 @@ public class AutomatedInventoryService {
     }
 
     /**
-     * Reserve medicines for high-priority prescriptions
+     * Reserve stock for every medicine of a prescription, all or nothing.
+     * Returns the medicines that could not be reserved.
      */
-    private void reserveMedicinesForPrescription(Long prescriptionId) {
+    private List<Long> reserveMedicinesForPrescription(Long prescriptionId, List<PrescriptionMedicine> prescriptionMedicines) {
         try {
-            List<PrescriptionMedicine> prescriptionMedicines = prescriptionMedicineRepository.findByPrescriptionIdOrderByCreatedDateAsc(prescriptionId);
+            List<Long> notReserved = reservationService.reserve(prescriptionId, prescriptionMedicines);
+            if (!notReserved.isEmpty()) {
+                return notReserved;
+            }
             
             for (PrescriptionMedicine prescMed : prescriptionMedicines) {
-                Optional<Medicine> medicineOpt = medicineRepository.findById(prescMed.getMedicineId());
-                if (medicineOpt.isPresent()) {
-                    Medicine medicine = medicineOpt.get();
-                    
-                    // Mark as reserved (you might want to add a reserved_quantity field to Medicine entity)
+                if (prescMed.getMedicineId() != null) {
                     prescMed.setStatus("Reserved");
                     prescriptionMedicineRepository.save(prescMed);
-                    
-                    logInventoryTransaction(medicine, prescMed.getQuantity(), "RESERVED", prescriptionId);
                 }
             }
         } catch (Exception e) {
+            // Left unreserved; dispensing then takes whatever is available at the time
             System.err.println("Error reserving medicines: " + e.getMessage());
         }
+        return new ArrayList<>();
+    }
+
+    private String nameOf(Long medicineId, List<PrescriptionMedicine> prescriptionMedicines) {
+        for (PrescriptionMedicine prescMed : prescriptionMedicines) {
+            if (medicineId.equals(prescMed.getMedicineId())) {
+                return prescMed.getMedicineName();
+            }
+        }
+        return String.valueOf(medicineId);
+    }
+
+    /**
+     * Scheduled task to release reservations of prescriptions not dispensed in time,
+     * then re-evaluate prescriptions waiting on the freed stock
+     */
+    @Scheduled(fixedDelayString = "${inventory.reservation.expiry-check-minutes:5}",
+               initialDelayString = "${inventory.jobs.initial-delay-minutes:1}", timeUnit = TimeUnit.MINUTES)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void expireReservations() {
+        scheduledJobGuard.runExclusive("reservation-expiry", () -> {
+            // Committed before the re-evaluation starts, so it sees the freed stock
+            Set<Long> freed = reservationService.expireDue();
+            freed.forEach(this::stockIncreased);
+        });
     }
 
     /**
      * Scheduled task to monitor inventory and trigger alerts
      * Runs every hour
      */
-    @Scheduled(fixedRate = 3600000) // 1 hour
+    @Scheduled(fixedRateString = "${inventory.monitoring.interval-minutes:60}",
+               initialDelayString = "${inventory.jobs.initial-delay-minutes:1}", timeUnit = TimeUnit.MINUTES)
     public void monitorInventoryLevels() {
-        try {
-            // Run database-level monitoring first
-            databaseTriggerService.runInventoryMonitoring();
-            
-            // Check for low stock medicines
-            List<Medicine> lowStockMedicines = medicineRepository.findLowStockMedicines();
-            for (Medicine medicine : lowStockMedicines) {
-                notificationService.triggerLowStockAlert(medicine, medicine.getQuantity());
-            }
-            
-            // Check for expired medicines
-            LocalDate today = LocalDate.now();
-            List<Medicine> expiredMedicines = medicineRepository.findExpiredMedicines(today);
-            for (Medicine medicine : expiredMedicines) {
-                notificationService.triggerExpiryAlert(medicine, "EXPIRED");
-            }
-            
-            // Check for near-expiry medicines (30 days)
-            LocalDate thirtyDaysFromNow = today.plusDays(30);
-            List<Medicine> nearExpiryMedicines = medicineRepository.findNearExpiryMedicines(today, thirtyDaysFromNow);
-            for (Medicine medicine : nearExpiryMedicines) {
-                notificationService.triggerExpiryAlert(medicine, "NEAR_EXPIRY");
-            }
-            
-            // Update inventory analytics
-            updateInventoryAnalytics();
-            
-        } catch (Exception e) {
-            System.err.println("Error in scheduled inventory monitoring: " + e.getMessage());
+        triggerInventoryMonitoring();
+    }
+
+    /**
+     * Run inventory monitoring now, unless a run is already in progress; returns whether it ran
+     */
+    public boolean triggerInventoryMonitoring() {
+        return scheduledJobGuard.runExclusive("inventory-monitoring", this::runInventoryMonitoring);
+    }
+
+    private void runInventoryMonitoring() {
+        // Run database-level monitoring first
+        databaseTriggerService.runInventoryMonitoring();
+        
+        // Check for low stock medicines
+        List<Medicine> lowStockMedicines = medicineRepository.findLowStockMedicines();
+        for (Medicine medicine : lowStockMedicines) {
+            notificationService.triggerLowStockAlert(medicine, medicine.getQuantity());
         }
+        
+        // Expired and near-expiry alerts are fired by ExpiryScheduler on the day each medicine crosses a threshold
+        
+        // Update inventory analytics
+        updateInventoryAnalytics();
     }
 
     /**
-     * Scheduled task to process pending prescriptions
-     * Runs every 30 minutes
+     * Scheduled reconciliation of stock-blocked prescriptions
+     * Runs every 30 minutes. Restocks re-evaluate waiting prescriptions as they happen
+     * (see stockIncreased); this rebuilds the index from the tables and re-evaluates only
+     * prescriptions that are no longer short of anything, e.g. after a direct database change.
      */
-    @Scheduled(fixedRate = 1800000) // 30 minutes
+    @Scheduled(fixedRateString = "${inventory.blocked-reconcile.interval-minutes:30}",
+               initialDelayString = "${inventory.jobs.initial-delay-minutes:1}", timeUnit = TimeUnit.MINUTES)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void processPendingPrescriptions() {
-        try {
-            List<Prescription> pendingPrescriptions = prescriptionRepository.findByStatus("Pending - Insufficient Stock");
-            
-            for (Prescription prescription : pendingPrescriptions) {
-                // Re-check availability
-                processNewPrescription(prescription.getId());
-            }
-            
-        } catch (Exception e) {
-            System.err.println("Error processing pending prescriptions: " + e.getMessage());
-        }
+        scheduledJobGuard.runExclusive("blocked-prescription-reconcile", () -> {
+            blockedPrescriptionIndex.reload(prescriptionMedicineRepository.findShortLinesOfBlockedPrescriptions());
+            
+            // Queued behind restock re-evaluations on their single thread, and waited for,
+            // so a prescription is never evaluated by both at once
+            List<Long> candidates = prescriptionRepository.findStockBlockedIds();
+            CompletableFuture.runAsync(() -> {
+                for (Long prescriptionId : candidates) {
+                    if (!blockedPrescriptionIndex.isBlocked(prescriptionId)) {
+                        evaluatePrescription(prescriptionId, true);
+                    }
+                }
+            }, reevaluationExecutor).join();
+        });
     }
 
     /**
      * Automatic reorder when stock falls below threshold
      */
-    @Async
+    @Async("inventoryExecutor")
     public CompletableFuture<Void> autoReorderMedicine(Medicine medicine) {
         try {
             if (medicine.getQuantity() <= (medicine.getMinStock() / 2)) {
@@ -326,8 +462,8 @@ public class AutomatedInventoryService {
                 // Create reorder notification/request
                 notificationService.triggerReorderAlert(medicine, suggestedQuantity);
                 
-                // Log reorder requirement
-                logInventoryTransaction(medicine, suggestedQuantity, "REORDER_REQUIRED", null);
+                // Record the reorder requirement; it moves no stock, so both changes are zero
+                inventoryLedger.record(medicine.getId(), InventoryLedger.REORDER_REQUIRED, suggestedQuantity, 0, 0, null);
             }
         } catch (Exception e) {
             System.err.println("Error in auto-reorder: " + e.getMessage());
@@ -356,34 +492,6 @@ public class AutomatedInventoryService {
         }
     }
 
-    /**
-     * Log inventory transactions for audit trail
-     */
-    private void logInventoryTransaction(Medicine medicine, int quantity, String transactionType, Long relatedRecordId) {
-        try {
-            // Here you would save to an inventory_transactions table
-            // For now, we'll just log to console
-            System.out.println(String.format(
-                "INVENTORY TRANSACTION: Medicine=%s, Quantity=%d, Type=%s, RelatedId=%s, Timestamp=%s",
-                medicine.getName(), quantity, transactionType, relatedRecordId, LocalDateTime.now()
-            ));
-            
-            // In a full implementation, you would save this to a database table like:
-            /*
-            InventoryTransaction transaction = new InventoryTransaction();
-            transaction.setMedicineId(medicine.getId());
-            transaction.setQuantity(quantity);
-            transaction.setTransactionType(transactionType);
-            transaction.setRelatedRecordId(relatedRecordId);
-            transaction.setTimestamp(LocalDateTime.now());
-            inventoryTransactionRepository.save(transaction);
-            */
-            
-        } catch (Exception e) {
-            System.err.println("Error logging inventory transaction: " + e.getMessage());
-        }
-    }
-
     /**
      * Get real-time inventory status for dashboard
      */
@@ -0,0 +1,103 @@
+package com.example.demo.service;
+
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Prescriptions held at "Pending - Insufficient Stock", indexed by the medicines they are short of.
+ *
+ * When a medicine is restocked only the prescriptions waiting on it need another look, in the
+ * order they were created. AutomatedInventoryService keeps the index current as it evaluates
+ * prescriptions and rebuilds it from the tables on its periodic reconciliation.
+ */
+@Service
+public class BlockedPrescriptionIndex {
+
+    // Waiting prescriptions per medicine, oldest first
+    private final Map<Long, NavigableSet<Waiting>> byMedicine = new HashMap<>();
+
+    // Medicines each prescription is waiting on
+    private final Map<Long, Blocked> byPrescription = new HashMap<>();
+
+    /**
+     * Record that a prescription is waiting on the given medicines, replacing what it waited on before
+     */
+    public synchronized void block(Long prescriptionId, LocalDateTime createdDate, Collection<Long> medicineIds) {
+        unblock(prescriptionId);
+        Waiting waiting = new Waiting(createdDate, prescriptionId);
+        Set<Long> medicines = new HashSet<>(medicineIds);
+        for (Long medicineId : medicines) {
+            byMedicine.computeIfAbsent(medicineId, id -> new TreeSet<>()).add(waiting);
+        }
+        byPrescription.put(prescriptionId, new Blocked(waiting, medicines));
+    }
+
+    public synchronized void unblock(Long prescriptionId) {
+        Blocked blocked = byPrescription.remove(prescriptionId);
+        if (blocked == null) {
+            return;
+        }
+        for (Long medicineId : blocked.medicineIds) {
+            NavigableSet<Waiting> waiting = byMedicine.get(medicineId);
+            if (waiting != null) {
+                waiting.remove(blocked.waiting);
+                if (waiting.isEmpty()) {
+                    byMedicine.remove(medicineId);
+                }
+            }
+        }
+    }
+
+    // Prescriptions waiting on a medicine, in creation order
+    public synchronized List<Long> waitingOn(Long medicineId) {
+        NavigableSet<Waiting> waiting = byMedicine.get(medicineId);
+        List<Long> prescriptionIds = new ArrayList<>();
+        if (waiting != null) {
+            for (Waiting entry : waiting) {
+                prescriptionIds.add(entry.prescriptionId);
+            }
+        }
+        return prescriptionIds;
+    }
+
+    public synchronized boolean isBlocked(Long prescriptionId) {
+        return byPrescription.containsKey(prescriptionId);
+    }
+
+    /**
+     * Replace the index with the short lines of blocked prescriptions read from the tables.
+     * Each row is (medicineId, prescriptionId, createdDate).
+     */
+    public synchronized void reload(List<Object[]> shortLines) {
+        Map<Long, LocalDateTime> created = new HashMap<>();
+        Map<Long, Set<Long>> medicines = new HashMap<>();
+        for (Object[] line : shortLines) {
+            Long prescriptionId = (Long) line[1];
+            created.put(prescriptionId, (LocalDateTime) line[2]);
+            medicines.computeIfAbsent(prescriptionId, id -> new HashSet<>()).add((Long) line[0]);
+        }
+
+        byMedicine.clear();
+        byPrescription.clear();
+        for (Map.Entry<Long, Set<Long>> prescription : medicines.entrySet()) {
+            block(prescription.getKey(), created.get(prescription.getKey()), prescription.getValue());
+        }
+    }
+
+    public synchronized int size() {
+        return byPrescription.size();
+    }
+
+    private record Blocked(Waiting waiting, Set<Long> medicineIds) {}
+
+    private record Waiting(LocalDateTime createdDate, Long prescriptionId) implements Comparable<Waiting> {
+
+        @Override
+        public int compareTo(Waiting other) {
+            int byTime = Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()).compare(createdDate, other.createdDate);
+            return byTime != 0 ? byTime : prescriptionId.compareTo(other.prescriptionId);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demo.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Walks a whole table in keyset chunks (WHERE id > last ORDER BY id LIMIT n) instead of findAll().
+ *
+ * Each chunk is read and handled in its own short transaction with its own EntityManager, which
+ * is closed, and its row locks released, before the next chunk is read: memory stays at one
+ * chunk however large the table grows. Under open-in-view the request's EntityManager is set
+ * aside for the scan, so chunks never pile up in it and the caller's managed entities and
+ * pending changes are left alone. Handlers keep only what they need from a chunk; the entities
+ * they keep are detached. Call it outside a transaction, or the caller's transaction stays open
+ * (and holds its connection) for the whole scan.
+ */
+@Service
+public class ChunkedScanner {
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${inventory.scan.chunk-size:500}")
+    private int defaultChunkSize;
+
+    private TransactionTemplate chunkTransaction;
+
+    /**
+     * The rows with an id greater than lastId, in ascending id order, at most one page
+     */
+    @FunctionalInterface
+    public interface ChunkQuery<T> {
+        List<T> after(Long lastId, Pageable pageable);
+    }
+
+    @PostConstruct
+    public void start() {
+        chunkTransaction = new TransactionTemplate(transactionManager);
+        chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public <T> long scan(ChunkQuery<T> query, Function<T, Long> idOf, Consumer<List<T>> handler) {
+        return scan(query, idOf, defaultChunkSize, handler);
+    }
+
+    /**
+     * Hand every row to handler, chunkSize rows at a time; returns the number of rows scanned
+     */
+    public <T> long scan(ChunkQuery<T> query, Function<T, Long> idOf, int chunkSize, Consumer<List<T>> handler) {
+        // Outside a transaction, an EntityManager bound here is the request's (open-in-view); chunk
+        // transactions would reuse it. Inside one, REQUIRES_NEW suspends it by itself.
+        Object requestEntityManager = TransactionSynchronizationManager.isActualTransactionActive()
+            ? null : TransactionSynchronizationManager.unbindResourceIfPossible(entityManagerFactory);
+        try {
+            return scanChunks(query, idOf, chunkSize, handler);
+        } finally {
+            if (requestEntityManager != null) {
+                TransactionSynchronizationManager.bindResource(entityManagerFactory, requestEntityManager);
+            }
+        }
+    }
+
+    private <T> long scanChunks(ChunkQuery<T> query, Function<T, Long> idOf, int chunkSize, Consumer<List<T>> handler) {
+        long scanned = 0;
+        Long lastId = 0L;
+        while (true) {
+            Long after = lastId;
+            List<T> chunk = chunkTransaction.execute(status -> {
+                List<T> rows = query.after(after, PageRequest.of(0, chunkSize));
+                if (!rows.isEmpty()) {
+                    handler.accept(rows);
+                }
+                return rows;
+            });
+            if (chunk == null || chunk.isEmpty()) {
+                return scanned;
+            }
+            scanned += chunk.size();
+            lastId = idOf.apply(chunk.get(chunk.size() - 1));
+            if (chunk.size() < chunkSize) {
+                return scanned;
+            }
+        }
+    }
+}
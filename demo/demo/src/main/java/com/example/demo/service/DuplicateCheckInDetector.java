@@ -0,0 +1,188 @@
+package com.example.demo.service;
+
+import com.example.demo.model.QueueEntry;
+import com.example.demo.repository.QueueEntryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Detects duplicate check-ins with hash lookups instead of OR-queries over queue_entries.
+ *
+ * Normalized email, NIC and medical record id keys of every active entry are kept per
+ * stage, fed by the QueueIndex so they follow the queue lifecycle (including drift
+ * repairs). Recently completed visits are kept in a bounded map for the informational
+ * "previously in ... queue" note; older history is not consulted.
+ */
+@Service
+public class DuplicateCheckInDetector implements QueueIndex.Listener {
+
+    private static final String RECEPTION = "reception";
+    private static final String COMPLETED = "completed";
+
+    @Autowired
+    private QueueIndex queueIndex;
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @Value("${queue.duplicates.completed-capacity:10000}")
+    private int completedCapacity;
+
+    // stage -> normalized key -> queue number
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> activeKeys = new ConcurrentHashMap<>();
+
+    // normalized key -> queue number of a recently completed visit, evicted oldest first
+    private final ConcurrentMap<String, String> completedKeys = new ConcurrentHashMap<>();
+    private final Queue<String> completedOrder = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean seeded = false;
+
+    @PostConstruct
+    public void start() {
+        queueIndex.addListener(this);
+        reload();
+    }
+
+    /**
+     * Rebuild the keys from the queue index and the most recently completed visits, e.g. after
+     * rows were written to queue_entries without going through the QueueIndex
+     */
+    public void reload() {
+        seeded = false;
+        onCleared();
+        for (QueueEntry entry : queueIndex.getActiveEntries()) {
+            register(entry);
+        }
+
+        try {
+            List<QueueEntry> recent = queueEntryRepository.findByStageOrderByCompletedTimeDesc(
+                COMPLETED, PageRequest.of(0, Math.max(1, completedCapacity)));
+            // Oldest first so the newest visits are the last to be evicted
+            for (int i = recent.size() - 1; i >= 0; i--) {
+                registerCompleted(recent.get(i));
+            }
+            seeded = true;
+        } catch (Exception e) {
+            System.err.println("Warning: Could not load recently completed queue entries: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Whether lookups can be answered from memory; callers should query the database otherwise
+     */
+    public boolean isReady() {
+        return seeded && queueIndex.isLoaded();
+    }
+
+    /**
+     * Queue number of a reception entry sharing the email, NIC or medical record id
+     */
+    public Optional<String> findReceptionDuplicate(String email, String nic, String medicalRecordId) {
+        return lookup(activeKeys.get(RECEPTION), keys(email, nic, medicalRecordId));
+    }
+
+    /**
+     * Stage of another active or recently completed entry for the same student
+     */
+    public Optional<String> findExistingStage(String email, String nic, String medicalRecordId) {
+        List<String> keys = keys(email, nic, medicalRecordId);
+        for (Map.Entry<String, ConcurrentMap<String, String>> stage : activeKeys.entrySet()) {
+            if (lookup(stage.getValue(), keys).isPresent()) {
+                return Optional.of(stage.getKey());
+            }
+        }
+        return lookup(completedKeys, keys).map(queueNo -> COMPLETED);
+    }
+
+    @Override
+    public void onChange(QueueEntry previous, QueueEntry current) {
+        if (previous != null) {
+            unregister(previous);
+        }
+        if (current != null) {
+            if (COMPLETED.equals(current.getStage())) {
+                registerCompleted(current);
+            } else {
+                register(current);
+            }
+        }
+    }
+
+    @Override
+    public void onCleared() {
+        activeKeys.clear();
+        completedKeys.clear();
+        completedOrder.clear();
+    }
+
+    private void register(QueueEntry entry) {
+        ConcurrentMap<String, String> stage = activeKeys.computeIfAbsent(entry.getStage(), s -> new ConcurrentHashMap<>());
+        for (String key : keys(entry)) {
+            stage.put(key, entry.getQueueNo());
+        }
+    }
+
+    private void unregister(QueueEntry entry) {
+        ConcurrentMap<String, String> stage = activeKeys.get(entry.getStage());
+        if (stage != null) {
+            for (String key : keys(entry)) {
+                // Only drop keys that still point at this entry
+                stage.remove(key, entry.getQueueNo());
+            }
+        }
+    }
+
+    private void registerCompleted(QueueEntry entry) {
+        for (String key : keys(entry)) {
+            if (completedKeys.put(key, entry.getQueueNo()) == null) {
+                completedOrder.add(key);
+            }
+        }
+        while (completedKeys.size() > Math.max(1, completedCapacity) * 3) {
+            String oldest = completedOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            completedKeys.remove(oldest);
+        }
+    }
+
+    private Optional<String> lookup(Map<String, String> keyMap, List<String> keys) {
+        if (keyMap != null) {
+            for (String key : keys) {
+                String queueNo = keyMap.get(key);
+                if (queueNo != null) {
+                    return Optional.of(queueNo);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private List<String> keys(QueueEntry entry) {
+        return keys(entry.getEmail(), entry.getNic(), entry.getMedicalRecordId());
+    }
+
+    // Prefixed so an email can never collide with a NIC or record id
+    private List<String> keys(String email, String nic, String medicalRecordId) {
+        List<String> keys = new ArrayList<>(3);
+        if (email != null && !email.isBlank()) {
+            keys.add("email:" + email.trim().toLowerCase(Locale.ROOT));
+        }
+        if (nic != null && !nic.isBlank()) {
+            keys.add("nic:" + nic.replaceAll("\\s", "").toUpperCase(Locale.ROOT));
+        }
+        if (medicalRecordId != null && !medicalRecordId.isBlank()) {
+            keys.add("record:" + medicalRecordId.trim());
+        }
+        return keys;
+    }
+}
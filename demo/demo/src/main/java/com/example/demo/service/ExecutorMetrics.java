@@ -0,0 +1,62 @@
+package com.example.demo.service;
+
+import com.example.demo.config.AsyncConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Point-in-time view of the application's thread pools: queue depth, active threads,
+ * completed tasks and how often each pool's rejection policy kicked in.
+ */
+@Service
+public class ExecutorMetrics {
+
+    @Autowired
+    private Map<String, ThreadPoolTaskExecutor> executors;
+
+    @Autowired
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    @Autowired
+    private ScheduledJobGuard scheduledJobGuard;
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> pools = new TreeMap<>();
+        for (Map.Entry<String, ThreadPoolTaskExecutor> executor : executors.entrySet()) {
+            ThreadPoolExecutor pool = executor.getValue().getThreadPoolExecutor();
+            Map<String, Object> stats = poolStats(pool);
+            stats.put("queueCapacity", executor.getValue().getQueueCapacity());
+            if (pool.getRejectedExecutionHandler() instanceof AsyncConfig.CountingRejectionHandler handler) {
+                stats.put("rejected", handler.getRejected());
+                stats.put("rejectionPolicy", handler.getPolicy());
+            }
+            pools.put(executor.getKey(), stats);
+        }
+
+        ScheduledThreadPoolExecutor scheduler = taskScheduler.getScheduledThreadPoolExecutor();
+        pools.put("taskScheduler", poolStats(scheduler));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("executors", pools);
+        result.put("scheduledJobs", scheduledJobGuard.getStats());
+        return result;
+    }
+
+    private Map<String, Object> poolStats(ThreadPoolExecutor pool) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("poolSize", pool.getPoolSize());
+        stats.put("maxPoolSize", pool.getMaximumPoolSize());
+        stats.put("activeThreads", pool.getActiveCount());
+        stats.put("queueDepth", pool.getQueue().size());
+        stats.put("completedTasks", pool.getCompletedTaskCount());
+        return stats;
+    }
+}
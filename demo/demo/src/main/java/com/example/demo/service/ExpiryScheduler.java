@@ -0,0 +1,279 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Medicine;
+import com.example.demo.repository.MedicineRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fires expiry alert transitions on the day a medicine crosses a threshold, instead of
+ * rescanning the catalog for expired and near-expiry medicines.
+ *
+ * Every medicine is indexed under the date of its next threshold (30, 15 and 7 days before
+ * expiry, and expired), in a date-ordered map. One timer is armed for the earliest date; when it
+ * fires, only the medicines due that day are looked at: their alerts are reconciled, a
+ * notification goes out and each is re-indexed under its following threshold. MedicineController
+ * re-indexes a medicine whenever its expiry may have changed. Daily work is proportional to the
+ * number of transitions, not to the size of the catalog.
+ *
+ * At startup, transitions missed while the application was down are caught up: a medicine past a
+ * threshold whose ACTIVE expiry alert does not match its current stage is due right away.
+ */
+@Service
+public class ExpiryScheduler {
+
+    /**
+     * Where a medicine is relative to its expiry date. The thresholds match
+     * Medicine.isNearExpiry()/isExpired() and the alert severities of InventoryAlertReconciler.
+     */
+    public enum Stage {
+        VALID(Integer.MAX_VALUE, null, null),
+        NEAR_EXPIRY(29, InventoryAlertReconciler.NEAR_EXPIRY, "LOW"),
+        NEAR_EXPIRY_15(15, InventoryAlertReconciler.NEAR_EXPIRY, "MEDIUM"),
+        NEAR_EXPIRY_7(7, InventoryAlertReconciler.NEAR_EXPIRY, "HIGH"),
+        EXPIRED(-1, InventoryAlertReconciler.EXPIRED, "CRITICAL");
+
+        // The stage starts this many days before the expiry date
+        private final int daysBefore;
+
+        // The ACTIVE alert a medicine in this stage has once its transition was fired
+        private final String alertType;
+        private final String alertSeverity;
+
+        Stage(int daysBefore, String alertType, String alertSeverity) {
+            this.daysBefore = daysBefore;
+            this.alertType = alertType;
+            this.alertSeverity = alertSeverity;
+        }
+
+        public String getAlertType() {
+            return alertType;
+        }
+
+        public String getAlertSeverity() {
+            return alertSeverity;
+        }
+
+        LocalDate startsOn(LocalDate expiry) {
+            return expiry.minusDays(daysBefore);
+        }
+
+        public static Stage on(LocalDate expiry, LocalDate date) {
+            Stage stage = VALID;
+            for (Stage candidate : values()) {
+                if (candidate != VALID && !date.isBefore(candidate.startsOn(expiry))) {
+                    stage = candidate;
+                }
+            }
+            return stage;
+        }
+
+        // The first date after date on which the stage changes; null once expired
+        public static LocalDate nextTransition(LocalDate expiry, LocalDate date) {
+            for (Stage candidate : values()) {
+                if (candidate != VALID && candidate.startsOn(expiry).isAfter(date)) {
+                    return candidate.startsOn(expiry);
+                }
+            }
+            return null;
+        }
+    }
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private InventoryAlertReconciler inventoryAlertReconciler;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private ChunkedScanner chunkedScanner;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private record ExpiryAlert(Long medicineId, String alertType, String severity) { }
+
+    // Medicines by the date of their next transition, and each medicine's entry in it
+    private final TreeMap<LocalDate, Set<Long>> due = new TreeMap<>();
+    private final Map<Long, LocalDate> dueDateById = new HashMap<>();
+    private final Map<Long, LocalDate> expiryById = new HashMap<>();
+
+    private ScheduledFuture<?> timer;
+    private LocalDate timerDate;
+
+    // Held while transitions are fired, so two timer runs never handle the same medicines
+    private final Object firing = new Object();
+
+    private final AtomicLong transitionsFired = new AtomicLong();
+    private volatile LocalDate lastRunDate;
+
+    @PostConstruct
+    public void start() {
+        try {
+            LocalDate today = LocalDate.now();
+            Set<ExpiryAlert> activeAlerts = loadActiveExpiryAlerts();
+            long loaded = chunkedScanner.<Object[]>scan(medicineRepository::findExpiriesAfter, row -> (Long) row[0], rows -> {
+                synchronized (this) {
+                    for (Object[] row : rows) {
+                        Long medicineId = (Long) row[0];
+                        LocalDate expiry = (LocalDate) row[1];
+                        if (expiry == null) {
+                            continue;
+                        }
+                        expiryById.put(medicineId, expiry);
+                        // A transition missed while the application was down left the alert behind the stage
+                        Stage stage = Stage.on(expiry, today);
+                        boolean missed = stage != Stage.VALID
+                            && !activeAlerts.contains(new ExpiryAlert(medicineId, stage.getAlertType(), stage.getAlertSeverity()));
+                        index(medicineId, missed ? today : Stage.nextTransition(expiry, today));
+                    }
+                }
+            });
+            armTimer();
+            System.out.println("Expiry scheduler tracking " + loaded + " medicines");
+        } catch (Exception e) {
+            System.err.println("Warning: Could not load medicine expiry dates: " + e.getMessage());
+        }
+    }
+
+    // The ACTIVE near-expiry and expired alerts, as left by the transitions fired so far
+    private Set<ExpiryAlert> loadActiveExpiryAlerts() {
+        Set<ExpiryAlert> alerts = new HashSet<>();
+        jdbcTemplate.query("SELECT medicine_id, alert_type, severity FROM inventory_alerts " +
+            "WHERE status = 'ACTIVE' AND medicine_id IS NOT NULL AND alert_type IN (?, ?)", rs -> {
+            alerts.add(new ExpiryAlert(rs.getLong("medicine_id"), rs.getString("alert_type"), rs.getString("severity")));
+        }, InventoryAlertReconciler.NEAR_EXPIRY, InventoryAlertReconciler.EXPIRED);
+        return alerts;
+    }
+
+    /**
+     * A medicine was created or edited; a change of stage is fired right away
+     */
+    public void track(Medicine medicine) {
+        if (medicine.getId() == null || medicine.getExpiry() == null) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        synchronized (this) {
+            LocalDate previousExpiry = expiryById.put(medicine.getId(), medicine.getExpiry());
+            if (medicine.getExpiry().equals(previousExpiry)) {
+                return;
+            }
+            Stage stage = Stage.on(medicine.getExpiry(), today);
+            Stage previousStage = previousExpiry != null ? Stage.on(previousExpiry, today) : Stage.VALID;
+            index(medicine.getId(), stage != previousStage ? today : Stage.nextTransition(medicine.getExpiry(), today));
+        }
+        armTimer();
+    }
+
+    public synchronized void untrack(Long medicineId) {
+        expiryById.remove(medicineId);
+        index(medicineId, null);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("trackedMedicines", expiryById.size());
+        stats.put("pendingTransitions", dueDateById.size());
+        stats.put("nextTransitionDate", due.isEmpty() ? null : due.firstKey().toString());
+        stats.put("transitionsFired", transitionsFired.get());
+        stats.put("lastRunDate", lastRunDate != null ? lastRunDate.toString() : null);
+        return stats;
+    }
+
+    // Fire every transition due by today, then wait for the next one
+    private void runDue() {
+        synchronized (firing) {
+            LocalDate today = LocalDate.now();
+            for (Long medicineId : takeDue(today)) {
+                try {
+                    fire(medicineId, today);
+                } catch (Exception e) {
+                    System.err.println("Error firing expiry transition for medicine " + medicineId + ": " + e.getMessage());
+                }
+            }
+            lastRunDate = today;
+        }
+        armTimer();
+    }
+
+    private void fire(Long medicineId, LocalDate today) {
+        Optional<Medicine> optionalMedicine = medicineRepository.findById(medicineId);
+        if (!optionalMedicine.isPresent()) {
+            untrack(medicineId);
+            return;
+        }
+        Medicine medicine = optionalMedicine.get();
+
+        // Alerts follow the new stage: NEAR_EXPIRY created or escalated, or replaced by EXPIRED
+        inventoryAlertReconciler.reconcile(medicine);
+        Stage stage = Stage.on(medicine.getExpiry(), today);
+        if (stage != Stage.VALID) {
+            notificationService.triggerExpiryAlert(medicine, stage == Stage.EXPIRED ? "EXPIRED" : "NEAR_EXPIRY");
+        }
+        transitionsFired.incrementAndGet();
+
+        synchronized (this) {
+            expiryById.put(medicineId, medicine.getExpiry());
+            if (!dueDateById.containsKey(medicineId)) {
+                index(medicineId, Stage.nextTransition(medicine.getExpiry(), today));
+            }
+        }
+    }
+
+    private synchronized List<Long> takeDue(LocalDate today) {
+        List<Long> medicineIds = new ArrayList<>();
+        while (!due.isEmpty() && !due.firstKey().isAfter(today)) {
+            for (Long medicineId : due.pollFirstEntry().getValue()) {
+                dueDateById.remove(medicineId);
+                medicineIds.add(medicineId);
+            }
+        }
+        return medicineIds;
+    }
+
+    // Move a medicine to the given due date, or out of the index when null
+    private void index(Long medicineId, LocalDate dueDate) {
+        LocalDate previous = dueDateById.remove(medicineId);
+        if (previous != null) {
+            Set<Long> sameDay = due.get(previous);
+            sameDay.remove(medicineId);
+            if (sameDay.isEmpty()) {
+                due.remove(previous);
+            }
+        }
+        if (dueDate != null) {
+            due.computeIfAbsent(dueDate, d -> new HashSet<>()).add(medicineId);
+            dueDateById.put(medicineId, dueDate);
+        }
+    }
+
+    // Keep exactly one timer, set for the start of the earliest due date
+    private synchronized void armTimer() {
+        LocalDate next = due.isEmpty() ? null : due.firstKey();
+        if (Objects.equals(next, timerDate) && timer != null && !timer.isDone()) {
+            return;
+        }
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        timerDate = next;
+        timer = next == null ? null
+            : taskScheduler.schedule(this::runDue, next.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
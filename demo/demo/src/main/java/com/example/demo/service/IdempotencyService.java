@@ -0,0 +1,175 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Replays the stored response when a client retries a request with the same Idempotency-Key.
+ *
+ * Keys are scoped per endpoint (and path id) and remembered in memory for ttl-minutes,
+ * up to max-entries keys, evicting the oldest first. A duplicate that arrives while the
+ * first request is still running waits for its result instead of executing again.
+ * A key reused for a different request is recognised by the SHA-256 of the request's
+ * canonical JSON (map keys sorted).
+ * Server errors are not remembered, so a retry after a 5xx runs the request again.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    @Value("${idempotency.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${idempotency.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${idempotency.wait-seconds:30}")
+    private long waitSeconds;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Serializes map entries sorted by key, so equal requests give equal bytes
+    private ObjectMapper canonicalMapper;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Keys in the order they were first seen, for TTL and size eviction
+    private final ConcurrentLinkedQueue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private static final class Entry {
+        final String fingerprint;
+        final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+        volatile Instant expiresAt = Instant.MAX;
+
+        Entry(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        boolean isExpired(Instant now) {
+            return response.isDone() && expiresAt.isBefore(now);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        canonicalMapper = objectMapper.copy().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    }
+
+    /**
+     * Run the action once per (scope, key). Without a key the action simply runs.
+     * The request body is fingerprinted so a key reused for a different request is rejected.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<T> execute(String scope, String key, Object request, Supplier<ResponseEntity<T>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        evict();
+
+        String storeKey = scope + "\n" + key.trim();
+        String fingerprint = fingerprint(request);
+        Entry created = new Entry(fingerprint);
+        Entry existing = entries.compute(storeKey, (k, current) ->
+            current == null || current.isExpired(Instant.now()) ? created : current);
+
+        if (existing != created) {
+            if (!existing.fingerprint.equals(fingerprint)) {
+                return (ResponseEntity<T>) error(422, "Idempotency-Key was already used for a different request");
+            }
+            return (ResponseEntity<T>) awaitReplay(existing);
+        }
+
+        insertionOrder.add(storeKey);
+        try {
+            ResponseEntity<T> response = action.get();
+            if (response.getStatusCode().is5xxServerError()) {
+                entries.remove(storeKey, created);
+            } else {
+                created.expiresAt = Instant.now().plusSeconds(ttlMinutes * 60);
+            }
+            created.response.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            entries.remove(storeKey, created);
+            created.response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private ResponseEntity<?> awaitReplay(Entry entry) {
+        ResponseEntity<?> original;
+        try {
+            original = entry.response.get(waitSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            return error(409, "A request with this Idempotency-Key is still in progress");
+        } catch (ExecutionException e) {
+            return error(500, "The original request with this Idempotency-Key failed; please retry");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return error(503, "Interrupted while waiting for the original request");
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(original.getHeaders());
+        headers.set(REPLAYED_HEADER, "true");
+        return new ResponseEntity<>(original.getBody(), headers, original.getStatusCode());
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonicalMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint the request: " + e.getMessage(), e);
+        }
+    }
+
+    // Drop expired keys, then the oldest completed ones while over capacity. Keys still in
+    // flight are stepped over, so one slow request does not hold up eviction behind it.
+    private void evict() {
+        Instant now = Instant.now();
+        Iterator<String> keys = insertionOrder.iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Entry entry = entries.get(key);
+            if (entry != null && !entry.response.isDone()) {
+                continue;
+            }
+            if (entry != null && !entry.isExpired(now) && entries.size() <= maxEntries) {
+                break;
+            }
+            keys.remove();
+            if (entry != null) {
+                entries.remove(key, entry);
+            }
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> error(int status, String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", message);
+        return ResponseEntity.status(status).body(response);
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Medicine;
+import com.example.demo.repository.MedicineRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Brings the ACTIVE inventory alerts in line with the medicines they describe.
+ *
+ * The alerts each medicine should have (low stock, out of stock, expired, near expiry) are
+ * computed in memory and compared with the ACTIVE alerts, which are loaded once and keyed by
+ * (medicine, type). Only the differences are written, as batched INSERTs and UPDATEs: a full
+ * check costs one query for the alerts, one per chunk of medicines and a few batches, instead
+ * of several lookups and saves per medicine.
+ */
+@Service
+public class InventoryAlertReconciler {
+
+    public static final String LOW_STOCK = "LOW_STOCK";
+    public static final String OUT_OF_STOCK = "OUT_OF_STOCK";
+    public static final String EXPIRED = "EXPIRED";
+    public static final String NEAR_EXPIRY = "NEAR_EXPIRY";
+
+    private static final String SELECT_ACTIVE =
+        "SELECT id, medicine_id, alert_type, medicine_name, alert_message, severity, current_quantity, min_stock, expiry_date " +
+        "FROM inventory_alerts WHERE status = 'ACTIVE' AND medicine_id IS NOT NULL";
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ChunkedScanner chunkedScanner;
+
+    /**
+     * What one reconciliation changed
+     */
+    public record Result(int created, int updated, int resolved, int unchanged) {
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("created", created);
+            map.put("updated", updated);
+            map.put("resolved", resolved);
+            map.put("unchanged", unchanged);
+            return map;
+        }
+    }
+
+    private record Key(Long medicineId, String alertType) { }
+
+    // The fields of an alert that follow the medicine
+    private record AlertState(String medicineName, String message, String severity, Integer currentQuantity,
+                              Integer minStock, LocalDate expiryDate) { }
+
+    private record ActiveAlert(Long id, AlertState state) { }
+
+    /**
+     * Reconcile the alerts of every medicine, reading medicines in chunks (see ChunkedScanner).
+     * ACTIVE alerts of medicines that no longer exist are resolved.
+     */
+    public Result reconcileAll() {
+        Batch batch = loadActive(SELECT_ACTIVE);
+
+        // Each chunk's differences are written in the chunk's own transaction
+        chunkedScanner.scan(medicineRepository::findByIdGreaterThanOrderByIdAsc, Medicine::getId, chunk -> {
+            for (Medicine medicine : chunk) {
+                batch.reconcile(medicine);
+            }
+            batch.flush();
+        });
+
+        batch.resolveRemaining();
+        batch.flush();
+        return batch.result();
+    }
+
+    /**
+     * Reconcile the alerts of one medicine, e.g. right after its stock changed
+     */
+    public Result reconcile(Medicine medicine) {
+        Batch batch = loadActive(SELECT_ACTIVE + " AND medicine_id = ?", medicine.getId());
+        batch.reconcile(medicine);
+        batch.flush();
+        return batch.result();
+    }
+
+    // The alerts a medicine should have, by type
+    private Map<String, AlertState> desiredAlerts(Medicine medicine) {
+        Map<String, AlertState> desired = new HashMap<>();
+        if (medicine.isLowStock()) {
+            desired.put(LOW_STOCK, state(medicine,
+                "Low stock alert: " + medicine.getName() + " has only " + medicine.getQuantity() + " units left (minimum: " + medicine.getMinStock() + ")",
+                lowStockSeverity(medicine)));
+        }
+        if (medicine.getQuantity() <= 0) {
+            desired.put(OUT_OF_STOCK, state(medicine,
+                "OUT OF STOCK: " + medicine.getName() + " is completely out of stock", "CRITICAL"));
+        }
+        if (medicine.isExpired()) {
+            desired.put(EXPIRED, state(medicine,
+                "EXPIRED: " + medicine.getName() + " expired on " + medicine.getExpiry(), "CRITICAL"));
+        }
+        if (medicine.isNearExpiry()) {
+            desired.put(NEAR_EXPIRY, state(medicine,
+                "Near expiry: " + medicine.getName() + " expires on " + medicine.getExpiry(),
+                expirySeverity(medicine.getExpiry())));
+        }
+        return desired;
+    }
+
+    private static AlertState state(Medicine medicine, String message, String severity) {
+        return new AlertState(medicine.getName(), message, severity, medicine.getQuantity(), medicine.getMinStock(), medicine.getExpiry());
+    }
+
+    private static String lowStockSeverity(Medicine medicine) {
+        int quantity = medicine.getQuantity();
+        int minStock = medicine.getMinStock();
+
+        if (quantity <= 0) {
+            return "CRITICAL";
+        } else if (quantity <= minStock / 2) {
+            return "HIGH";
+        } else if (quantity <= minStock * 0.75) {
+            return "MEDIUM";
+        } else {
+            return "LOW";
+        }
+    }
+
+    static String expirySeverity(LocalDate expiryDate) {
+        long daysUntilExpiry = ChronoUnit.DAYS.between(LocalDate.now(), expiryDate);
+
+        if (daysUntilExpiry <= 7) {
+            return "HIGH";
+        } else if (daysUntilExpiry <= 15) {
+            return "MEDIUM";
+        } else {
+            return "LOW";
+        }
+    }
+
+    // Load the ACTIVE alerts once into a batch keyed by (medicine, type)
+    private Batch loadActive(String sql, Object... args) {
+        Batch batch = new Batch();
+        jdbcTemplate.query(sql + " ORDER BY id", rs -> {
+            Date expiry = rs.getDate("expiry_date");
+            AlertState state = new AlertState(rs.getString("medicine_name"), rs.getString("alert_message"), rs.getString("severity"),
+                rs.getObject("current_quantity", Integer.class), rs.getObject("min_stock", Integer.class),
+                expiry != null ? expiry.toLocalDate() : null);
+            batch.addActive(new Key(rs.getLong("medicine_id"), rs.getString("alert_type")), new ActiveAlert(rs.getLong("id"), state));
+        }, args);
+        return batch;
+    }
+
+    /**
+     * Differences found so far, written in batches
+     */
+    private final class Batch {
+        private final Map<Key, ActiveAlert> active = new HashMap<>();
+        private final List<Object[]> inserts = new ArrayList<>();
+        private final List<Object[]> updates = new ArrayList<>();
+        private final List<Object[]> resolves = new ArrayList<>();
+        private final Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        private int created;
+        private int updated;
+        private int resolved;
+        private int unchanged;
+
+        void addActive(Key key, ActiveAlert alert) {
+            // Only one alert per medicine and type should be ACTIVE; the oldest is kept
+            if (active.putIfAbsent(key, alert) != null) {
+                resolve(alert.id());
+            }
+        }
+
+        void reconcile(Medicine medicine) {
+            Map<String, AlertState> desired = desiredAlerts(medicine);
+            for (String alertType : List.of(LOW_STOCK, OUT_OF_STOCK, EXPIRED, NEAR_EXPIRY)) {
+                ActiveAlert current = active.remove(new Key(medicine.getId(), alertType));
+                AlertState wanted = desired.get(alertType);
+                if (wanted == null) {
+                    if (current != null) {
+                        resolve(current.id());
+                    }
+                } else if (current == null) {
+                    inserts.add(new Object[] { alertType, medicine.getId(), wanted.medicineName(), wanted.currentQuantity(),
+                        wanted.minStock(), toDate(wanted.expiryDate()), wanted.message(), wanted.severity(), now });
+                    created++;
+                } else if (!wanted.equals(current.state())) {
+                    updates.add(new Object[] { wanted.medicineName(), wanted.currentQuantity(), wanted.minStock(),
+                        toDate(wanted.expiryDate()), wanted.message(), wanted.severity(), now, current.id() });
+                    updated++;
+                } else {
+                    unchanged++;
+                }
+            }
+        }
+
+        // Whatever is still ACTIVE belongs to medicines that no longer exist
+        void resolveRemaining() {
+            for (ActiveAlert alert : active.values()) {
+                resolve(alert.id());
+            }
+            active.clear();
+        }
+
+        void flush() {
+            if (!inserts.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                    "INSERT INTO inventory_alerts (alert_type, medicine_id, medicine_name, current_quantity, min_stock, expiry_date, " +
+                    "alert_message, severity, status, created_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, 'ACTIVE', ?)", inserts);
+                inserts.clear();
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                    "UPDATE inventory_alerts SET medicine_name = ?, current_quantity = ?, min_stock = ?, expiry_date = ?, " +
+                    "alert_message = ?, severity = ?, created_date = ? WHERE id = ? AND status = 'ACTIVE'", updates);
+                updates.clear();
+            }
+            if (!resolves.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                    "UPDATE inventory_alerts SET status = 'RESOLVED', resolved_date = ?, resolved_by = 'System' " +
+                    "WHERE id = ? AND status = 'ACTIVE'", resolves);
+                resolves.clear();
+            }
+        }
+
+        Result result() {
+            return new Result(created, updated, resolved, unchanged);
+        }
+
+        private void resolve(Long alertId) {
+            resolves.add(new Object[] { now, alertId });
+            resolved++;
+        }
+
+        private Date toDate(LocalDate date) {
+            return date != null ? Date.valueOf(date) : null;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.InventoryTransaction;
+import com.example.demo.entity.Medicine;
+import com.example.demo.repository.InventoryTransactionRepository;
+import com.example.demo.repository.MedicineRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only ledger of inventory events (inventory_transactions), fed by every stock mutation.
+ *
+ * Events are queued when their transaction commits and written by one writer thread that
+ * groups whatever arrives within flush-interval-ms into a single multi-row INSERT, so recording
+ * an event never waits for the database. A failed write is retried rather than dropped; while
+ * the database is unavailable events pile up in the queue, which holds at most max-queue of
+ * them. Events that do not fit are appended to a local spill file instead, and the writer
+ * replays that file, in one transaction, once the queue is back under half full. On shutdown
+ * the queue is drained with a few attempts per batch; what cannot be written then, and events
+ * recorded after the stop, go to the spill file too, which is replayed by the next start. Only
+ * events the spill file could not take, or still queued when the process is killed outright,
+ * are lost; balanceAt() reports whether its answer may be missing any.
+ *
+ * Because every change to quantity and reserved quantity is a signed row, the stock of a
+ * medicine at any past time is its current stock minus the changes recorded since.
+ */
+@Service
+public class InventoryLedger {
+
+    public static final String ADDED = "ADDED";
+    public static final String ADJUSTED = "ADJUSTED";
+    public static final String REMOVED = "REMOVED";
+    public static final String DISPENSED = "DISPENSED";
+    public static final String RESERVED = "RESERVED";
+    public static final String RELEASED = "RELEASED";
+    public static final String REORDER_REQUIRED = "REORDER_REQUIRED";
+
+    private static final String INSERT_PREFIX = "INSERT INTO inventory_transactions " +
+        "(medicine_id, transaction_type, quantity, quantity_change, reserved_change, related_id, recorded_at) VALUES ";
+    private static final int COLUMNS = 7;
+    private static final int SHUTDOWN_ATTEMPTS = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private InventoryTransactionRepository transactionRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${inventory.ledger.flush-interval-ms:5}")
+    private long flushIntervalMillis;
+
+    @Value("${inventory.ledger.max-batch:500}")
+    private int maxBatch;
+
+    @Value("${inventory.ledger.retry-delay-ms:1000}")
+    private long retryDelayMillis;
+
+    @Value("${inventory.ledger.max-queue:100000}")
+    private int maxQueue;
+
+    @Value("${inventory.ledger.spill-file:inventory-ledger-spill.log}")
+    private String spillPath;
+
+    private LinkedBlockingQueue<InventoryTransaction> queue;
+    private final Object lifecycle = new Object();
+    private volatile boolean running = false;
+    private volatile int inFlight = 0;
+    private Thread writer;
+    private TransactionTemplate replayTransaction;
+
+    // Overflow appended by anyone, and the part the writer is replaying (renamed so appends go on)
+    private Path spillFile;
+    private Path replayFile;
+    private final Object spillLock = new Object();
+    private long nextReplayAt = 0;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    // Events in the spill files, including those left by a previous run
+    private final AtomicLong spillPending = new AtomicLong();
+    private final AtomicBoolean spilling = new AtomicBoolean();
+    private final Map<Long, Long> lostByMedicine = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        queue = new LinkedBlockingQueue<>(Math.max(1, maxQueue));
+        replayTransaction = new TransactionTemplate(transactionManager);
+        replayTransaction.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+        spillFile = Paths.get(spillPath).toAbsolutePath();
+        replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replaying");
+        long leftOver = countLines(spillFile) + countLines(replayFile);
+        spillPending.set(leftOver);
+        if (leftOver > 0) {
+            System.out.println("Inventory ledger has " + leftOver + " spilled events to replay from " + spillFile);
+        }
+        synchronized (lifecycle) {
+            running = true;
+        }
+        // A long-lived loop, so it gets its own thread rather than a slot in the shared pools
+        writer = new Thread(this::writeLoop, "inventory-ledger-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        synchronized (lifecycle) {
+            running = false;
+        }
+        writer.join();
+        // Anything queued between the writer's last poll and the stop
+        List<InventoryTransaction> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            writeWithRetry(rest);
+        }
+    }
+
+    /**
+     * Record an event once the current transaction commits (right away outside one).
+     * quantityChange and reservedChange are the signed effects on the medicine's stock.
+     */
+    public void record(Long medicineId, String type, int quantity, int quantityChange, int reservedChange, Long relatedId) {
+        if (medicineId == null) {
+            return;
+        }
+        InventoryTransaction entry = new InventoryTransaction(medicineId, type, quantity, quantityChange, reservedChange, relatedId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(entry);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                enqueue(entry);
+            }
+        });
+    }
+
+    /**
+     * Ledger rows of one medicine between from (inclusive) and to (exclusive), newest first
+     */
+    public List<InventoryTransaction> history(Long medicineId, LocalDateTime from, LocalDateTime to, int limit) {
+        awaitWritten();
+        return transactionRepository.findHistory(medicineId, from, to, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Quantity and reserved quantity of a medicine as they were at the given time, worked back
+     * from its current stock. Exact from ledgerStartsAt on, provided the stock was only changed
+     * through the application; exact is false while spilled events wait to be replayed (they may
+     * belong to this medicine) or when events of this medicine were lost since this instance started.
+     */
+    public Map<String, Object> balanceAt(Long medicineId, LocalDateTime at) {
+        awaitWritten();
+        // A deleted medicine has no stock now; its REMOVED row takes the ledger back to its last stock
+        Optional<Medicine> medicine = medicineRepository.findById(medicineId);
+        int quantity = medicine.map(Medicine::getQuantity).orElse(0);
+        int reserved = medicine.map(Medicine::getReservedQuantity).orElse(0);
+
+        List<Object[]> sums = transactionRepository.sumChangesAfter(medicineId, at);
+        Object[] changesSince = sums.isEmpty() ? new Object[] { 0L, 0L } : sums.get(0);
+
+        Map<String, Object> balance = new HashMap<>();
+        balance.put("medicineId", medicineId);
+        balance.put("at", at.toString());
+        balance.put("quantity", quantity - ((Number) changesSince[0]).intValue());
+        balance.put("reservedQuantity", reserved - ((Number) changesSince[1]).intValue());
+        balance.put("ledgerStartsAt", transactionRepository.findFirstRecordedAt(medicineId));
+        long unwritten = spillPending.get();
+        long lostEvents = lostByMedicine.getOrDefault(medicineId, 0L);
+        balance.put("exact", unwritten == 0 && lostEvents == 0);
+        balance.put("unwrittenEvents", unwritten);
+        balance.put("lostEvents", lostEvents);
+        return balance;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("recorded", recorded.get());
+        stats.put("written", written.get());
+        stats.put("batches", batches.get());
+        stats.put("pending", pending());
+        stats.put("queueDepth", queue.size());
+        stats.put("queueCapacity", Math.max(1, maxQueue));
+        stats.put("spilled", spilled.get());
+        stats.put("spillPending", spillPending.get());
+        stats.put("failedWrites", failedWrites.get());
+        stats.put("lost", lost.get());
+        return stats;
+    }
+
+    private void enqueue(InventoryTransaction entry) {
+        entry.setRecordedAt(LocalDateTime.now());
+        recorded.incrementAndGet();
+        synchronized (lifecycle) {
+            if (running && queue.offer(entry)) {
+                if (spilling.compareAndSet(true, false)) {
+                    System.err.println("Inventory ledger queue has room again; " + spilled.get() + " events spilled so far");
+                }
+                return;
+            }
+        }
+        // Queue full, or already stopping with nobody left to drain it: the committing thread
+        // only appends to a local file, and never waits for the database
+        if (running && spilling.compareAndSet(false, true)) {
+            System.err.println("Inventory ledger queue is full (" + queue.size() + " events); spilling events to " + spillFile);
+        }
+        spill(List.of(entry));
+    }
+
+    private void writeLoop() {
+        List<InventoryTransaction> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                if (running && spillPending.get() > 0 && queue.size() < Math.max(1, maxQueue) / 2
+                        && System.currentTimeMillis() >= nextReplayAt) {
+                    replaySpill();
+                }
+                InventoryTransaction first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                inFlight = 1;
+
+                // Group commit: events arriving within the flush interval share one INSERT
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    InventoryTransaction next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                inFlight = batch.size();
+
+                writeWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+                inFlight = 0;
+            }
+        }
+    }
+
+    // Keep retrying while the application runs; once it is stopping, spill after a few attempts
+    private void writeWithRetry(List<InventoryTransaction> batch) {
+        int attempts = 0;
+        while (true) {
+            try {
+                insert(batch);
+                written.addAndGet(batch.size());
+                batches.incrementAndGet();
+                return;
+            } catch (Exception e) {
+                failedWrites.incrementAndGet();
+                attempts++;
+                System.err.println("Error writing " + batch.size() + " inventory ledger rows (attempt " + attempts + "): " + e.getMessage());
+                if (!running && attempts >= SHUTDOWN_ATTEMPTS) {
+                    System.err.println("Spilling " + batch.size() + " inventory ledger rows at shutdown");
+                    spill(batch);
+                    return;
+                }
+                try {
+                    Thread.sleep(retryDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    spill(batch);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void insert(List<InventoryTransaction> batch) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+        Object[] args = new Object[batch.size() * COLUMNS];
+        int i = 0;
+        for (InventoryTransaction entry : batch) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?)");
+            args[i++] = entry.getMedicineId();
+            args[i++] = entry.getTransactionType();
+            args[i++] = entry.getQuantity();
+            args[i++] = entry.getQuantityChange();
+            args[i++] = entry.getReservedChange();
+            args[i++] = entry.getRelatedId();
+            args[i++] = Timestamp.valueOf(entry.getRecordedAt());
+        }
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    // Append events to the spill file; those it cannot take are lost and counted per medicine
+    private void spill(List<InventoryTransaction> entries) {
+        synchronized (spillLock) {
+            try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (InventoryTransaction entry : entries) {
+                    out.write(toLine(entry));
+                    out.newLine();
+                }
+            } catch (IOException e) {
+                System.err.println("Error spilling " + entries.size() + " inventory ledger rows to " + spillFile + ": " + e.getMessage());
+                lost.addAndGet(entries.size());
+                for (InventoryTransaction entry : entries) {
+                    lostByMedicine.merge(entry.getMedicineId(), 1L, Long::sum);
+                }
+                return;
+            }
+            spilled.addAndGet(entries.size());
+            spillPending.addAndGet(entries.size());
+        }
+    }
+
+    // Write the spilled events in one transaction, so a failed or interrupted replay leaves no duplicates behind
+    private void replaySpill() {
+        try {
+            synchronized (spillLock) {
+                if (!Files.exists(replayFile)) {
+                    if (!Files.exists(spillFile)) {
+                        return;
+                    }
+                    Files.move(spillFile, replayFile);
+                }
+            }
+            Long replayed = replayTransaction.execute(status -> {
+                long count = 0;
+                try (BufferedReader in = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+                    List<InventoryTransaction> chunk = new ArrayList<>();
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (line.isEmpty()) {
+                            continue;
+                        }
+                        chunk.add(fromLine(line));
+                        if (chunk.size() >= maxBatch) {
+                            insert(chunk);
+                            count += chunk.size();
+                            chunk.clear();
+                        }
+                    }
+                    if (!chunk.isEmpty()) {
+                        insert(chunk);
+                        count += chunk.size();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return count;
+            });
+            Files.delete(replayFile);
+            written.addAndGet(replayed);
+            batches.incrementAndGet();
+            spillPending.addAndGet(-replayed);
+            System.out.println("Replayed " + replayed + " spilled inventory ledger rows");
+        } catch (Exception e) {
+            failedWrites.incrementAndGet();
+            nextReplayAt = System.currentTimeMillis() + retryDelayMillis;
+            System.err.println("Error replaying spilled inventory ledger rows from " + replayFile + ": " + e.getMessage());
+        }
+    }
+
+    // One tab-separated line per event; an empty related id stands for null
+    private static String toLine(InventoryTransaction entry) {
+        return entry.getMedicineId() + "\t" + entry.getTransactionType() + "\t" + entry.getQuantity() + "\t"
+            + entry.getQuantityChange() + "\t" + entry.getReservedChange() + "\t"
+            + (entry.getRelatedId() != null ? entry.getRelatedId() : "") + "\t" + entry.getRecordedAt();
+    }
+
+    private static InventoryTransaction fromLine(String line) {
+        String[] fields = line.split("\t", -1);
+        InventoryTransaction entry = new InventoryTransaction(Long.valueOf(fields[0]), fields[1], Integer.valueOf(fields[2]),
+            Integer.valueOf(fields[3]), Integer.valueOf(fields[4]), fields[5].isEmpty() ? null : Long.valueOf(fields[5]));
+        entry.setRecordedAt(LocalDateTime.parse(fields[6]));
+        return entry;
+    }
+
+    private static long countLines(Path file) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return in.lines().filter(line -> !line.isEmpty()).count();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not read inventory ledger spill file " + file + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private int pending() {
+        return queue.size() + inFlight;
+    }
+
+    // Let events already committed reach the table before it is queried (bounded wait)
+    private void awaitWritten() {
+        long deadline = System.currentTimeMillis() + Math.max(100, flushIntervalMillis * 20);
+        while (pending() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -7,9 +7,9 @@ import com.example.demo.repository.InventoryAlertRepository;
 import com.example.demo.repository.MedicineRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -23,30 +23,36 @@ public class InventoryService {
     @Autowired
     private InventoryAlertRepository alertRepository;
     
+    @Autowired
+    private ReservationService reservationService;
+    
+    @Autowired
+    private MedicineCache medicineCache;
+    
+    @Autowired
+    private InventoryAlertReconciler inventoryAlertReconciler;
+    
+    @Autowired
+    private ChunkedScanner chunkedScanner;
+    
     // Check and update inventory after medicine dispensing
     public void updateInventoryAfterDispensing(List<PrescriptionMedicine> prescriptionMedicines) {
         for (PrescriptionMedicine prescriptionMedicine : prescriptionMedicines) {
             if (prescriptionMedicine.getMedicineId() != null) {
-                Optional<Medicine> medicineOpt = medicineRepository.findById(prescriptionMedicine.getMedicineId());
-                if (medicineOpt.isPresent()) {
-                    Medicine medicine = medicineOpt.get();
-                    
-                    // Update quantity
-                    int newQuantity = medicine.getQuantity() - prescriptionMedicine.getQuantity();
-                    medicine.setQuantity(Math.max(0, newQuantity)); // Don't go below 0
-                    medicine.setLastUpdated(LocalDateTime.now());
-                    
-                    medicineRepository.save(medicine);
-                    
+                // Takes the line's reservation first, then what is left when the full quantity is not in stock
+                StockService.StockChange change = reservationService.dispenseLine(
+                    prescriptionMedicine, prescriptionMedicine.getQuantity(), true);
+                Medicine medicine = change.getMedicine();
+                if (medicine != null) {
                     // Check for alerts after inventory update
                     checkAndCreateAlerts(medicine);
                     
-                    // Update prescription medicine status based on availability
-                    if (newQuantity <= 0) {
+                    // Update prescription medicine status based on what was dispensed
+                    if (change.getDispensed() <= 0) {
                         prescriptionMedicine.setStatus("Out of Stock");
-                    } else if (newQuantity < prescriptionMedicine.getQuantity()) {
+                    } else if (change.getDispensed() < prescriptionMedicine.getQuantity()) {
                         prescriptionMedicine.setStatus("Partially Dispensed");
-                        prescriptionMedicine.setDispensedQuantity(newQuantity);
+                        prescriptionMedicine.setDispensedQuantity(change.getDispensed());
                     } else {
                         prescriptionMedicine.setStatus("Dispensed");
                         prescriptionMedicine.setDispensedQuantity(prescriptionMedicine.getQuantity());
@@ -58,119 +64,16 @@ public class InventoryService {
     
     // Check and create alerts for a specific medicine
     public void checkAndCreateAlerts(Medicine medicine) {
-        // Check for low stock alert
-        if (medicine.isLowStock()) {
-            createOrUpdateAlert(medicine, "LOW_STOCK", 
-                "Low stock alert: " + medicine.getName() + " has only " + medicine.getQuantity() + " units left (minimum: " + medicine.getMinStock() + ")",
-                determineLowStockSeverity(medicine));
-        } else {
-            // Resolve existing low stock alert if stock is now adequate
-            resolveAlert(medicine.getId(), "LOW_STOCK");
-        }
-        
-        // Check for out of stock alert
-        if (medicine.getQuantity() <= 0) {
-            createOrUpdateAlert(medicine, "OUT_OF_STOCK", 
-                "OUT OF STOCK: " + medicine.getName() + " is completely out of stock",
-                "CRITICAL");
-        } else {
-            // Resolve existing out of stock alert if stock is now available
-            resolveAlert(medicine.getId(), "OUT_OF_STOCK");
-        }
-        
-        // Check for expired medicines alert
-        if (medicine.isExpired()) {
-            createOrUpdateAlert(medicine, "EXPIRED", 
-                "EXPIRED: " + medicine.getName() + " expired on " + medicine.getExpiry(),
-                "CRITICAL");
-        }
-        
-        // Check for near expiry alert
-        if (medicine.isNearExpiry()) {
-            createOrUpdateAlert(medicine, "NEAR_EXPIRY", 
-                "Near expiry: " + medicine.getName() + " expires on " + medicine.getExpiry(),
-                determineExpiryAlertSeverity(medicine.getExpiry()));
-        } else {
-            // Resolve near expiry alert if medicine is no longer near expiry
-            resolveAlert(medicine.getId(), "NEAR_EXPIRY");
-        }
+        inventoryAlertReconciler.reconcile(medicine);
     }
     
-    // Run comprehensive inventory check for all medicines
-    public void runInventoryCheck() {
-        List<Medicine> allMedicines = medicineRepository.findAll();
-        for (Medicine medicine : allMedicines) {
-            checkAndCreateAlerts(medicine);
-        }
-    }
-    
-    // Create or update an alert
-    private void createOrUpdateAlert(Medicine medicine, String alertType, String message, String severity) {
-        Optional<InventoryAlert> existingAlert = alertRepository.findByMedicineIdAndAlertTypeAndStatus(
-            medicine.getId(), alertType, "ACTIVE");
-        
-        if (existingAlert.isPresent()) {
-            // Update existing alert
-            InventoryAlert alert = existingAlert.get();
-            alert.setAlertMessage(message);
-            alert.setSeverity(severity);
-            alert.setCurrentQuantity(medicine.getQuantity());
-            alert.setMinStock(medicine.getMinStock());
-            alert.setExpiryDate(medicine.getExpiry());
-            alert.setCreatedDate(LocalDateTime.now()); // Update timestamp
-            alertRepository.save(alert);
-        } else {
-            // Create new alert
-            InventoryAlert alert = new InventoryAlert(alertType, medicine.getId(), 
-                medicine.getName(), message, severity);
-            alert.setCurrentQuantity(medicine.getQuantity());
-            alert.setMinStock(medicine.getMinStock());
-            alert.setExpiryDate(medicine.getExpiry());
-            alertRepository.save(alert);
-        }
-    }
-    
-    // Resolve an alert
-    private void resolveAlert(Long medicineId, String alertType) {
-        Optional<InventoryAlert> existingAlert = alertRepository.findByMedicineIdAndAlertTypeAndStatus(
-            medicineId, alertType, "ACTIVE");
-        
-        if (existingAlert.isPresent()) {
-            InventoryAlert alert = existingAlert.get();
-            alert.setStatus("RESOLVED");
-            alert.setResolvedDate(LocalDateTime.now());
-            alert.setResolvedBy("System");
-            alertRepository.save(alert);
-        }
-    }
-    
-    // Determine low stock alert severity
-    private String determineLowStockSeverity(Medicine medicine) {
-        int quantity = medicine.getQuantity();
-        int minStock = medicine.getMinStock();
-        
-        if (quantity <= 0) {
-            return "CRITICAL";
-        } else if (quantity <= minStock / 2) {
-            return "HIGH";
-        } else if (quantity <= minStock * 0.75) {
-            return "MEDIUM";
-        } else {
-            return "LOW";
-        }
-    }
-    
-    // Determine expiry alert severity based on days until expiry
-    private String determineExpiryAlertSeverity(LocalDate expiryDate) {
-        long daysUntilExpiry = LocalDate.now().until(expiryDate).getDays();
-        
-        if (daysUntilExpiry <= 7) {
-            return "HIGH";
-        } else if (daysUntilExpiry <= 15) {
-            return "MEDIUM";
-        } else {
-            return "LOW";
-        }
+    // Run comprehensive inventory check for all medicines, one short transaction per chunk of medicines
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public InventoryAlertReconciler.Result runInventoryCheck() {
+        InventoryAlertReconciler.Result result = inventoryAlertReconciler.reconcileAll();
+        System.out.println("Inventory check: " + result.created() + " alerts created, " + result.updated() + " updated, "
+            + result.resolved() + " resolved, " + result.unchanged() + " unchanged");
+        return result;
     }
     
     // Get active alerts summary
@@ -222,28 +125,29 @@ public class InventoryService {
         }
     }
     
-    // Get medicines requiring attention (low stock, expired, near expiry)
+    // Get medicines requiring attention (low stock, expired, near expiry); only those are kept while the catalog is scanned
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Map<String, Object> getMedicinesRequiringAttention() {
-        List<Medicine> allMedicines = medicineRepository.findAll();
-        
         List<Medicine> lowStockMedicines = new ArrayList<>();
         List<Medicine> expiredMedicines = new ArrayList<>();
         List<Medicine> nearExpiryMedicines = new ArrayList<>();
         List<Medicine> outOfStockMedicines = new ArrayList<>();
         
-        for (Medicine medicine : allMedicines) {
-            if (medicine.getQuantity() <= 0) {
-                outOfStockMedicines.add(medicine);
-            } else if (medicine.isLowStock()) {
-                lowStockMedicines.add(medicine);
-            }
-            
-            if (medicine.isExpired()) {
-                expiredMedicines.add(medicine);
-            } else if (medicine.isNearExpiry()) {
-                nearExpiryMedicines.add(medicine);
+        chunkedScanner.scan(medicineRepository::findByIdGreaterThanOrderByIdAsc, Medicine::getId, chunk -> {
+            for (Medicine medicine : chunk) {
+                if (medicine.getQuantity() <= 0) {
+                    outOfStockMedicines.add(medicine);
+                } else if (medicine.isLowStock()) {
+                    lowStockMedicines.add(medicine);
+                }
+                
+                if (medicine.isExpired()) {
+                    expiredMedicines.add(medicine);
+                } else if (medicine.isNearExpiry()) {
+                    nearExpiryMedicines.add(medicine);
+                }
             }
-        }
+        });
         
         Map<String, Object> result = new HashMap<>();
         result.put("lowStock", lowStockMedicines);
@@ -254,27 +158,41 @@ public class InventoryService {
         return result;
     }
     
-    // Check medicine availability for prescription
+    // Check medicine availability for prescription; joins the caller's transaction if there is one,
+    // and otherwise runs without, so medicines not cached yet can be kept (see MedicineCache)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Map<String, Object> checkMedicineAvailability(List<PrescriptionMedicine> prescriptionMedicines) {
         Map<String, Object> result = new HashMap<>();
         List<Map<String, Object>> availabilityList = new ArrayList<>();
         boolean allAvailable = true;
         
+        // Served from the inventory cache; medicines not cached yet are loaded in one query
+        Set<Long> medicineIds = new HashSet<>();
+        for (PrescriptionMedicine prescriptionMedicine : prescriptionMedicines) {
+            if (prescriptionMedicine.getMedicineId() != null) {
+                medicineIds.add(prescriptionMedicine.getMedicineId());
+            }
+        }
+        Map<Long, MedicineCache.Stock> medicines = medicineCache.getAll(medicineIds);
+        
         for (PrescriptionMedicine prescriptionMedicine : prescriptionMedicines) {
             Map<String, Object> availability = new HashMap<>();
             availability.put("medicineName", prescriptionMedicine.getMedicineName());
             availability.put("requestedQuantity", prescriptionMedicine.getQuantity());
             
             if (prescriptionMedicine.getMedicineId() != null) {
-                Optional<Medicine> medicineOpt = medicineRepository.findById(prescriptionMedicine.getMedicineId());
-                if (medicineOpt.isPresent()) {
-                    Medicine medicine = medicineOpt.get();
-                    availability.put("availableQuantity", medicine.getQuantity());
-                    availability.put("isAvailable", medicine.getQuantity() >= prescriptionMedicine.getQuantity());
+                MedicineCache.Stock medicine = medicines.get(prescriptionMedicine.getMedicineId());
+                if (medicine != null) {
+                    // Stock held by other prescriptions' reservations is not available
+                    int availableToPromise = medicine.getAvailableToPromise();
+                    availability.put("availableQuantity", availableToPromise);
+                    availability.put("onHandQuantity", medicine.quantity());
+                    availability.put("reservedQuantity", medicine.reservedQuantity());
+                    availability.put("isAvailable", availableToPromise >= prescriptionMedicine.getQuantity());
                     availability.put("isLowStock", medicine.isLowStock());
                     availability.put("isExpired", medicine.isExpired());
                     
-                    if (medicine.getQuantity() < prescriptionMedicine.getQuantity()) {
+                    if (availableToPromise < prescriptionMedicine.getQuantity()) {
                         allAvailable = false;
                     }
                 } else {
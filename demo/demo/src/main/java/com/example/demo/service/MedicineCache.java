@@ -0,0 +1,301 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Medicine;
+import com.example.demo.repository.MedicineRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process copy of the stock figures availability checks need (quantity, reserved,
+ * minStock, expiry), keyed by medicine id and bounded by least-recent use.
+ *
+ * StockService reports every conditional stock UPDATE as a delta, applied when its
+ * transaction commits; deltas commute, so commit order does not matter. Whole-row writes
+ * from MedicineController reload the entry. A miss is loaded as plain columns, never as
+ * entities, so a copy held by the request's persistence context (open-in-view) is neither
+ * returned nor added to. It is read in the caller's transaction, if there is one, rather
+ * than on a second connection; such a read may come from a snapshot older than writes that
+ * already completed, so it is returned but not kept. Outside a transaction a miss is kept
+ * if no write to that medicine started or finished while it was read, so a stale read is
+ * never cached. Callers about to open a transaction can warm the cache first (getAll).
+ *
+ * The cache only answers availability questions; dispensing and reserving still go
+ * through the conditional UPDATEs, which stay authoritative.
+ */
+@Service
+public class MedicineCache {
+
+    private static final int STRIPES = 256;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${inventory.cache.max-entries:1000}")
+    private int maxEntries;
+
+    // verify() compares with committed rows, never with a caller's older snapshot
+    private TransactionTemplate verifyTransaction;
+
+    private final LinkedHashMap<Long, Stock> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Stock> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // Per stripe of medicine ids: writes not yet completed, and a stamp bumped when one starts or completes
+    private final int[] writesInFlight = new int[STRIPES];
+    private final long[] writeStamps = new long[STRIPES];
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong corrections = new AtomicLong();
+
+    /**
+     * The cached stock figures of one medicine
+     */
+    public record Stock(Long id, String name, String category, int quantity, int reservedQuantity,
+                        int minStock, LocalDate expiry) {
+
+        // A row of MedicineRepository.findStockByIdIn
+        static Stock of(Object[] row) {
+            return new Stock((Long) row[0], (String) row[1], (String) row[2], ((Number) row[3]).intValue(),
+                ((Number) row[4]).intValue(), ((Number) row[5]).intValue(), (LocalDate) row[6]);
+        }
+
+        Stock adjusted(int quantityDelta, int reservedDelta) {
+            return new Stock(id, name, category, quantity + quantityDelta, reservedQuantity + reservedDelta, minStock, expiry);
+        }
+
+        public int getAvailableToPromise() {
+            return Math.max(0, quantity - reservedQuantity);
+        }
+
+        public boolean isLowStock() {
+            return quantity <= minStock;
+        }
+
+        public boolean isExpired() {
+            return expiry != null && expiry.isBefore(LocalDate.now());
+        }
+
+        // A detached Medicine carrying these figures, for code that takes the entity
+        public Medicine toMedicine() {
+            Medicine medicine = new Medicine(name, quantity, expiry, category, minStock, null, null, null);
+            medicine.setId(id);
+            medicine.setReservedQuantity(reservedQuantity);
+            return medicine;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        verifyTransaction = new TransactionTemplate(transactionManager);
+        verifyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        verifyTransaction.setReadOnly(true);
+    }
+
+    public Optional<Stock> get(Long medicineId) {
+        if (medicineId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(getAll(List.of(medicineId)).get(medicineId));
+    }
+
+    /**
+     * Stock of each medicine that exists; all misses are loaded with one query
+     */
+    public Map<Long, Stock> getAll(Collection<Long> medicineIds) {
+        Map<Long, Stock> found = new HashMap<>();
+        Map<Long, Long> missed = new HashMap<>();
+        synchronized (this) {
+            for (Long medicineId : medicineIds) {
+                if (medicineId == null || found.containsKey(medicineId) || missed.containsKey(medicineId)) {
+                    continue;
+                }
+                Stock stock = entries.get(medicineId);
+                if (stock != null) {
+                    found.put(medicineId, stock);
+                } else {
+                    missed.put(medicineId, writeStamps[stripe(medicineId)]);
+                }
+            }
+        }
+        hits.addAndGet(found.size());
+        if (missed.isEmpty()) {
+            return found;
+        }
+        misses.addAndGet(missed.size());
+
+        boolean cacheable = !TransactionSynchronizationManager.isActualTransactionActive();
+        List<Stock> loaded = new ArrayList<>();
+        for (Object[] row : medicineRepository.findStockByIdIn(missed.keySet())) {
+            loaded.add(Stock.of(row));
+        }
+
+        synchronized (this) {
+            for (Stock stock : loaded) {
+                found.put(stock.id(), stock);
+                int stripe = stripe(stock.id());
+                if (cacheable && writesInFlight[stripe] == 0 && writeStamps[stripe] == missed.get(stock.id())) {
+                    entries.putIfAbsent(stock.id(), stock);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * A conditional UPDATE changed a medicine's quantity and/or reserved quantity by these
+     * amounts; applied to the cached entry once the current transaction commits
+     */
+    public void adjust(Long medicineId, int quantityDelta, int reservedDelta) {
+        if (medicineId == null || (quantityDelta == 0 && reservedDelta == 0)) {
+            return;
+        }
+        beginWrite(medicineId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            completeWrite(medicineId, true, quantityDelta, reservedDelta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                completeWrite(medicineId, status == STATUS_COMMITTED, quantityDelta, reservedDelta);
+            }
+        });
+    }
+
+    /**
+     * A medicine row was written as a whole (create, edit, stock correction); reload it
+     */
+    public void refresh(Long medicineId) {
+        evict(medicineId);
+        get(medicineId);
+    }
+
+    public void evict(Long medicineId) {
+        if (medicineId == null) {
+            return;
+        }
+        synchronized (this) {
+            entries.remove(medicineId);
+            writeStamps[stripe(medicineId)]++;
+        }
+    }
+
+    /**
+     * Compare every cached entry with the database, drop the ones that differ and report them
+     */
+    public Map<String, Object> verify() {
+        List<Long> cachedIds;
+        Map<Long, Long> stamps = new HashMap<>();
+        synchronized (this) {
+            cachedIds = new ArrayList<>(entries.keySet());
+            for (Long medicineId : cachedIds) {
+                stamps.put(medicineId, writeStamps[stripe(medicineId)]);
+            }
+        }
+
+        Map<Long, Stock> current = new HashMap<>();
+        verifyTransaction.execute(status -> {
+            if (cachedIds.isEmpty()) {
+                return null;
+            }
+            for (Object[] row : medicineRepository.findStockByIdIn(cachedIds)) {
+                Stock stock = Stock.of(row);
+                current.put(stock.id(), stock);
+            }
+            return null;
+        });
+
+        List<Long> mismatched = new ArrayList<>();
+        int skipped = 0;
+        synchronized (this) {
+            for (Long medicineId : cachedIds) {
+                int stripe = stripe(medicineId);
+                Stock cached = entries.get(medicineId);
+                if (cached == null) {
+                    continue;
+                }
+                // A write in between makes the comparison meaningless; it is checked next time
+                if (writesInFlight[stripe] != 0 || writeStamps[stripe] != stamps.get(medicineId)) {
+                    skipped++;
+                    continue;
+                }
+                if (!cached.equals(current.get(medicineId))) {
+                    mismatched.add(medicineId);
+                    entries.remove(medicineId);
+                }
+            }
+        }
+        corrections.addAndGet(mismatched.size());
+        if (!mismatched.isEmpty()) {
+            System.err.println("Warning: medicine cache differed from the database for medicines " + mismatched);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("checked", cachedIds.size() - skipped);
+        result.put("skipped", skipped);
+        result.put("mismatched", mismatched);
+        result.put("consistent", mismatched.isEmpty());
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (this) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("evictions", evictions.get());
+        stats.put("corrections", corrections.get());
+        return stats;
+    }
+
+    private synchronized void beginWrite(Long medicineId) {
+        int stripe = stripe(medicineId);
+        writesInFlight[stripe]++;
+        writeStamps[stripe]++;
+    }
+
+    private synchronized void completeWrite(Long medicineId, boolean committed, int quantityDelta, int reservedDelta) {
+        int stripe = stripe(medicineId);
+        if (committed) {
+            Stock stock = entries.get(medicineId);
+            if (stock != null) {
+                entries.put(medicineId, stock.adjusted(quantityDelta, reservedDelta));
+            }
+        }
+        writesInFlight[stripe]--;
+        writeStamps[stripe]++;
+    }
+
+    private static int stripe(Long medicineId) {
+        return Math.floorMod(Long.hashCode(medicineId), STRIPES);
+    }
+}
@@ -20,7 +20,7 @@ public class NotificationService {
     /**
      * Trigger low stock alert for a medicine
      */
-    @Async
+    @Async("notificationExecutor")
     public CompletableFuture<Void> triggerLowStockAlert(Medicine medicine, int currentStock) {
         try {
             Map<String, Object> alertData = new HashMap<>();
@@ -57,7 +57,7 @@ public class NotificationService {
     /**
      * Trigger expiry alert for medicines
      */
-    @Async
+    @Async("notificationExecutor")
     public CompletableFuture<Void> triggerExpiryAlert(Medicine medicine, String alertType) {
         try {
             Map<String, Object> alertData = new HashMap<>();
@@ -86,7 +86,7 @@ public class NotificationService {
     /**
      * Trigger stock shortage alert for prescriptions
      */
-    @Async
+    @Async("notificationExecutor")
     public CompletableFuture<Void> triggerStockShortageAlert(Prescription prescription, Map<String, Integer> unavailableMedicines) {
         try {
             Map<String, Object> alertData = new HashMap<>();
@@ -118,7 +118,7 @@ public class NotificationService {
     /**
      * Trigger reorder alert for automatic restocking
      */
-    @Async
+    @Async("notificationExecutor")
     public CompletableFuture<Void> triggerReorderAlert(Medicine medicine, int suggestedQuantity) {
         try {
             Map<String, Object> alertData = new HashMap<>();
@@ -0,0 +1,67 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.PrescriptionDto;
+import com.example.demo.repository.PrescriptionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Pharmacy work queue. Each pharmacist claims the oldest pending prescription nobody else holds
+ * and keeps it for a lease period; an abandoned claim simply expires and the prescription
+ * becomes claimable again, so no cleanup job is needed.
+ */
+@Service
+public class PrescriptionClaimService {
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private PrescriptionQueryService prescriptionQueryService;
+
+    @Value("${pharmacy.claim.lease-minutes:10}")
+    private long leaseMinutes;
+
+    /**
+     * Claim the next prescription for a pharmacist. Concurrent claims lock different rows
+     * (SKIP LOCKED), so they neither wait on each other nor receive the same prescription.
+     */
+    @Transactional
+    public Optional<Claim> claimNext(String pharmacist) {
+        LocalDateTime now = LocalDateTime.now();
+        Optional<Long> next = prescriptionRepository.lockNextClaimable(now);
+        if (next.isEmpty()) {
+            return Optional.empty();
+        }
+
+        LocalDateTime expiresAt = now.plusMinutes(leaseMinutes);
+        prescriptionRepository.claim(next.get(), pharmacist, expiresAt, now);
+        return prescriptionQueryService.findById(next.get()).map(prescription -> new Claim(prescription, expiresAt));
+    }
+
+    public record Claim(PrescriptionDto prescription, LocalDateTime leaseExpiresAt) {}
+
+    /**
+     * Extend a lease the pharmacist still holds. Returns the new expiry, or empty when the
+     * lease has expired, was released or the prescription is no longer pending.
+     */
+    public Optional<LocalDateTime> renew(Long id, String pharmacist) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plusMinutes(leaseMinutes);
+        return prescriptionRepository.renewLease(id, pharmacist, expiresAt, now) == 1
+            ? Optional.of(expiresAt) : Optional.empty();
+    }
+
+    public boolean release(Long id, String pharmacist) {
+        return prescriptionRepository.releaseLease(id, pharmacist) == 1;
+    }
+
+    public long getLeaseMinutes() {
+        return leaseMinutes;
+    }
+}
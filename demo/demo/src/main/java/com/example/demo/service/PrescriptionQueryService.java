@@ -0,0 +1,77 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.PrescriptionCursor;
+import com.example.demo.dto.PrescriptionDto;
+import com.example.demo.dto.PrescriptionMedicineDto;
+import com.example.demo.dto.PrescriptionSummaryDto;
+import com.example.demo.repository.PrescriptionMedicineRepository;
+import com.example.demo.repository.PrescriptionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Read side of the prescription endpoints: a list costs two queries however many
+ * prescriptions it holds, one for the prescriptions and one IN query for all their medicines.
+ * The browse and search lists are keyset-paged summaries and cost a single query per page.
+ */
+@Service
+public class PrescriptionQueryService {
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private PrescriptionMedicineRepository prescriptionMedicineRepository;
+
+    public List<PrescriptionDto> findPending() {
+        return withMedicines(prescriptionRepository.findPendingPrescriptionDtos());
+    }
+
+    /**
+     * One keyset page of list rows, newest first. status and searchTerm are optional filters;
+     * nextCursor is null on the last page.
+     */
+    public Page listPage(String status, String searchTerm, PrescriptionCursor cursor, int size) {
+        // Fetch one extra row to learn whether another page follows
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<PrescriptionSummaryDto> rows;
+        if (searchTerm != null) {
+            rows = prescriptionRepository.searchSummariesAfter(searchTerm, cursor.createdDate(), cursor.id(), limit);
+        } else if (status != null) {
+            rows = prescriptionRepository.findSummariesByStatusAfter(status, cursor.createdDate(), cursor.id(), limit);
+        } else {
+            rows = prescriptionRepository.findSummariesAfter(cursor.createdDate(), cursor.id(), limit);
+        }
+
+        if (rows.size() <= size) {
+            return new Page(rows, null);
+        }
+        List<PrescriptionSummaryDto> items = rows.subList(0, size);
+        return new Page(items, PrescriptionCursor.after(items.get(size - 1)).encode());
+    }
+
+    public record Page(List<PrescriptionSummaryDto> items, String nextCursor) {}
+
+    public Optional<PrescriptionDto> findById(Long id) {
+        return prescriptionRepository.findDtoById(id).map(prescription -> withMedicines(List.of(prescription)).get(0));
+    }
+
+    private List<PrescriptionDto> withMedicines(List<PrescriptionDto> prescriptions) {
+        if (prescriptions.isEmpty()) {
+            return prescriptions;
+        }
+
+        Map<Long, PrescriptionDto> byId = new HashMap<>();
+        for (PrescriptionDto prescription : prescriptions) {
+            byId.put(prescription.id(), prescription);
+        }
+        for (PrescriptionMedicineDto medicine : prescriptionMedicineRepository.findDtosByPrescriptionIdIn(byId.keySet())) {
+            byId.get(medicine.prescriptionId()).medicines().add(medicine);
+        }
+        return prescriptions;
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.PrescriptionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prescription statistics maintained incrementally, so /api/prescriptions/statistics
+ * never touches the database.
+ *
+ * Counts per status and per doctor, the total, and a rolling 24-hour window of one-minute
+ * buckets are rebuilt from one aggregate query at startup and then follow the
+ * create/status-change/delete events reported by PrescriptionStatisticsListener after each
+ * commit. A periodic rebuild repairs drift from changes made outside JPA.
+ */
+@Service
+public class PrescriptionStatistics {
+
+    private static final int WINDOW_MINUTES = 24 * 60;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private ScheduledJobGuard scheduledJobGuard;
+
+    private final ConcurrentMap<String, AtomicLong> byStatus = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> byDoctor = new ConcurrentHashMap<>();
+    private final AtomicLong totalCount = new AtomicLong();
+
+    // Ring of per-minute creation counts; bucketMinute says which minute a slot currently holds
+    private final long[] bucketCounts = new long[WINDOW_MINUTES];
+    private final long[] bucketMinute = new long[WINDOW_MINUTES];
+
+    // Bumped by every event so a rebuild can tell whether it raced with one
+    private final AtomicLong updateStamp = new AtomicLong();
+
+    private volatile boolean seeded = false;
+
+    @PostConstruct
+    public void start() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            System.err.println("Warning: Could not seed prescription statistics: " + e.getMessage());
+        }
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    public void recordCreated(String status, String doctorName, LocalDateTime createdDate) {
+        updateStamp.incrementAndGet();
+        counter(byStatus, status).incrementAndGet();
+        counter(byDoctor, doctorName).incrementAndGet();
+        totalCount.incrementAndGet();
+        addToWindow(createdDate, 1);
+    }
+
+    public void recordStatusChange(String previousStatus, String status) {
+        if (Objects.equals(previousStatus, status)) {
+            return;
+        }
+        updateStamp.incrementAndGet();
+        counter(byStatus, previousStatus).decrementAndGet();
+        counter(byStatus, status).incrementAndGet();
+    }
+
+    public void recordRemoved(String status, String doctorName, LocalDateTime createdDate) {
+        updateStamp.incrementAndGet();
+        counter(byStatus, status).decrementAndGet();
+        counter(byDoctor, doctorName).decrementAndGet();
+        totalCount.decrementAndGet();
+        addToWindow(createdDate, -1);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("byStatus", snapshot(byStatus));
+        stats.put("byDoctor", snapshot(byDoctor));
+        stats.put("recentCount", recentCount());
+        stats.put("totalCount", totalCount.get());
+        return stats;
+    }
+
+    @Scheduled(fixedDelayString = "${prescriptions.statistics.rebuild-minutes:15}",
+               initialDelayString = "${prescriptions.statistics.rebuild-minutes:15}", timeUnit = TimeUnit.MINUTES)
+    public void scheduledRebuild() {
+        scheduledJobGuard.runExclusive("prescription-statistics-rebuild", this::rebuild);
+    }
+
+    // Replace every counter from one GROUP BY, unless an event raced with the query
+    private void rebuild() {
+        long startStamp = updateStamp.get();
+        LocalDateTime since = LocalDateTime.now().minusMinutes(WINDOW_MINUTES);
+        List<Object[]> rows = prescriptionRepository.aggregateForStatistics(since);
+
+        synchronized (this) {
+            if (updateStamp.get() != startStamp) {
+                return;
+            }
+            Map<String, Long> statuses = new HashMap<>();
+            Map<String, Long> doctors = new HashMap<>();
+            long total = 0;
+            Arrays.fill(bucketCounts, 0);
+            Arrays.fill(bucketMinute, 0);
+
+            long sinceMinute = epochMinute(since);
+            for (Object[] row : rows) {
+                long count = ((Number) row[3]).longValue();
+                statuses.merge((String) row[0], count, Long::sum);
+                doctors.merge((String) row[1], count, Long::sum);
+                total += count;
+                if (row[2] != null) {
+                    long minute = sinceMinute + ((Number) row[2]).longValue();
+                    int slot = slot(minute);
+                    bucketMinute[slot] = minute;
+                    bucketCounts[slot] += count;
+                }
+            }
+
+            reset(byStatus, statuses);
+            reset(byDoctor, doctors);
+            totalCount.set(total);
+            seeded = true;
+        }
+    }
+
+    private synchronized void addToWindow(LocalDateTime createdDate, int delta) {
+        if (createdDate == null) {
+            return;
+        }
+        long minute = epochMinute(createdDate);
+        if (minute <= epochMinute(LocalDateTime.now()) - WINDOW_MINUTES) {
+            return;
+        }
+        int slot = slot(minute);
+        if (bucketMinute[slot] != minute) {
+            if (delta < 0) {
+                return;
+            }
+            bucketMinute[slot] = minute;
+            bucketCounts[slot] = 0;
+        }
+        bucketCounts[slot] += delta;
+    }
+
+    private synchronized long recentCount() {
+        long oldest = epochMinute(LocalDateTime.now()) - WINDOW_MINUTES;
+        long count = 0;
+        for (int slot = 0; slot < WINDOW_MINUTES; slot++) {
+            if (bucketMinute[slot] > oldest) {
+                count += bucketCounts[slot];
+            }
+        }
+        return count;
+    }
+
+    private static long epochMinute(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    private static int slot(long minute) {
+        return (int) Math.floorMod(minute, (long) WINDOW_MINUTES);
+    }
+
+    private static AtomicLong counter(ConcurrentMap<String, AtomicLong> counters, String key) {
+        return counters.computeIfAbsent(key != null ? key : "Unknown", k -> new AtomicLong());
+    }
+
+    private static void reset(ConcurrentMap<String, AtomicLong> counters, Map<String, Long> values) {
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            counter.getValue().set(values.getOrDefault(counter.getKey(), 0L));
+        }
+        values.forEach((key, value) -> counter(counters, key).set(value));
+    }
+
+    private static Map<String, Long> snapshot(ConcurrentMap<String, AtomicLong> counters) {
+        Map<String, Long> values = new HashMap<>();
+        counters.forEach((key, value) -> {
+            if (value.get() != 0) {
+                values.put(key, value.get());
+            }
+        });
+        return values;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Prescription;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Reports prescription creates, status changes and deletes to PrescriptionStatistics,
+ * whichever code path saved them. Events are applied after the transaction commits,
+ * so rolled-back changes are never counted.
+ */
+public class PrescriptionStatisticsListener {
+
+    @Autowired
+    private ObjectProvider<PrescriptionStatistics> statistics;
+
+    @PostLoad
+    public void loaded(Prescription prescription) {
+        prescription.setPersistedStatus(prescription.getStatus());
+    }
+
+    @PostPersist
+    public void persisted(Prescription prescription) {
+        String status = prescription.getStatus();
+        String doctorName = prescription.getDoctorName();
+        LocalDateTime createdDate = prescription.getCreatedDate();
+        prescription.setPersistedStatus(status);
+        afterCommit(() -> statistics.getObject().recordCreated(status, doctorName, createdDate));
+    }
+
+    @PostUpdate
+    public void updated(Prescription prescription) {
+        String previous = prescription.getPersistedStatus();
+        String status = prescription.getStatus();
+        prescription.setPersistedStatus(status);
+        // Without a previous status there is nothing to move; the periodic rebuild covers it
+        if (previous != null && !Objects.equals(previous, status)) {
+            afterCommit(() -> statistics.getObject().recordStatusChange(previous, status));
+        }
+    }
+
+    @PostRemove
+    public void removed(Prescription prescription) {
+        String status = prescription.getPersistedStatus() != null ? prescription.getPersistedStatus() : prescription.getStatus();
+        String doctorName = prescription.getDoctorName();
+        LocalDateTime createdDate = prescription.getCreatedDate();
+        afterCommit(() -> statistics.getObject().recordRemoved(status, doctorName, createdDate));
+    }
+
+    private void afterCommit(Runnable event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            event.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                event.run();
+            }
+        });
+    }
+}
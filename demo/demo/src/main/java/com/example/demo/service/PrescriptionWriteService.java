@@ -0,0 +1,109 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Prescription;
+import com.example.demo.entity.PrescriptionMedicine;
+import com.example.demo.repository.PrescriptionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates a prescription and its medicine lines in a constant number of round-trips:
+ * one findAllById for the referenced medicines, the prescription INSERT, and the lines
+ * as a single JDBC batch (their ids come from a pooled table generator, fetched
+ * 50 at a time, because AUTO_INCREMENT ids would force one INSERT per line).
+ */
+@Service
+public class PrescriptionWriteService {
+
+    // Must match allocationSize of the prescription_medicine_ids generator
+    private static final int ID_ALLOCATION_SIZE = 50;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Start the line id generator above the ids AUTO_INCREMENT handed out before it existed
+     */
+    @PostConstruct
+    public void alignLineIdGenerator() {
+        try {
+            // The pooled optimizer hands out (stored - allocation + 1) .. stored, so stay one block ahead of MAX(id)
+            String floor = "(SELECT COALESCE(MAX(id), 0) + " + (ID_ALLOCATION_SIZE + 1) + " FROM prescription_medicines)";
+            int updated = jdbcTemplate.update(
+                "UPDATE id_generators SET next_val = GREATEST(next_val, " + floor + ") WHERE sequence_name = 'prescription_medicines'");
+            if (updated == 0) {
+                jdbcTemplate.update("INSERT INTO id_generators (sequence_name, next_val) SELECT 'prescription_medicines', " + floor);
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Could not align prescription medicine id generator: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Attach the medicine lines, work out the inventory status in memory and save everything in one flush
+     */
+    @Transactional
+    public Prescription create(Prescription prescription, List<Map<String, Object>> medicinesData) {
+        List<PrescriptionMedicine> lines = new ArrayList<>();
+        if (medicinesData != null) {
+            for (Map<String, Object> medicineData : medicinesData) {
+                lines.add(toLine(prescription, medicineData));
+            }
+        }
+        prescription.setPrescriptionMedicines(lines);
+        prescription.setTotalMedicines(lines.size());
+
+        try {
+            Map<String, Object> availability = inventoryService.checkMedicineAvailability(lines);
+            Boolean allAvailable = (Boolean) availability.get("allAvailable");
+            if (allAvailable != null && !allAvailable) {
+                prescription.setInventoryStatus("Partial Stock Available");
+            } else {
+                prescription.setInventoryStatus("All Medicines Available");
+            }
+        } catch (Exception e) {
+            System.err.println("Error in prescription inventory check: " + e.getMessage());
+            prescription.setInventoryStatus("Inventory Check Failed");
+        }
+
+        // Lines are cascaded from the prescription and flushed as one batch
+        Prescription saved = prescriptionRepository.save(prescription);
+        prescriptionRepository.flush();
+        return saved;
+    }
+
+    private PrescriptionMedicine toLine(Prescription prescription, Map<String, Object> medicineData) {
+        PrescriptionMedicine prescriptionMedicine = new PrescriptionMedicine();
+        prescriptionMedicine.setPrescription(prescription);
+
+        Object medicineIdObj = medicineData.get("medicineId");
+        if (medicineIdObj != null) {
+            prescriptionMedicine.setMedicineId(Long.valueOf(medicineIdObj.toString()));
+        }
+
+        prescriptionMedicine.setMedicineName((String) medicineData.get("medicineName"));
+        prescriptionMedicine.setDosage((String) medicineData.get("dosage"));
+        prescriptionMedicine.setFrequency((String) medicineData.get("frequency"));
+        prescriptionMedicine.setDuration((String) medicineData.get("duration"));
+        prescriptionMedicine.setInstructions((String) medicineData.get("instructions"));
+
+        Object quantityObj = medicineData.get("quantity");
+        if (quantityObj != null) {
+            prescriptionMedicine.setQuantity(Integer.valueOf(quantityObj.toString()));
+        }
+        return prescriptionMedicine;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.demo.service;
+
+import com.example.demo.model.QueueEntry;
+import com.example.demo.model.QueueEntryPayload;
+import com.example.demo.repository.QueueEntryPayloadRepository;
+import com.example.demo.repository.QueueEntryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the large medical data and prescription payloads of queue entries as
+ * gzip-compressed JSON in queue_entry_payloads, away from the queue_entries rows
+ * that every queue list reads. Payloads live as long as their entry: they are written in
+ * the transaction that creates or moves it and deleted when it is archived or cleared.
+ */
+@Service
+public class QueueEntryPayloadService {
+
+    private static final int MIGRATION_CHUNK = 500;
+
+    @Autowired
+    private QueueEntryPayloadRepository payloadRepository;
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Move payloads written by earlier versions out of the old TEXT columns
+     */
+    @PostConstruct
+    public void migrateLegacyColumns() {
+        try {
+            Integer legacyColumns = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() " +
+                "AND table_name = 'queue_entries' AND column_name IN ('medical_data', 'prescription')", Integer.class);
+            if (legacyColumns == null || legacyColumns < 2) {
+                return;
+            }
+
+            int migrated = 0;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT id, medical_data, prescription FROM queue_entries " +
+                    "WHERE medical_data IS NOT NULL OR prescription IS NOT NULL LIMIT " + MIGRATION_CHUNK);
+                if (rows.isEmpty()) {
+                    break;
+                }
+
+                for (Map<String, Object> row : rows) {
+                    Long id = ((Number) row.get("id")).longValue();
+                    // Old rows hold Map.toString() text rather than JSON, so keep them as a JSON string
+                    if (row.get("medical_data") != null) {
+                        store(id, QueueEntryPayload.MEDICAL_DATA, row.get("medical_data").toString());
+                    }
+                    if (row.get("prescription") != null) {
+                        store(id, QueueEntryPayload.PRESCRIPTION, row.get("prescription").toString());
+                    }
+                }
+
+                String ids = rows.stream().map(row -> row.get("id").toString()).collect(Collectors.joining(","));
+                jdbcTemplate.update("UPDATE queue_entries SET medical_data = NULL, prescription = NULL WHERE id IN (" + ids + ")");
+                migrated += rows.size();
+            }
+
+            if (migrated > 0) {
+                System.out.println("Moved payloads of " + migrated + " queue entries to queue_entry_payloads");
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Could not migrate legacy queue payload columns: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Insert a new queue entry together with its payload: neither is written without the other.
+     * Callers publish the entry only after this returns, i.e. after the commit.
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public QueueEntry createWithPayload(QueueEntry entry, String payloadType, Object payload) throws IOException {
+        QueueEntry savedEntry = queueEntryRepository.save(entry);
+        store(savedEntry.getId(), payloadType, payload);
+        return savedEntry;
+    }
+
+    /**
+     * Serialize the payload as JSON, compress it and store it for the entry (replacing any previous one)
+     */
+    public void store(Long queueEntryId, String payloadType, Object payload) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(payload);
+
+        QueueEntryPayload row = payloadRepository.findByQueueEntryIdAndPayloadType(queueEntryId, payloadType)
+            .orElseGet(() -> new QueueEntryPayload(queueEntryId, payloadType));
+        row.setData(gzip(json));
+        row.setContentEncoding("gzip");
+        row.setOriginalSize(json.length);
+        row.setUpdatedAt(LocalDateTime.now());
+        payloadRepository.save(row);
+    }
+
+    public Optional<QueueEntryPayload> find(Long queueEntryId, String payloadType) {
+        return payloadRepository.findByQueueEntryIdAndPayloadType(queueEntryId, payloadType);
+    }
+
+    /**
+     * Write the payload as JSON; compressed clients get the stored gzip bytes untouched
+     */
+    public void writeTo(QueueEntryPayload payload, OutputStream out, boolean gzipAccepted) throws IOException {
+        if (gzipAccepted) {
+            out.write(payload.getData());
+        } else {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload.getData()))) {
+                in.transferTo(out);
+            }
+        }
+        out.flush();
+    }
+
+    public void deleteAll() {
+        payloadRepository.deleteAllInBatch();
+    }
+
+    private byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(data);
+        }
+        return buffer.toByteArray();
+    }
+}
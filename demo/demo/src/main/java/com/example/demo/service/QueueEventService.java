@@ -0,0 +1,295 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Pushes queue changes to reception, doctor and pharmacy displays over Server-Sent Events.
+ *
+ * Every change gets a sequential event id and is kept in a bounded replay buffer,
+ * so a reconnecting display can resume from its Last-Event-ID. Ids are prefixed with
+ * the time this instance started ("<boot>-<sequence>"): the sequence restarts on every
+ * boot, and an id from an earlier boot gets a fresh snapshot. Each display has
+ * its own bounded send buffer; a display that falls behind is disconnected and
+ * resumes (or gets a fresh snapshot) on reconnect instead of holding server memory.
+ */
+@Service
+public class QueueEventService {
+
+    public static final String ALL_STAGES = "all";
+
+    @Value("${queue.stream.client-buffer:256}")
+    private int clientBufferSize;
+
+    @Value("${queue.stream.replay-buffer:1024}")
+    private int replayBufferSize;
+
+    @Value("${queue.stream.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong eventSequence = new AtomicLong();
+    private final Deque<QueueEvent> replayBuffer = new ArrayDeque<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    @Qualifier("sseExecutor")
+    private Executor sendExecutor;
+
+    @PreDestroy
+    public void stop() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    /**
+     * Open a stream for one stage ("reception", "doctor", "pharmacy" or "all").
+     * Displays resuming from a Last-Event-ID still in the replay buffer only get the
+     * events they missed; everyone else starts from a snapshot. Entries should be
+     * applied as upserts by queueNo, since a snapshot may already include the first
+     * few deltas that follow it.
+     */
+    public SseEmitter subscribe(String stage, String lastEventId, Supplier<List<Map<String, Object>>> snapshot) {
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(timeoutMinutes));
+        Subscriber subscriber = new Subscriber(stage, emitter, Math.max(1, clientBufferSize));
+
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        long resumeFrom;
+        Long lastSequence = sequenceOf(lastEventId);
+        List<QueueEvent> missed = lastSequence != null ? replayAfter(lastSequence) : null;
+        if (missed != null && missed.stream().filter(event -> event.concerns(stage)).count() < subscriber.capacity) {
+            resumeFrom = lastSequence;
+        } else {
+            resumeFrom = eventSequence.get();
+            Map<String, Object> data = new HashMap<>();
+            data.put("stage", stage);
+            data.put("entries", snapshot.get());
+            data.put("timestamp", LocalDateTime.now().toString());
+            subscriber.offer(SseEmitter.event()
+                .id(eventId(resumeFrom))
+                .name("snapshot")
+                .data(data));
+        }
+
+        boolean overflowed = false;
+        synchronized (replayBuffer) {
+            // Catch up on everything published since resumeFrom, then go live
+            List<QueueEvent> catchUp = replayAfter(resumeFrom);
+            if (catchUp != null) {
+                for (QueueEvent event : catchUp) {
+                    if (event.concerns(stage) && !subscriber.offer(event.toSse(eventId(event.id)))) {
+                        overflowed = true;
+                    }
+                }
+            }
+            subscriber.skipUpTo = eventSequence.get();
+            subscribers.add(subscriber);
+        }
+
+        if (overflowed) {
+            disconnect(subscriber, "too many events to replay");
+        } else {
+            schedule(subscriber);
+        }
+        return emitter;
+    }
+
+    /**
+     * Publish a queue change. fromStage is null for new entries, toStage is null when entries are removed.
+     */
+    public void publish(String type, String fromStage, String toStage, Map<String, Object> entry) {
+        List<Subscriber> toSchedule = new ArrayList<>();
+        List<Subscriber> overflowed = new ArrayList<>();
+        synchronized (replayBuffer) {
+            QueueEvent event = new QueueEvent(eventSequence.incrementAndGet(), type, fromStage, toStage, entry);
+            replayBuffer.addLast(event);
+            while (replayBuffer.size() > Math.max(1, replayBufferSize)) {
+                replayBuffer.removeFirst();
+            }
+
+            // Offered under the lock (offer never blocks), so every display gets events in id order
+            // and a Last-Event-ID never skips an event another publisher has not offered yet
+            for (Subscriber subscriber : subscribers) {
+                // Subscribers registered after this event was buffered already got it through replay
+                if (event.id > subscriber.skipUpTo && event.concerns(subscriber.stage)) {
+                    if (subscriber.offer(event.toSse(eventId(event.id)))) {
+                        toSchedule.add(subscriber);
+                    } else if (subscribers.remove(subscriber)) {
+                        // Dropped before the next event, which would otherwise leave a gap in its stream
+                        overflowed.add(subscriber);
+                    }
+                }
+            }
+        }
+
+        toSchedule.forEach(this::schedule);
+        overflowed.forEach(subscriber -> close(subscriber, "send buffer full"));
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private String eventId(long sequence) {
+        return bootId + "-" + sequence;
+    }
+
+    // Sequence number of an event id from this boot; null for ids of an earlier boot or malformed ids
+    private Long sequenceOf(String eventId) {
+        if (eventId == null || !eventId.startsWith(bootId + "-")) {
+            return null;
+        }
+        try {
+            return Long.valueOf(eventId.substring(bootId.length() + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Events after lastEventId, or null when some of them were already evicted
+    private List<QueueEvent> replayAfter(long lastEventId) {
+        synchronized (replayBuffer) {
+            long latest = eventSequence.get();
+            if (lastEventId > latest) {
+                return null; // never issued by this boot
+            }
+            if (lastEventId == latest) {
+                return Collections.emptyList();
+            }
+            QueueEvent oldest = replayBuffer.peekFirst();
+            if (oldest == null || oldest.id > lastEventId + 1) {
+                return null;
+            }
+            List<QueueEvent> missed = new ArrayList<>();
+            for (QueueEvent event : replayBuffer) {
+                if (event.id > lastEventId) {
+                    missed.add(event);
+                }
+            }
+            return missed;
+        }
+    }
+
+    @Scheduled(fixedRateString = "${queue.stream.heartbeat-seconds:15}", initialDelayString = "${queue.stream.heartbeat-seconds:15}",
+               timeUnit = TimeUnit.SECONDS)
+    public void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers) {
+            // Skip displays that already have data queued; that data keeps the connection alive
+            if (subscriber.pending.isEmpty() && subscriber.offer(SseEmitter.event().comment("heartbeat"))) {
+                schedule(subscriber);
+            }
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                sendExecutor.execute(() -> drain(subscriber));
+            } catch (RejectedExecutionException e) {
+                subscriber.draining.set(false);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while ((event = subscriber.pending.poll()) != null) {
+                subscriber.emitter.send(event);
+            }
+        } catch (IOException | IllegalStateException e) {
+            disconnect(subscriber, e.getMessage());
+            return;
+        } finally {
+            subscriber.draining.set(false);
+        }
+
+        // Pick up anything offered between the last poll and releasing the flag
+        if (!subscriber.pending.isEmpty()) {
+            schedule(subscriber);
+        }
+    }
+
+    private void disconnect(Subscriber subscriber, String reason) {
+        if (subscribers.remove(subscriber)) {
+            close(subscriber, reason);
+        }
+    }
+
+    // For a subscriber already removed from subscribers
+    private void close(Subscriber subscriber, String reason) {
+        subscriber.pending.clear();
+        System.err.println("Closing queue stream for stage " + subscriber.stage + ": " + reason);
+        try {
+            subscriber.emitter.complete();
+        } catch (Exception ignored) {
+            // Connection is already gone
+        }
+    }
+
+    private static final class Subscriber {
+        final String stage;
+        final SseEmitter emitter;
+        final BlockingQueue<SseEmitter.SseEventBuilder> pending;
+        final AtomicBoolean draining = new AtomicBoolean();
+        final int capacity;
+        volatile long skipUpTo;
+
+        Subscriber(String stage, SseEmitter emitter, int capacity) {
+            this.stage = stage;
+            this.emitter = emitter;
+            this.capacity = capacity;
+            this.pending = new ArrayBlockingQueue<>(capacity);
+        }
+
+        boolean offer(SseEmitter.SseEventBuilder event) {
+            return pending.offer(event);
+        }
+    }
+
+    private static final class QueueEvent {
+        final long id;
+        final String type;
+        final String fromStage;
+        final String toStage;
+        final Map<String, Object> entry;
+
+        QueueEvent(long id, String type, String fromStage, String toStage, Map<String, Object> entry) {
+            this.id = id;
+            this.type = type;
+            this.fromStage = fromStage;
+            this.toStage = toStage;
+            this.entry = entry;
+        }
+
+        boolean concerns(String stage) {
+            return ALL_STAGES.equals(stage) || stage.equals(fromStage) || stage.equals(toStage)
+                || (fromStage == null && toStage == null);
+        }
+
+        SseEmitter.SseEventBuilder toSse(String eventId) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("type", type);
+            data.put("fromStage", fromStage);
+            data.put("toStage", toStage);
+            data.put("entry", entry);
+            return SseEmitter.event().id(eventId).name(type).data(data);
+        }
+    }
+}
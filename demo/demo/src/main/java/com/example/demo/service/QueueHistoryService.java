@@ -0,0 +1,271 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Moves completed queue entries older than a cutoff from queue_entries into
+ * queue_entry_history, so the hot table only holds the active queue and recent visits.
+ *
+ * The history table is RANGE-partitioned by month of completion. It is created here
+ * rather than by Hibernate because partitioning is MySQL DDL, and a new month's
+ * partition is split off the catch-all pmax partition before it is needed.
+ * An entry's payload rows in queue_entry_payloads are deleted in the same transaction that
+ * archives it.
+ */
+@Service
+public class QueueHistoryService {
+
+    private static final String HISTORY_COLUMNS =
+        "id, queue_no, student_name, student_id, email, nic, phone, medical_record_id, status, priority, " +
+        "added_time, moved_to_doctor_time, prescription_time, completed_time, pharmacy_status";
+
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private QueueStatistics queueStatistics;
+
+    @Value("${queue.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${queue.archive.after-days:7}")
+    private int afterDays;
+
+    @Value("${queue.archive.chunk-size:500}")
+    private int chunkSize;
+
+    @Autowired
+    private ScheduledJobGuard scheduledJobGuard;
+
+    @PostConstruct
+    public void start() {
+        try {
+            createHistoryTable();
+        } catch (Exception e) {
+            System.err.println("Warning: Could not create queue history table: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Archive every completed entry finished before the configured cutoff, one chunk per transaction
+     */
+    public synchronized Map<String, Object> archive() {
+        LocalDateTime cutoff = LocalDate.now().minusDays(afterDays).atStartOfDay();
+        ensurePartitions(YearMonth.now().plusMonths(1));
+
+        int archived = 0;
+        int chunks = 0;
+        while (true) {
+            List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM queue_entries WHERE stage = 'completed' " +
+                "AND COALESCE(completed_time, added_time) < ? ORDER BY id LIMIT " + chunkSize,
+                Long.class, Timestamp.valueOf(cutoff));
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            String idList = ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+            Integer moved = transactionTemplate.execute(status -> {
+                // INSERT IGNORE makes a chunk safe to repeat if an earlier run died before its DELETE committed
+                jdbcTemplate.update(
+                    "INSERT IGNORE INTO queue_entry_history (" + HISTORY_COLUMNS + ", archived_at) " +
+                    "SELECT id, queue_no, student_name, student_id, email, nic, phone, medical_record_id, status, priority, " +
+                    "added_time, moved_to_doctor_time, prescription_time, COALESCE(completed_time, added_time), pharmacy_status, NOW() " +
+                    "FROM queue_entries WHERE id IN (" + idList + ") AND stage = 'completed'");
+                // The history keeps the visit, not its medical data and prescription payloads
+                jdbcTemplate.update(
+                    "DELETE p FROM queue_entry_payloads p JOIN queue_entries q ON q.id = p.queue_entry_id " +
+                    "WHERE q.id IN (" + idList + ") AND q.stage = 'completed'");
+                return jdbcTemplate.update("DELETE FROM queue_entries WHERE id IN (" + idList + ") AND stage = 'completed'");
+            });
+
+            archived += moved != null ? moved : 0;
+            chunks++;
+            if (ids.size() < chunkSize) {
+                break;
+            }
+        }
+
+        if (archived > 0) {
+            queueStatistics.recordArchived(archived);
+        }
+
+        Map<String, Object> report = new HashMap<>();
+        report.put("archived", archived);
+        report.put("chunks", chunks);
+        report.put("cutoff", cutoff.toString());
+        return report;
+    }
+
+    /**
+     * Archived visits, newest first. A completion date range lets MySQL prune to the matching months.
+     */
+    public List<Map<String, Object>> findHistory(String queueNo, String studentId, String email,
+                                                 LocalDate from, LocalDate to, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT " + HISTORY_COLUMNS + ", archived_at FROM queue_entry_history WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+        if (queueNo != null) {
+            sql.append(" AND queue_no = ?");
+            params.add(queueNo);
+        }
+        if (studentId != null) {
+            sql.append(" AND student_id = ?");
+            params.add(studentId);
+        }
+        if (email != null) {
+            sql.append(" AND email = ?");
+            params.add(email);
+        }
+        if (from != null) {
+            sql.append(" AND completed_time >= ?");
+            params.add(Timestamp.valueOf(from.atStartOfDay()));
+        }
+        if (to != null) {
+            sql.append(" AND completed_time < ?");
+            params.add(Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+        }
+        sql.append(" ORDER BY completed_time DESC LIMIT ").append(limit);
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql.toString(), params.toArray());
+        List<Map<String, Object>> history = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            history.add(toResponse(row));
+        }
+        return history;
+    }
+
+    @Scheduled(fixedDelayString = "${queue.archive.interval-minutes:60}", initialDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void scheduledArchive() {
+        if (!enabled) {
+            return;
+        }
+        scheduledJobGuard.runExclusive("queue-history-archive", () -> {
+            Map<String, Object> report = archive();
+            if ((Integer) report.get("archived") > 0) {
+                System.out.println("Archived completed queue entries: " + report);
+            }
+        });
+    }
+
+    // Partitions start at the oldest completed visit still in queue_entries
+    private void createHistoryTable() {
+        Integer exists = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = 'queue_entry_history'",
+            Integer.class);
+        if (exists != null && exists > 0) {
+            return;
+        }
+
+        Timestamp oldest = jdbcTemplate.queryForObject(
+            "SELECT MIN(COALESCE(completed_time, added_time)) FROM queue_entries WHERE stage = 'completed'", Timestamp.class);
+        YearMonth first = oldest != null ? YearMonth.from(oldest.toLocalDateTime()) : YearMonth.now();
+        YearMonth last = YearMonth.now().plusMonths(1);
+
+        StringBuilder partitions = new StringBuilder();
+        partitions.append("PARTITION p_before VALUES LESS THAN (TO_DAYS('").append(first.atDay(1)).append("')), ");
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            partitions.append(partitionDefinition(month)).append(", ");
+        }
+        partitions.append("PARTITION pmax VALUES LESS THAN MAXVALUE");
+
+        // Partitioned InnoDB tables need the partitioning column in every unique key
+        jdbcTemplate.execute(
+            "CREATE TABLE IF NOT EXISTS queue_entry_history (" +
+            "id BIGINT NOT NULL, " +
+            "queue_no VARCHAR(255) NOT NULL, " +
+            "student_name VARCHAR(255) NOT NULL, " +
+            "student_id VARCHAR(255) NOT NULL, " +
+            "email VARCHAR(255) NOT NULL, " +
+            "nic VARCHAR(255) NOT NULL, " +
+            "phone VARCHAR(255), " +
+            "medical_record_id VARCHAR(255) NOT NULL, " +
+            "status VARCHAR(255) NOT NULL, " +
+            "priority VARCHAR(255), " +
+            "added_time DATETIME(6) NOT NULL, " +
+            "moved_to_doctor_time DATETIME(6), " +
+            "prescription_time DATETIME(6), " +
+            "completed_time DATETIME(6) NOT NULL, " +
+            "pharmacy_status VARCHAR(255), " +
+            "archived_at DATETIME(6) NOT NULL, " +
+            "PRIMARY KEY (id, completed_time), " +
+            "KEY idx_history_queue_no (queue_no), " +
+            "KEY idx_history_student_id (student_id), " +
+            "KEY idx_history_email (email)" +
+            ") PARTITION BY RANGE (TO_DAYS(completed_time)) (" + partitions + ")");
+        System.out.println("Created queue_entry_history partitioned by month from " + first);
+    }
+
+    // Split months up to and including the given one off pmax (which stays empty while we keep ahead)
+    private void ensurePartitions(YearMonth through) {
+        List<String> names = jdbcTemplate.queryForList(
+            "SELECT partition_name FROM information_schema.partitions WHERE table_schema = DATABASE() " +
+            "AND table_name = 'queue_entry_history' AND partition_name LIKE 'p2%' ORDER BY partition_description + 0",
+            String.class);
+        YearMonth next = names.isEmpty()
+            ? YearMonth.now()
+            : YearMonth.parse(names.get(names.size() - 1).substring(1), DateTimeFormatter.ofPattern("yyyyMM")).plusMonths(1);
+        if (next.isAfter(through)) {
+            return;
+        }
+
+        StringBuilder partitions = new StringBuilder();
+        for (YearMonth month = next; !month.isAfter(through); month = month.plusMonths(1)) {
+            partitions.append(partitionDefinition(month)).append(", ");
+        }
+        jdbcTemplate.execute("ALTER TABLE queue_entry_history REORGANIZE PARTITION pmax INTO (" +
+            partitions + "PARTITION pmax VALUES LESS THAN MAXVALUE)");
+    }
+
+    private String partitionDefinition(YearMonth month) {
+        return "PARTITION " + month.format(PARTITION_NAME) + " VALUES LESS THAN (TO_DAYS('" + month.plusMonths(1).atDay(1) + "'))";
+    }
+
+    private Map<String, Object> toResponse(Map<String, Object> row) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", row.get("id"));
+        map.put("queueNo", row.get("queue_no"));
+        map.put("studentName", row.get("student_name"));
+        map.put("studentId", row.get("student_id"));
+        map.put("email", row.get("email"));
+        map.put("nic", row.get("nic"));
+        map.put("phone", row.get("phone"));
+        map.put("medicalRecordId", row.get("medical_record_id"));
+        map.put("status", row.get("status"));
+        map.put("priority", row.get("priority"));
+        map.put("stage", "completed");
+        map.put("addedTime", asText(row.get("added_time")));
+        map.put("movedToDoctorTime", asText(row.get("moved_to_doctor_time")));
+        map.put("prescriptionTime", asText(row.get("prescription_time")));
+        map.put("completedTime", asText(row.get("completed_time")));
+        map.put("pharmacyStatus", row.get("pharmacy_status"));
+        map.put("archivedAt", asText(row.get("archived_at")));
+        return map;
+    }
+
+    private String asText(Object time) {
+        if (time instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime().toString();
+        }
+        return time != null ? time.toString() : null;
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.demo.service;
+
+import com.example.demo.model.QueueEntry;
+import com.example.demo.repository.QueueEntryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of the active (not completed) queue, kept per stage in arrival order.
+ *
+ * QueueController writes every change through to this index after saving it, so the
+ * stage lists and counts can be served without querying queue_entries. A periodic
+ * reconciliation compares the index with the table and repairs any drift, e.g. rows
+ * changed by another node or directly in the database.
+ */
+@Service
+public class QueueIndex {
+
+    private static final String COMPLETED = "completed";
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @Autowired
+    private ScheduledJobGuard scheduledJobGuard;
+
+    // Active entries per stage, ordered by (addedTime, id)
+    private final ConcurrentMap<String, ConcurrentSkipListMap<ArrivalKey, QueueEntry>> stages = new ConcurrentHashMap<>();
+
+    // Latest known state per queue number; a null entry marks a recently removed one
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+
+    private final AtomicLong writeStamp = new AtomicLong();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean loaded = false;
+
+    @PostConstruct
+    public void start() {
+        try {
+            reconcile();
+            loaded = true;
+            System.out.println("Queue index loaded with " + slots.size() + " active entries");
+        } catch (Exception e) {
+            // Endpoints fall back to the database until a reconciliation succeeds
+            System.err.println("Warning: Could not load queue index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Components that derive their own lookups from the active queue
+     */
+    public interface Listener {
+
+        // previous is null for entries new to the index; current is null for removed ones and
+        // has stage "completed" when the entry just finished
+        void onChange(QueueEntry previous, QueueEntry current);
+
+        void onCleared();
+
+        // Called after each reconciliation with the table
+        default void onReconciled() {}
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Active entries of a stage in arrival order
+    public List<QueueEntry> getStage(String stage) {
+        ConcurrentSkipListMap<ArrivalKey, QueueEntry> entries = stages.get(stage);
+        return entries != null ? new ArrayList<>(entries.values()) : new ArrayList<>();
+    }
+
+    // All active entries in arrival order
+    public List<QueueEntry> getActiveEntries() {
+        List<QueueEntry> active = new ArrayList<>();
+        for (ConcurrentSkipListMap<ArrivalKey, QueueEntry> entries : stages.values()) {
+            active.addAll(entries.values());
+        }
+        active.sort(Comparator.comparing(ArrivalKey::of));
+        return active;
+    }
+
+    public Optional<QueueEntry> findActive(String queueNo) {
+        Slot slot = slots.get(queueNo);
+        return slot != null ? Optional.ofNullable(slot.entry) : Optional.empty();
+    }
+
+    public long countStage(String stage) {
+        ConcurrentSkipListMap<ArrivalKey, QueueEntry> entries = stages.get(stage);
+        return entries != null ? entries.size() : 0;
+    }
+
+    /**
+     * A new entry was saved
+     */
+    public void added(QueueEntry entry) {
+        place(entry);
+    }
+
+    /**
+     * An existing entry was saved, possibly in a different stage
+     */
+    public void updated(String previousStage, QueueEntry entry) {
+        place(entry);
+    }
+
+    /**
+     * All entries were deleted
+     */
+    public void cleared() {
+        long stamp = writeStamp.incrementAndGet();
+        for (String queueNo : slots.keySet()) {
+            slots.put(queueNo, new Slot(null, stamp, 0));
+        }
+        stages.clear();
+        listeners.forEach(Listener::onCleared);
+    }
+
+    /**
+     * Compare the index with queue_entries and repair any drift.
+     * Entries written through after the comparison started are left alone.
+     */
+    public synchronized Map<String, Object> reconcile() {
+        long startStamp = writeStamp.get();
+        List<QueueEntry> active = queueEntryRepository.findActiveEntries();
+
+        Map<String, QueueEntry> databaseEntries = new HashMap<>();
+        for (QueueEntry entry : active) {
+            databaseEntries.put(entry.getQueueNo(), entry);
+        }
+
+        int added = 0;
+        int updated = 0;
+        int removed = 0;
+
+        for (QueueEntry entry : active) {
+            Slot slot = slots.get(entry.getQueueNo());
+            if (slot != null && slot.stamp > startStamp) {
+                continue;
+            }
+            if (slot == null || slot.entry == null) {
+                if (placeIfUnchanged(entry, startStamp)) {
+                    added++;
+                }
+            } else if (differs(slot.entry, entry)) {
+                if (placeIfUnchanged(entry, startStamp)) {
+                    updated++;
+                }
+            }
+        }
+
+        for (Map.Entry<String, Slot> slot : slots.entrySet()) {
+            if (slot.getValue().entry != null && !databaseEntries.containsKey(slot.getKey())) {
+                if (removeIfUnchanged(slot.getKey(), startStamp)) {
+                    removed++;
+                }
+            }
+        }
+
+        // Tombstones older than this run are covered by the table read above
+        for (Map.Entry<String, Slot> slot : slots.entrySet()) {
+            if (slot.getValue().entry == null && slot.getValue().stamp <= startStamp) {
+                slots.remove(slot.getKey(), slot.getValue());
+            }
+        }
+
+        loaded = true;
+        listeners.forEach(Listener::onReconciled);
+
+        Map<String, Object> report = new HashMap<>();
+        report.put("activeEntries", active.size());
+        report.put("added", added);
+        report.put("updated", updated);
+        report.put("removed", removed);
+        report.put("checkedAt", LocalDateTime.now().toString());
+        return report;
+    }
+
+    @Scheduled(fixedDelayString = "${queue.index.reconcile-seconds:60}", initialDelayString = "${queue.index.reconcile-seconds:60}",
+               timeUnit = TimeUnit.SECONDS)
+    public void scheduledReconcile() {
+        scheduledJobGuard.runExclusive("queue-index-reconcile", () -> {
+            Map<String, Object> report = reconcile();
+            int repaired = (Integer) report.get("added") + (Integer) report.get("updated") + (Integer) report.get("removed");
+            if (repaired > 0) {
+                System.out.println("Queue index drift repaired: " + report);
+            }
+        });
+    }
+
+    private void place(QueueEntry entry) {
+        long stamp = writeStamp.incrementAndGet();
+        slots.compute(entry.getQueueNo(), (queueNo, current) -> {
+            // Concurrent writers may report out of order; never replace a newer version
+            if (current != null && current.version > entry.getVersion()) {
+                return current;
+            }
+            move(current, entry);
+            return new Slot(COMPLETED.equals(entry.getStage()) ? null : entry, stamp, entry.getVersion());
+        });
+    }
+
+    private boolean placeIfUnchanged(QueueEntry entry, long startStamp) {
+        boolean[] placed = {false};
+        slots.compute(entry.getQueueNo(), (queueNo, current) -> {
+            if (current != null && current.stamp > startStamp) {
+                return current;
+            }
+            move(current, entry);
+            placed[0] = true;
+            return new Slot(entry, current != null ? current.stamp : startStamp, entry.getVersion());
+        });
+        return placed[0];
+    }
+
+    private boolean removeIfUnchanged(String queueNo, long startStamp) {
+        boolean[] removed = {false};
+        slots.computeIfPresent(queueNo, (key, current) -> {
+            if (current.stamp > startStamp || current.entry == null) {
+                return current;
+            }
+            move(current, null);
+            removed[0] = true;
+            return new Slot(null, current.stamp, current.version);
+        });
+        return removed[0];
+    }
+
+    // Take the previous version out of its stage list and add the new one (if still active).
+    // Runs inside slots.compute, so listeners see the changes of one queue number in order.
+    private void move(Slot current, QueueEntry entry) {
+        QueueEntry previous = current != null ? current.entry : null;
+        for (Listener listener : listeners) {
+            listener.onChange(previous, entry);
+        }
+
+        if (current != null && current.entry != null) {
+            ConcurrentSkipListMap<ArrivalKey, QueueEntry> previousStage = stages.get(current.entry.getStage());
+            if (previousStage != null) {
+                previousStage.remove(ArrivalKey.of(current.entry));
+            }
+        }
+        if (entry != null && !COMPLETED.equals(entry.getStage())) {
+            stages.computeIfAbsent(entry.getStage(), stage -> new ConcurrentSkipListMap<>())
+                .put(ArrivalKey.of(entry), entry);
+        }
+    }
+
+    private boolean differs(QueueEntry indexed, QueueEntry stored) {
+        return !Objects.equals(indexed.getStage(), stored.getStage())
+            || !Objects.equals(indexed.getStatus(), stored.getStatus())
+            || !Objects.equals(indexed.getPriority(), stored.getPriority())
+            || !Objects.equals(indexed.getPharmacyStatus(), stored.getPharmacyStatus())
+            || !Objects.equals(indexed.getAddedTime(), stored.getAddedTime())
+            || indexed.getVersion() != stored.getVersion();
+    }
+
+    private record Slot(QueueEntry entry, long stamp, long version) {}
+
+    private record ArrivalKey(LocalDateTime addedTime, long id) implements Comparable<ArrivalKey> {
+
+        static ArrivalKey of(QueueEntry entry) {
+            return new ArrivalKey(entry.getAddedTime(), entry.getId() != null ? entry.getId() : 0L);
+        }
+
+        @Override
+        public int compareTo(ArrivalKey other) {
+            int byTime = Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()).compare(addedTime, other.addedTime);
+            return byTime != 0 ? byTime : Long.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.QueueEntryRepository;
+import com.example.demo.repository.QueueSequenceRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out queue numbers without a database round-trip per check-in.
+ *
+ * Each node reserves a block of numbers from the queue_sequences row with a
+ * compare-and-set update and serves the block from an atomic counter. Nodes
+ * never share a block, so several instances behind a load balancer cannot
+ * issue the same number, and the sequence row survives restarts. Numbers left
+ * in a block when a node stops are skipped, never reused.
+ *
+ * A row is only ever advanced. A reset starts a new row for the day, keyed
+ * "<key>@<reset time>", which every node switches to at its next refill. Until
+ * then another node may still serve a number the new row hands out again; the
+ * unique queue_no rejects the second insert, and the caller drops its block
+ * (discardBlock) and takes a fresh number.
+ */
+@Service
+public class QueueNumberAllocator {
+
+    private static final String SEQUENCE_KEY = "queue";
+    private static final int MAX_RESERVE_ATTEMPTS = 50;
+    private static final DateTimeFormatter DAY_KEY = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final DateTimeFormatter DAY_PREFIX = DateTimeFormatter.ofPattern("yyMMdd");
+
+    @Autowired
+    private QueueSequenceRepository sequenceRepository;
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @Value("${queue.number.block-size:20}")
+    private int blockSize;
+
+    @Value("${queue.number.reset-daily:false}")
+    private boolean resetDaily;
+
+    private final AtomicReference<Block> currentBlock = new AtomicReference<>(Block.EMPTY);
+
+    // Only taken when the local block runs out; never held across nodes
+    private final ReentrantLock refillLock = new ReentrantLock();
+
+    /**
+     * Next queue number, e.g. "007" (or "261017-007" when numbers reset daily)
+     */
+    public String nextQueueNumber() {
+        while (true) {
+            LocalDate today = LocalDate.now();
+            String baseKey = sequenceKey(today);
+            Block block = currentBlock.get();
+
+            if (block.baseKey.equals(baseKey)) {
+                long value = block.next.getAndIncrement();
+                if (value < block.end) {
+                    return format(value, today);
+                }
+            }
+
+            refill(block, baseKey);
+        }
+    }
+
+    /**
+     * Restart numbering from 1 (used when all queues are cleared), in a new sequence row
+     * for the day; the rows other nodes hold blocks from are left as they are.
+     */
+    public void reset() {
+        refillLock.lock();
+        try {
+            String baseKey = sequenceKey(LocalDate.now());
+            sequenceRepository.insertIfAbsent(baseKey + "@" + System.currentTimeMillis(), 1);
+            currentBlock.set(Block.EMPTY);
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    /**
+     * Drop the rest of this node's block, e.g. after one of its numbers was already taken;
+     * the next number comes from the current sequence row
+     */
+    public void discardBlock() {
+        refillLock.lock();
+        try {
+            currentBlock.set(Block.EMPTY);
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    private void refill(Block exhausted, String baseKey) {
+        refillLock.lock();
+        try {
+            // Another thread may have refilled while we waited for the lock
+            if (currentBlock.get() == exhausted) {
+                currentBlock.set(reserveBlock(baseKey));
+            }
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    private Block reserveBlock(String baseKey) {
+        // The row of the latest reset, if there was one
+        String key = sequenceRepository.findCurrentKey(baseKey, baseKey + "@%");
+        if (key == null) {
+            key = baseKey;
+            sequenceRepository.insertIfAbsent(key, initialValue());
+        }
+
+        int size = Math.max(1, blockSize);
+        for (int attempt = 0; attempt < MAX_RESERVE_ATTEMPTS; attempt++) {
+            Long start = sequenceRepository.findNextValue(key);
+            if (start != null && sequenceRepository.advance(key, start, start + size) == 1) {
+                return new Block(baseKey, start, start + size);
+            }
+        }
+
+        throw new IllegalStateException("Could not reserve queue numbers for " + key + " after " + MAX_RESERVE_ATTEMPTS + " attempts");
+    }
+
+    // First value of a new sequence row; continues after existing entries when numbers never reset
+    private long initialValue() {
+        if (resetDaily) {
+            return 1;
+        }
+        try {
+            String maxQueueNo = queueEntryRepository.findMaxQueueNo();
+            if (maxQueueNo != null && !maxQueueNo.isEmpty()) {
+                // Only the number itself; entries from a daily-reset period carry a "yyMMdd-" prefix
+                return Long.parseLong(maxQueueNo.substring(maxQueueNo.lastIndexOf('-') + 1)) + 1;
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Could not get max queue number from database: " + e.getMessage());
+        }
+        return 1;
+    }
+
+    private String sequenceKey(LocalDate day) {
+        return resetDaily ? SEQUENCE_KEY + ":" + day.format(DAY_KEY) : SEQUENCE_KEY;
+    }
+
+    // queue_no is unique, so daily numbers carry the day to stay distinct from earlier days
+    private String format(long value, LocalDate day) {
+        String number = String.format("%03d", value);
+        return resetDaily ? day.format(DAY_PREFIX) + "-" + number : number;
+    }
+
+    private static final class Block {
+        static final Block EMPTY = new Block("", 0, 0);
+
+        // The day's key the block was reserved for, whichever reset row it came from
+        final String baseKey;
+        final AtomicLong next;
+        final long end;
+
+        Block(String baseKey, long start, long end) {
+            this.baseKey = baseKey;
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
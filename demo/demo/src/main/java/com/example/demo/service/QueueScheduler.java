@@ -0,0 +1,177 @@
+package com.example.demo.service;
+
+import com.example.demo.model.QueueEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Orders each stage by priority class with aging, and estimates waits from recent service rates.
+ *
+ * An entry's place in line is its arrival time pushed back by aging-minutes-per-class for
+ * every class below emergency. The key is fixed when the entry changes, so no re-sorting is
+ * needed as time passes, yet a routine student is never overtaken by an urgent one who
+ * arrived more than that many minutes later, so low priorities cannot starve.
+ * Fed by the QueueIndex, like the other derived lookups.
+ */
+@Service
+public class QueueScheduler implements QueueIndex.Listener {
+
+    private static final String COMPLETED = "completed";
+
+    // Priority classes, most urgent first; unknown values are treated as normal
+    private static final Map<String, Integer> PRIORITY_CLASSES = Map.of(
+        "emergency", 0,
+        "urgent", 1,
+        "high", 1,
+        "normal", 2,
+        "medium", 2,
+        "low", 3
+    );
+    private static final int NORMAL_CLASS = 2;
+
+    @Autowired
+    private QueueIndex queueIndex;
+
+    @Value("${queue.scheduling.aging-minutes-per-class:15}")
+    private long agingMinutesPerClass;
+
+    @Value("${queue.scheduling.rate-window-minutes:60}")
+    private long rateWindowMinutes;
+
+    // stage -> entries ordered by (scheduled time, id)
+    private final ConcurrentMap<String, ConcurrentSkipListMap<ScheduleKey, QueueEntry>> stages = new ConcurrentHashMap<>();
+
+    // stage -> times entries recently left it, oldest first
+    private final ConcurrentMap<String, ConcurrentLinkedDeque<LocalDateTime>> departures = new ConcurrentHashMap<>();
+
+    private final LocalDateTime startedAt = LocalDateTime.now();
+
+    @PostConstruct
+    public void start() {
+        queueIndex.addListener(this);
+        for (QueueEntry entry : queueIndex.getActiveEntries()) {
+            schedule(entry);
+        }
+    }
+
+    /**
+     * Whether the order can be served from memory; callers should fall back to arrival order otherwise
+     */
+    public boolean isReady() {
+        return queueIndex.isLoaded();
+    }
+
+    /**
+     * Active entries of a stage in the order they should be called
+     */
+    public List<QueueEntry> getStage(String stage) {
+        ConcurrentSkipListMap<ScheduleKey, QueueEntry> entries = stages.get(stage);
+        return entries != null ? new ArrayList<>(entries.values()) : new ArrayList<>();
+    }
+
+    /**
+     * Entries leaving the stage per minute over the rate window, or 0 when none left recently
+     */
+    public double serviceRatePerMinute(String stage) {
+        ConcurrentLinkedDeque<LocalDateTime> times = departures.get(stage);
+        if (times == null) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        trim(times, now);
+        int recent = times.size();
+        if (recent == 0) {
+            return 0;
+        }
+        // Right after startup only part of the window has been observed
+        long observedMinutes = Math.min(rateWindowMinutes, Math.max(1, Duration.between(startedAt, now).toMinutes()));
+        return (double) recent / observedMinutes;
+    }
+
+    /**
+     * Minutes until the entry at this 0-based position is called, or null without a recent rate
+     */
+    public Long estimateWaitMinutes(String stage, int position) {
+        double rate = serviceRatePerMinute(stage);
+        if (rate <= 0) {
+            return null;
+        }
+        return Math.round((position + 1) / rate);
+    }
+
+    public static int priorityClass(String priority) {
+        if (priority == null) {
+            return NORMAL_CLASS;
+        }
+        return PRIORITY_CLASSES.getOrDefault(priority.trim().toLowerCase(), NORMAL_CLASS);
+    }
+
+    @Override
+    public void onChange(QueueEntry previous, QueueEntry current) {
+        if (previous != null) {
+            ConcurrentSkipListMap<ScheduleKey, QueueEntry> entries = stages.get(previous.getStage());
+            if (entries != null) {
+                entries.remove(keyOf(previous));
+            }
+            if (current != null && !previous.getStage().equals(current.getStage())) {
+                recordDeparture(previous.getStage());
+            }
+        }
+        if (current != null) {
+            schedule(current);
+        }
+    }
+
+    @Override
+    public void onCleared() {
+        stages.clear();
+        departures.clear();
+    }
+
+    private void schedule(QueueEntry entry) {
+        if (COMPLETED.equals(entry.getStage())) {
+            return;
+        }
+        stages.computeIfAbsent(entry.getStage(), stage -> new ConcurrentSkipListMap<>())
+            .put(keyOf(entry), entry);
+    }
+
+    private void recordDeparture(String stage) {
+        LocalDateTime now = LocalDateTime.now();
+        ConcurrentLinkedDeque<LocalDateTime> times = departures.computeIfAbsent(stage, s -> new ConcurrentLinkedDeque<>());
+        times.addLast(now);
+        trim(times, now);
+    }
+
+    private void trim(ConcurrentLinkedDeque<LocalDateTime> times, LocalDateTime now) {
+        LocalDateTime windowStart = now.minusMinutes(rateWindowMinutes);
+        LocalDateTime oldest;
+        while ((oldest = times.peekFirst()) != null && oldest.isBefore(windowStart)) {
+            times.pollFirst();
+        }
+    }
+
+    private ScheduleKey keyOf(QueueEntry entry) {
+        long penaltyMinutes = priorityClass(entry.getPriority()) * agingMinutesPerClass;
+        return new ScheduleKey(entry.getAddedTime().plusMinutes(penaltyMinutes), entry.getId());
+    }
+
+    private record ScheduleKey(LocalDateTime scheduledTime, long id) implements Comparable<ScheduleKey> {
+
+        @Override
+        public int compareTo(ScheduleKey other) {
+            int byTime = scheduledTime.compareTo(other.scheduledTime);
+            return byTime != 0 ? byTime : Long.compare(id, other.id);
+        }
+    }
+}
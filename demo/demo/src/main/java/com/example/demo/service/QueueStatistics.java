@@ -0,0 +1,234 @@
+package com.example.demo.service;
+
+import com.example.demo.model.QueueEntry;
+import com.example.demo.repository.QueueEntryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue statistics maintained incrementally by the queue lifecycle.
+ *
+ * Stage counts and the total are seeded from one GROUP BY at startup and re-seeded
+ * after each queue index reconciliation. Today's throughput and the
+ * reception->doctor, doctor->pharmacy and pharmacy->completed service times are
+ * recorded as entries move, so /api/queue/stats never rescans queue_entries.
+ */
+@Service
+public class QueueStatistics implements QueueIndex.Listener {
+
+    private static final String COMPLETED = "completed";
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @Autowired
+    private QueueIndex queueIndex;
+
+    private final ConcurrentMap<String, AtomicLong> stageCounts = new ConcurrentHashMap<>();
+    private final AtomicLong totalCount = new AtomicLong();
+
+    // Bumped by every lifecycle update so a re-seed can tell whether it raced with one
+    private final AtomicLong updateStamp = new AtomicLong();
+
+    private volatile Day today = new Day(LocalDate.now());
+    private volatile boolean seeded = false;
+
+    @PostConstruct
+    public void start() {
+        queueIndex.addListener(this);
+        try {
+            reseedCounts();
+            seedToday();
+            seeded = true;
+        } catch (Exception e) {
+            System.err.println("Warning: Could not seed queue statistics: " + e.getMessage());
+        }
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * A new entry was saved
+     */
+    public void recordAdded(QueueEntry entry) {
+        updateStamp.incrementAndGet();
+        counter(entry.getStage()).incrementAndGet();
+        totalCount.incrementAndGet();
+        currentDay().added.incrementAndGet();
+    }
+
+    /**
+     * An existing entry was saved, possibly in a different stage
+     */
+    public void recordTransition(String previousStage, QueueEntry entry) {
+        if (Objects.equals(previousStage, entry.getStage())) {
+            return;
+        }
+        updateStamp.incrementAndGet();
+        counter(previousStage).decrementAndGet();
+        counter(entry.getStage()).incrementAndGet();
+
+        Day day = currentDay();
+        switch (entry.getStage()) {
+            case "doctor" -> recordDuration(day.receptionToDoctor, entry.getAddedTime(), entry.getMovedToDoctorTime());
+            case "pharmacy" -> recordDuration(day.doctorToPharmacy, entry.getMovedToDoctorTime(), entry.getPrescriptionTime());
+            case COMPLETED -> {
+                day.completed.incrementAndGet();
+                recordDuration(day.pharmacyToCompleted, entry.getPrescriptionTime(), entry.getCompletedTime());
+            }
+            default -> { }
+        }
+    }
+
+    /**
+     * Completed entries were moved to queue_entry_history
+     */
+    public void recordArchived(int count) {
+        updateStamp.incrementAndGet();
+        counter(COMPLETED).addAndGet(-count);
+        totalCount.addAndGet(-count);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("reception", count("reception"));
+        stats.put("doctor", count("doctor"));
+        stats.put("pharmacy", count("pharmacy"));
+        stats.put("completed", count(COMPLETED));
+        stats.put("total", totalCount.get());
+
+        Day day = currentDay();
+        Map<String, Object> throughput = new HashMap<>();
+        throughput.put("date", day.date.toString());
+        throughput.put("added", day.added.get());
+        throughput.put("completed", day.completed.get());
+        stats.put("today", throughput);
+
+        Map<String, Object> serviceTimes = new HashMap<>();
+        serviceTimes.put("receptionToDoctor", day.receptionToDoctor.summary());
+        serviceTimes.put("doctorToPharmacy", day.doctorToPharmacy.summary());
+        serviceTimes.put("pharmacyToCompleted", day.pharmacyToCompleted.summary());
+        stats.put("serviceTimes", serviceTimes);
+
+        return stats;
+    }
+
+    @Override
+    public void onChange(QueueEntry previous, QueueEntry current) {
+        // Counts follow the explicit lifecycle calls; the index only drives re-seeding
+    }
+
+    @Override
+    public void onCleared() {
+        updateStamp.incrementAndGet();
+        stageCounts.clear();
+        totalCount.set(0);
+        today = new Day(LocalDate.now());
+    }
+
+    @Override
+    public void onReconciled() {
+        try {
+            reseedCounts();
+        } catch (Exception e) {
+            System.err.println("Error re-seeding queue statistics: " + e.getMessage());
+        }
+    }
+
+    // Replace the counters with one GROUP BY, unless a lifecycle update raced with the query
+    private void reseedCounts() {
+        long startStamp = updateStamp.get();
+        List<Object[]> rows = queueEntryRepository.countEntriesByStage();
+
+        synchronized (this) {
+            if (updateStamp.get() != startStamp) {
+                return;
+            }
+            Map<String, Long> counts = new HashMap<>();
+            long total = 0;
+            for (Object[] row : rows) {
+                long value = ((Number) row[1]).longValue();
+                counts.put((String) row[0], value);
+                total += value;
+            }
+            for (Map.Entry<String, AtomicLong> counter : stageCounts.entrySet()) {
+                counter.getValue().set(counts.getOrDefault(counter.getKey(), 0L));
+            }
+            counts.forEach((stage, value) -> counter(stage).set(value));
+            totalCount.set(total);
+        }
+    }
+
+    // Rebuild today's throughput and service times from today's stage timestamps
+    private void seedToday() {
+        Day day = new Day(LocalDate.now());
+        for (Object[] row : queueEntryRepository.findStageTimesSince(day.date.atStartOfDay())) {
+            LocalDateTime added = (LocalDateTime) row[0];
+            LocalDateTime movedToDoctor = (LocalDateTime) row[1];
+            LocalDateTime prescribed = (LocalDateTime) row[2];
+            LocalDateTime completed = (LocalDateTime) row[3];
+
+            day.added.incrementAndGet();
+            recordDuration(day.receptionToDoctor, added, movedToDoctor);
+            recordDuration(day.doctorToPharmacy, movedToDoctor, prescribed);
+            if (completed != null) {
+                day.completed.incrementAndGet();
+                recordDuration(day.pharmacyToCompleted, prescribed, completed);
+            }
+        }
+        today = day;
+    }
+
+    private Day currentDay() {
+        Day day = today;
+        LocalDate date = LocalDate.now();
+        if (!day.date.equals(date)) {
+            synchronized (this) {
+                if (!today.date.equals(date)) {
+                    today = new Day(date);
+                }
+                day = today;
+            }
+        }
+        return day;
+    }
+
+    private void recordDuration(ServiceTimeSketch sketch, LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null) {
+            sketch.record(Duration.between(from, to).getSeconds());
+        }
+    }
+
+    private long count(String stage) {
+        AtomicLong counter = stageCounts.get(stage);
+        return counter != null ? Math.max(0, counter.get()) : 0;
+    }
+
+    private AtomicLong counter(String stage) {
+        return stageCounts.computeIfAbsent(stage, s -> new AtomicLong());
+    }
+
+    private static final class Day {
+        final LocalDate date;
+        final AtomicLong added = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final ServiceTimeSketch receptionToDoctor = new ServiceTimeSketch();
+        final ServiceTimeSketch doctorToPharmacy = new ServiceTimeSketch();
+        final ServiceTimeSketch pharmacyToCompleted = new ServiceTimeSketch();
+
+        Day(LocalDate date) {
+            this.date = date;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.demo.service;
+
+import com.example.demo.model.QueueEntry;
+import com.example.demo.repository.QueueEntryRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Applies queue stage/status/priority changes.
+ *
+ * Stages only move forward along ALLOWED_TRANSITIONS. A single change is written as a
+ * conditional UPDATE on the stage and version it was read with, so two staff members
+ * acting on the same entry cannot overwrite each other: the loser gets a conflict with
+ * the current state. A batch loads all entries with a single IN query and flushes them
+ * together, so Hibernate sends the version-checked UPDATEs as JDBC batches
+ * (see hibernate.jdbc.batch_size in application.properties).
+ */
+@Service
+public class QueueTransitionService {
+
+    public static final Set<String> STAGES = Set.of("reception", "doctor", "pharmacy", "completed");
+
+    // Stage moves an entry may make; staying in the same stage is always allowed
+    private static final Map<String, Set<String>> ALLOWED_TRANSITIONS = Map.of(
+        "reception", Set.of("doctor"),
+        "doctor", Set.of("pharmacy", "completed"),
+        "pharmacy", Set.of("completed"),
+        "completed", Set.of()
+    );
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private QueueEntryPayloadService queueEntryPayloadService;
+
+    /**
+     * Outcome of one operation; entry and previousStage are set only when it was applied
+     */
+    public static class Transition {
+        private final String queueNo;
+        private String previousStage;
+        private QueueEntry entry;
+        private String error;
+        private boolean notFound;
+        private boolean conflict;
+        private QueueEntry current;
+
+        Transition(String queueNo) {
+            this.queueNo = queueNo;
+        }
+
+        public String getQueueNo() {
+            return queueNo;
+        }
+
+        public String getPreviousStage() {
+            return previousStage;
+        }
+
+        public QueueEntry getEntry() {
+            return entry;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isApplied() {
+            return entry != null;
+        }
+
+        public boolean isNotFound() {
+            return notFound;
+        }
+
+        // The entry was changed by someone else or is in a stage it cannot move from
+        public boolean isConflict() {
+            return conflict;
+        }
+
+        // State of the entry when a conflict was detected
+        public QueueEntry getCurrent() {
+            return current;
+        }
+    }
+
+    public static boolean isAllowed(String fromStage, String toStage) {
+        return Objects.equals(fromStage, toStage)
+            || ALLOWED_TRANSITIONS.getOrDefault(fromStage, Set.of()).contains(toStage);
+    }
+
+    /**
+     * Apply one operation ({targetStage, status, priority}) to an entry.
+     * With moveRequired set the entry must actually change stage, so a repeated
+     * move-to-X request for an entry already in X is reported as a conflict.
+     */
+    public Transition transition(String queueNo, Map<String, Object> operation, boolean moveRequired) {
+        Transition result = new Transition(queueNo);
+        Optional<QueueEntry> optionalEntry = queueEntryRepository.findByQueueNo(queueNo);
+        if (!optionalEntry.isPresent()) {
+            result.notFound = true;
+            result.error = "Student not found in queue";
+            return result;
+        }
+
+        // With open-in-view the entry is still managed by the request's persistence context; detach it
+        // so Hibernate never flushes its own versioned UPDATE and only the conditional UPDATE writes
+        QueueEntry entry = optionalEntry.get();
+        if (entityManager.contains(entry)) {
+            entityManager.detach(entry);
+        }
+        String expectedStage = entry.getStage();
+        long expectedVersion = entry.getVersion();
+        String targetStage = asString(operation.get("targetStage"));
+
+        if (targetStage != null && !STAGES.contains(targetStage)) {
+            result.error = "Unknown target stage: " + targetStage;
+            return result;
+        }
+        String stageError = checkMove(expectedStage, targetStage, moveRequired);
+        if (stageError != null) {
+            return conflict(result, stageError, entry);
+        }
+
+        applyOperation(entry, operation, LocalDateTime.now());
+        if (queueEntryRepository.updateIfUnchanged(entry, expectedStage, expectedVersion) == 0) {
+            // The stage that won, even when called inside a transaction whose snapshot predates it
+            Optional<QueueEntry> latest = queueEntryRepository.findLatestByQueueNo(queueNo);
+            if (!latest.isPresent()) {
+                result.notFound = true;
+                result.error = "Student not found in queue";
+                return result;
+            }
+            return conflict(result, "Entry was changed by another user; it is now in " + latest.get().getStage(), latest.get());
+        }
+
+        entry.setVersion(expectedVersion + 1);
+        result.previousStage = expectedStage;
+        result.entry = entry;
+        return result;
+    }
+
+    /**
+     * Apply one operation and store a payload for the entry in the same transaction: the payload
+     * is written only if the transition is, and a failed payload write undoes the transition
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public Transition transition(String queueNo, Map<String, Object> operation, boolean moveRequired,
+                                 String payloadType, Object payload) throws IOException {
+        Transition result = transition(queueNo, operation, moveRequired);
+        if (result.isApplied()) {
+            queueEntryPayloadService.store(result.entry.getId(), payloadType, payload);
+        }
+        return result;
+    }
+
+    /**
+     * Apply the operations. With atomic set, nothing is written unless every
+     * operation is valid; otherwise the valid ones are applied and the rest reported.
+     */
+    @Transactional
+    public List<Transition> apply(List<Map<String, Object>> operations, boolean atomic) {
+        Set<String> queueNos = new HashSet<>();
+        for (Map<String, Object> operation : operations) {
+            String queueNo = asString(operation.get("queueNo"));
+            if (queueNo != null) {
+                queueNos.add(queueNo);
+            }
+        }
+
+        Map<String, QueueEntry> entries = new HashMap<>();
+        if (!queueNos.isEmpty()) {
+            for (QueueEntry entry : queueEntryRepository.findByQueueNoIn(queueNos)) {
+                entries.put(entry.getQueueNo(), entry);
+            }
+        }
+
+        List<Transition> results = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        boolean anyInvalid = false;
+        for (Map<String, Object> operation : operations) {
+            Transition result = new Transition(asString(operation.get("queueNo")));
+            result.error = validate(operation, result.queueNo, entries, seen);
+            anyInvalid |= result.error != null;
+            results.add(result);
+        }
+
+        if (atomic && anyInvalid) {
+            for (Transition result : results) {
+                if (result.error == null) {
+                    result.error = "Not applied: another operation in the batch failed";
+                }
+            }
+            return results;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<QueueEntry> changed = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i++) {
+            Transition result = results.get(i);
+            if (result.error != null) {
+                continue;
+            }
+            QueueEntry entry = entries.get(result.queueNo);
+            result.previousStage = entry.getStage();
+            applyOperation(entry, operations.get(i), now);
+            result.entry = entry;
+            changed.add(entry);
+        }
+
+        queueEntryRepository.saveAll(changed);
+        queueEntryRepository.flush();
+        return results;
+    }
+
+    private String validate(Map<String, Object> operation, String queueNo, Map<String, QueueEntry> entries, Set<String> seen) {
+        if (queueNo == null || queueNo.isBlank()) {
+            return "queueNo is required";
+        }
+        if (!seen.add(queueNo)) {
+            return "Duplicate operation for this queue number in the batch";
+        }
+        String targetStage = asString(operation.get("targetStage"));
+        if (targetStage != null && !STAGES.contains(targetStage)) {
+            return "Unknown target stage: " + targetStage;
+        }
+        if (targetStage == null && operation.get("status") == null && operation.get("priority") == null) {
+            return "Nothing to change: targetStage, status or priority is required";
+        }
+        if (!entries.containsKey(queueNo)) {
+            return "Student not found in queue";
+        }
+        return checkMove(entries.get(queueNo).getStage(), targetStage, false);
+    }
+
+    private String checkMove(String currentStage, String targetStage, boolean moveRequired) {
+        if (targetStage == null) {
+            return null;
+        }
+        if (moveRequired && targetStage.equals(currentStage)) {
+            return "Entry is already in " + currentStage;
+        }
+        if (!isAllowed(currentStage, targetStage)) {
+            return "Cannot move an entry from " + currentStage + " to " + targetStage;
+        }
+        return null;
+    }
+
+    private Transition conflict(Transition result, String error, QueueEntry current) {
+        result.conflict = true;
+        result.error = error;
+        result.current = current;
+        return result;
+    }
+
+    // Same stage bookkeeping as the single-entry move endpoints
+    private void applyOperation(QueueEntry entry, Map<String, Object> operation, LocalDateTime now) {
+        String targetStage = asString(operation.get("targetStage"));
+        String status = asString(operation.get("status"));
+        String priority = asString(operation.get("priority"));
+
+        if (targetStage != null && !targetStage.equals(entry.getStage())) {
+            entry.setStage(targetStage);
+            switch (targetStage) {
+                case "reception" -> entry.setStatus("Waiting");
+                case "doctor" -> {
+                    entry.setStatus("Waiting for Doctor");
+                    entry.setMovedToDoctorTime(now);
+                }
+                case "pharmacy" -> {
+                    entry.setStatus("Prescription Ready");
+                    entry.setPrescriptionTime(now);
+                    entry.setPharmacyStatus("Pending");
+                }
+                case "completed" -> {
+                    entry.setStatus("Completed");
+                    entry.setCompletedTime(now);
+                    entry.setPharmacyStatus("Dispensed");
+                }
+                default -> { }
+            }
+        }
+        if (status != null) {
+            entry.setStatus(status);
+        }
+        if (priority != null) {
+            entry.setPriority(priority);
+        }
+    }
+
+    private String asString(Object value) {
+        return value != null ? value.toString() : null;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.PrescriptionMedicine;
+import com.example.demo.entity.StockReservation;
+import com.example.demo.repository.PrescriptionRepository;
+import com.example.demo.repository.StockReservationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Ledger of stock held for prescriptions that are ready for dispensing.
+ *
+ * Each reservation row mirrors units added to medicines.reserved_quantity, so
+ * available-to-promise is quantity - reserved_quantity and two prescriptions can no longer
+ * be promised the same last units. A reservation ends exactly once (conditional update on
+ * its ACTIVE status): consumed by dispensing, released when the prescription is cancelled,
+ * or expired when it is not dispensed in time.
+ */
+@Service
+public class ReservationService {
+
+    public static final String ACTIVE = "ACTIVE";
+    public static final String CONSUMED = "CONSUMED";
+    public static final String RELEASED = "RELEASED";
+    public static final String EXPIRED = "EXPIRED";
+
+    @Autowired
+    private StockReservationRepository reservationRepository;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Value("${inventory.reservation.ttl-minutes:240}")
+    private long ttlMinutes;
+
+    @Value("${inventory.reservation.expiry-batch:500}")
+    private int expiryBatch;
+
+    /**
+     * Reserve every line of a prescription, or nothing. Runs in its own transaction so a failed
+     * attempt rolls back only the reservations. Returns the medicines that could not be
+     * reserved; empty means the prescription now holds its stock (or already did).
+     * Concurrent calls for the same prescription (a restock and the periodic reconcile, say)
+     * are serialized on the prescription row, so a line is never reserved twice.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<Long> reserve(Long prescriptionId, List<PrescriptionMedicine> lines) {
+        // First statement of the transaction, so the reservations read below include those of
+        // a concurrent call that held the lock before us
+        if (prescriptionRepository.lockById(prescriptionId).isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Set<Long> alreadyReserved = new HashSet<>();
+        for (StockReservation reservation : reservationRepository.findActiveByPrescriptionId(prescriptionId)) {
+            alreadyReserved.add(reservation.getPrescriptionMedicineId());
+        }
+
+        // Lock medicine rows in id order so two prescriptions cannot deadlock each other
+        List<PrescriptionMedicine> ordered = new ArrayList<>(lines);
+        ordered.sort(Comparator.comparing(PrescriptionMedicine::getMedicineId, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(ttlMinutes);
+        List<StockReservation> created = new ArrayList<>();
+        List<Long> shortMedicineIds = new ArrayList<>();
+        for (PrescriptionMedicine line : ordered) {
+            if (line.getMedicineId() == null || line.getQuantity() == null || line.getQuantity() <= 0
+                    || alreadyReserved.contains(line.getId())) {
+                continue;
+            }
+            if (stockService.reserve(line.getMedicineId(), line.getQuantity(), prescriptionId)) {
+                created.add(new StockReservation(line.getMedicineId(), prescriptionId, line.getId(), line.getQuantity(), expiresAt));
+            } else {
+                shortMedicineIds.add(line.getMedicineId());
+            }
+        }
+
+        if (!shortMedicineIds.isEmpty()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return shortMedicineIds;
+        }
+        reservationRepository.saveAll(created);
+        return shortMedicineIds;
+    }
+
+    /**
+     * Release the active reservations of a prescription; returns the medicines whose
+     * available-to-promise went up
+     */
+    @Transactional
+    public Set<Long> release(Long prescriptionId) {
+        Set<Long> medicineIds = new HashSet<>();
+        for (StockReservation reservation : reservationRepository.findActiveByPrescriptionId(prescriptionId)) {
+            if (close(reservation, RELEASED)) {
+                medicineIds.add(reservation.getMedicineId());
+            }
+        }
+        return medicineIds;
+    }
+
+    /**
+     * Dispense a prescription line, out of its reservation first if it holds one
+     */
+    @Transactional
+    public StockService.StockChange dispenseLine(PrescriptionMedicine line, int quantity, boolean allowPartial) {
+        if (line.getId() != null && line.getMedicineId() != null) {
+            for (StockReservation reservation : reservationRepository.findActiveByPrescriptionMedicineId(line.getId())) {
+                if (reservationRepository.closeIfActive(reservation.getId(), CONSUMED, LocalDateTime.now()) == 1) {
+                    return stockService.dispenseReserved(line.getMedicineId(), quantity, reservation.getQuantity(), allowPartial,
+                        reservation.getPrescriptionId());
+                }
+            }
+        }
+        return stockService.dispense(line.getMedicineId(), quantity, allowPartial,
+            line.getPrescription() != null ? line.getPrescription().getId() : null);
+    }
+
+    /**
+     * Expire reservations past their time; returns the medicines whose available-to-promise went up
+     */
+    @Transactional
+    public Set<Long> expireDue() {
+        Set<Long> medicineIds = new HashSet<>();
+        for (StockReservation reservation : reservationRepository.findExpired(LocalDateTime.now(), PageRequest.of(0, expiryBatch))) {
+            if (close(reservation, EXPIRED)) {
+                medicineIds.add(reservation.getMedicineId());
+            }
+        }
+        return medicineIds;
+    }
+
+    // Units each medicine has reserved for this prescription
+    public Map<Long, Integer> reservedFor(Long prescriptionId) {
+        Map<Long, Integer> reserved = new HashMap<>();
+        for (StockReservation reservation : reservationRepository.findActiveByPrescriptionId(prescriptionId)) {
+            reserved.merge(reservation.getMedicineId(), reservation.getQuantity(), Integer::sum);
+        }
+        return reserved;
+    }
+
+    private boolean close(StockReservation reservation, String status) {
+        if (reservationRepository.closeIfActive(reservation.getId(), status, LocalDateTime.now()) != 1) {
+            return false;
+        }
+        stockService.releaseReserved(reservation.getMedicineId(), reservation.getQuantity(), reservation.getPrescriptionId());
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo.service;
+
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a background job from running twice at once, e.g. a scheduled run and a manual
+ * trigger of the same job. A run that finds the job already running is skipped and counted.
+ * A run that throws is counted as a failure and the exception passed on to the caller; jobs
+ * therefore let their exceptions through rather than logging and swallowing them.
+ */
+@Service
+public class ScheduledJobGuard {
+
+    private final ConcurrentMap<String, Job> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Run the job unless it is already running; returns whether it ran
+     */
+    public boolean runExclusive(String name, Runnable task) {
+        Job job = jobs.computeIfAbsent(name, key -> new Job());
+        if (!job.running.compareAndSet(false, true)) {
+            job.skipped.incrementAndGet();
+            return false;
+        }
+
+        long start = System.nanoTime();
+        job.lastStarted = LocalDateTime.now();
+        try {
+            task.run();
+            job.runs.incrementAndGet();
+            return true;
+        } catch (RuntimeException e) {
+            job.failures.incrementAndGet();
+            job.lastFailure = e.getClass().getSimpleName() + ": " + e.getMessage();
+            throw e;
+        } finally {
+            job.lastDurationMillis = (System.nanoTime() - start) / 1_000_000;
+            job.running.set(false);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        for (Map.Entry<String, Job> job : jobs.entrySet()) {
+            Map<String, Object> jobStats = new HashMap<>();
+            jobStats.put("running", job.getValue().running.get());
+            jobStats.put("runs", job.getValue().runs.get());
+            jobStats.put("skippedOverlaps", job.getValue().skipped.get());
+            jobStats.put("failures", job.getValue().failures.get());
+            jobStats.put("lastFailure", job.getValue().lastFailure);
+            jobStats.put("lastStarted", job.getValue().lastStarted);
+            jobStats.put("lastDurationMillis", job.getValue().lastDurationMillis);
+            stats.put(job.getKey(), jobStats);
+        }
+        return stats;
+    }
+
+    private static class Job {
+        final AtomicBoolean running = new AtomicBoolean();
+        final AtomicLong runs = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        volatile LocalDateTime lastStarted;
+        volatile long lastDurationMillis;
+        volatile String lastFailure;
+    }
+}
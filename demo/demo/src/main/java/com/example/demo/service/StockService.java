@@ -0,0 +1,278 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Medicine;
+import com.example.demo.repository.MedicineRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.util.*;
+
+/**
+ * The single way stock leaves the inventory.
+ *
+ * Every decrement is one conditional UPDATE (quantity = quantity - ? WHERE id = ? AND
+ * quantity - reserved_quantity >= ?), so concurrent dispensing can neither oversell nor lose
+ * a decrement, nor take stock promised to a reservation. Reserving, releasing and consuming
+ * reserved stock are conditional UPDATEs of the same row (see ReservationService for the ledger).
+ * A stock count overwrites the quantity under a row lock, so the change it records is measured
+ * against the quantity actually replaced.
+ * The updated row stays locked until the transaction ends, so the medicine reloaded
+ * right after the UPDATE shows exactly the post-update quantity. Each applied UPDATE is
+ * reported to MedicineCache and InventoryLedger, which take it over when the transaction commits.
+ */
+@Service
+public class StockService {
+
+    // Partial dispensing re-reads the stock when another dispense took it first
+    private static final int MAX_ATTEMPTS = 10;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private MedicineCache medicineCache;
+
+    @Autowired
+    private InventoryLedger inventoryLedger;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * One requested decrement and, once applied, its outcome
+     */
+    public static class StockChange {
+        private final Long medicineId;
+        private final int requested;
+        private final Long relatedId;
+        private int dispensed;
+        private Medicine medicine;
+        private String error;
+
+        public StockChange(Long medicineId, int requested) {
+            this(medicineId, requested, null);
+        }
+
+        // relatedId: the prescription the stock is dispensed for, recorded in the ledger
+        public StockChange(Long medicineId, int requested, Long relatedId) {
+            this.medicineId = medicineId;
+            this.requested = requested;
+            this.relatedId = relatedId;
+        }
+
+        public Long getMedicineId() {
+            return medicineId;
+        }
+
+        public int getRequested() {
+            return requested;
+        }
+
+        public int getDispensed() {
+            return dispensed;
+        }
+
+        // The medicine as it is after the decrement; null if it does not exist or nothing was applied
+        public Medicine getMedicine() {
+            return medicine;
+        }
+
+        public Integer getRemaining() {
+            return medicine != null ? medicine.getQuantity() : null;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isFullyDispensed() {
+            return error == null && dispensed >= requested;
+        }
+    }
+
+    /**
+     * Outcome of setQuantity: the quantity that was replaced and the medicine as it is now
+     */
+    public record QuantityChange(int previousQuantity, Medicine medicine) {
+    }
+
+    /**
+     * Set the stock of a medicine after a count or correction; reserved stock is left as it is.
+     * Returns null when the medicine does not exist.
+     */
+    @Transactional
+    public QuantityChange setQuantity(Long medicineId, int quantity) {
+        // Locking read: a dispense or reservation committing meanwhile waits rather than being overwritten
+        Integer previous = medicineRepository.lockQuantityById(medicineId);
+        if (previous == null) {
+            return null;
+        }
+        if (previous != quantity) {
+            medicineRepository.setQuantity(medicineId, quantity);
+            int change = quantity - previous;
+            stockChanged(medicineId, InventoryLedger.ADJUSTED, Math.abs(change), change, 0, null);
+        }
+        return new QuantityChange(previous, reload(medicineId));
+    }
+
+    /**
+     * Dispense one medicine. With allowPartial, whatever is left (possibly nothing) is taken
+     * when the full quantity is not available; otherwise nothing is taken.
+     */
+    @Transactional
+    public StockChange dispense(Long medicineId, int quantity, boolean allowPartial) {
+        return dispense(medicineId, quantity, allowPartial, null);
+    }
+
+    @Transactional
+    public StockChange dispense(Long medicineId, int quantity, boolean allowPartial, Long relatedId) {
+        StockChange change = new StockChange(medicineId, quantity, relatedId);
+        apply(change, allowPartial);
+        return change;
+    }
+
+    /**
+     * Dispense several medicines. With allOrNothing, every line must be fully available or
+     * the whole transaction rolls back and nothing is taken; call it outside another
+     * transaction in that mode. Otherwise each line is dispensed as far as stock allows.
+     */
+    @Transactional
+    public List<StockChange> dispenseAll(List<StockChange> changes, boolean allOrNothing) {
+        // Lock rows in id order so two multi-medicine prescriptions cannot deadlock each other
+        List<StockChange> ordered = new ArrayList<>(changes);
+        ordered.sort(Comparator.comparing(StockChange::getMedicineId, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        for (StockChange change : ordered) {
+            apply(change, !allOrNothing);
+            if (allOrNothing && !change.isFullyDispensed()) {
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                for (StockChange other : changes) {
+                    if (other != change) {
+                        other.dispensed = 0;
+                        other.medicine = null;
+                        other.error = "Not dispensed: another medicine in the request is not available";
+                    }
+                }
+                break;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Dispense a line that holds a reservation of reserved units. Up to reserved units come
+     * out of the reservation (any unused remainder is released in the same update); anything
+     * beyond it is taken from unreserved stock like dispense(). The caller closes the
+     * reservation in the same transaction.
+     */
+    @Transactional
+    public StockChange dispenseReserved(Long medicineId, int quantity, int reserved, boolean allowPartial, Long relatedId) {
+        StockChange change = new StockChange(medicineId, quantity, relatedId);
+        int taken = Math.min(quantity, reserved);
+        if (medicineRepository.consumeReserved(medicineId, taken, reserved) != 1) {
+            // Stock was corrected below the reservation: drop the hold and take what is there
+            releaseReserved(medicineId, reserved, relatedId);
+            apply(change, allowPartial);
+            return change;
+        }
+
+        stockChanged(medicineId, InventoryLedger.DISPENSED, taken, -taken, -reserved, relatedId);
+        change.dispensed = taken;
+        if (quantity > taken) {
+            StockChange rest = new StockChange(medicineId, quantity - taken, relatedId);
+            apply(rest, allowPartial);
+            change.dispensed += rest.dispensed;
+            change.error = rest.error;
+        }
+        change.medicine = reload(medicineId);
+        return change;
+    }
+
+    // Hold unreserved stock; false when less than quantity is available to promise
+    @Transactional
+    public boolean reserve(Long medicineId, int quantity) {
+        return reserve(medicineId, quantity, null);
+    }
+
+    @Transactional
+    public boolean reserve(Long medicineId, int quantity, Long relatedId) {
+        if (medicineRepository.reserveIfAvailable(medicineId, quantity) != 1) {
+            return false;
+        }
+        stockChanged(medicineId, InventoryLedger.RESERVED, quantity, 0, quantity, relatedId);
+        return true;
+    }
+
+    @Transactional
+    public void releaseReserved(Long medicineId, int quantity, Long relatedId) {
+        if (medicineRepository.releaseReserved(medicineId, quantity) != 1) {
+            System.err.println("Warning: reserved stock of medicine " + medicineId + " was already below " + quantity);
+            return;
+        }
+        stockChanged(medicineId, InventoryLedger.RELEASED, quantity, 0, -quantity, relatedId);
+    }
+
+    private void apply(StockChange change, boolean allowPartial) {
+        if (change.medicineId == null) {
+            change.error = "Medicine not linked to inventory";
+            return;
+        }
+        if (change.requested <= 0) {
+            change.error = "Quantity must be positive";
+            return;
+        }
+
+        if (!allowPartial) {
+            if (medicineRepository.decrementIfAvailable(change.medicineId, change.requested) == 1) {
+                stockChanged(change.medicineId, InventoryLedger.DISPENSED, change.requested, -change.requested, 0, change.relatedId);
+                change.dispensed = change.requested;
+                change.medicine = reload(change.medicineId);
+                return;
+            }
+            Integer available = medicineRepository.findAvailableToPromiseById(change.medicineId);
+            change.error = available == null
+                ? "Medicine not found in inventory"
+                : "Insufficient stock: " + available + " available, " + change.requested + " requested";
+            return;
+        }
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Integer available = medicineRepository.findAvailableToPromiseById(change.medicineId);
+            if (available == null) {
+                change.error = "Medicine not found in inventory";
+                return;
+            }
+            int take = Math.min(available, change.requested);
+            if (take <= 0) {
+                change.medicine = reload(change.medicineId);
+                return;
+            }
+            if (medicineRepository.decrementIfAvailable(change.medicineId, take) == 1) {
+                stockChanged(change.medicineId, InventoryLedger.DISPENSED, take, -take, 0, change.relatedId);
+                change.dispensed = take;
+                change.medicine = reload(change.medicineId);
+                return;
+            }
+        }
+        change.error = "Stock changed concurrently too often; please retry";
+    }
+
+    // An UPDATE changed the medicine's stock by these amounts
+    private void stockChanged(Long medicineId, String type, int quantity, int quantityChange, int reservedChange, Long relatedId) {
+        medicineCache.adjust(medicineId, quantityChange, reservedChange);
+        inventoryLedger.record(medicineId, type, quantity, quantityChange, reservedChange, relatedId);
+    }
+
+    // Refresh rather than find, so a stale copy already in the persistence context is not returned
+    private Medicine reload(Long medicineId) {
+        Medicine medicine = entityManager.find(Medicine.class, medicineId);
+        if (medicine != null) {
+            entityManager.refresh(medicine);
+        }
+        return medicine;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.demo.controller;
+
+import com.example.demo.repository.PrescriptionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Statements and time spent creating prescriptions with a growing number of medicine lines.
+ * Run with: mvn test -Dtest=PrescriptionCreationBenchmarkTest -Dbenchmarks=true
+ */
+@SpringBootTest(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "queue.index.reconcile-seconds=3600",
+    "queue.archive.enabled=false"
+})
+@AutoConfigureMockMvc
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class PrescriptionCreationBenchmarkTest {
+
+    private static final int[] LINE_COUNTS = {1, 5, 20, 50};
+    private static final int ROUNDS = 20;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<Long> createdIds = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() {
+        prescriptionRepository.deleteAllById(createdIds);
+    }
+
+    @Test
+    void statementsStayConstantAsLinesGrow() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        Map<Integer, Long> maxStatements = new LinkedHashMap<>();
+
+        for (int lines : LINE_COUNTS) {
+            long statements = 0;
+            long batches = 0;
+            long nanos = 0;
+            long worst = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                String body = objectMapper.writeValueAsString(prescription(lines));
+                statistics.clear();
+                long start = System.nanoTime();
+                MvcResult result = mockMvc.perform(post("/api/prescriptions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body)).andReturn();
+                nanos += System.nanoTime() - start;
+
+                assertThat(result.getResponse().getStatus()).isEqualTo(200);
+                createdIds.add(objectMapper.readTree(result.getResponse().getContentAsString()).get("prescriptionId").asLong());
+                statements += statistics.getPrepareStatementCount();
+                batches += statistics.getEntityInsertCount();
+                worst = Math.max(worst, statistics.getPrepareStatementCount());
+            }
+            maxStatements.put(lines, worst);
+            System.out.printf("lines=%2d  statements avg=%.1f max=%d  rows inserted avg=%.1f  avg=%.2f ms%n",
+                lines, (double) statements / ROUNDS, worst, (double) batches / ROUNDS, nanos / 1e6 / ROUNDS);
+        }
+
+        // The id generator may fetch a new block within a request, which costs two extra statements
+        long fewest = Collections.min(maxStatements.values());
+        assertThat(maxStatements.get(50)).isLessThanOrEqualTo(fewest + 2);
+    }
+
+    private Map<String, Object> prescription(int lines) {
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        List<Map<String, Object>> medicines = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            Map<String, Object> medicine = new HashMap<>();
+            medicine.put("medicineName", "Benchmark Medicine " + i);
+            medicine.put("dosage", "10mg");
+            medicine.put("frequency", "Twice daily");
+            medicine.put("duration", "5 days");
+            medicine.put("quantity", 10);
+            medicines.add(medicine);
+        }
+
+        Map<String, Object> prescription = new HashMap<>();
+        prescription.put("patientName", "Benchmark " + runId);
+        prescription.put("patientId", "PB-" + runId);
+        prescription.put("doctorName", "Dr. Benchmark");
+        prescription.put("medicines", medicines);
+        return prescription;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.demo.controller;
+
+import com.example.demo.entity.Prescription;
+import com.example.demo.repository.PrescriptionRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class PrescriptionPaginationTest {
+
+    private static final int PRESCRIPTIONS = 25;
+    private static final int PAGE_SIZE = 10;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<Long> createdIds = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() {
+        prescriptionRepository.deleteAllById(createdIds);
+    }
+
+    @Test
+    void searchPagesCoverEveryMatchOnceInOrder() throws Exception {
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        // Several rows share a creation time, so the id must break ties between pages
+        LocalDateTime base = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        for (int i = 0; i < PRESCRIPTIONS; i++) {
+            Prescription prescription = new Prescription("Paging " + runId + "-" + i, "PG-" + runId + "-" + i, "Dr. Test");
+            prescription.setCreatedDate(base.minusMinutes(i / 4));
+            prescription.setInstructions("Free text that list views leave out");
+            createdIds.add(prescriptionRepository.save(prescription).getId());
+        }
+
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            MockHttpServletRequestBuilder request = get("/api/prescriptions/search")
+                    .param("term", runId)
+                    .param("limit", String.valueOf(PAGE_SIZE));
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            MvcResult result = mockMvc.perform(request).andExpect(status().isOk()).andReturn();
+            cursor = result.getResponse().getHeader(PrescriptionController.NEXT_CURSOR_HEADER);
+
+            for (JsonNode row : objectMapper.readTree(result.getResponse().getContentAsString())) {
+                assertThat(row.has("instructions")).isFalse();
+                assertThat(row.has("signature")).isFalse();
+                seen.add(row.get("id").asLong());
+            }
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(seen).containsExactlyInAnyOrderElementsOf(createdIds);
+        assertThat(seen).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void pageSizeIsCapped() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/prescriptions").param("limit", "100000"))
+                .andExpect(status().isOk()).andReturn();
+        assertThat(objectMapper.readTree(result.getResponse().getContentAsString()).size()).isLessThanOrEqualTo(200);
+    }
+
+    @Test
+    void rejectsMalformedCursor() throws Exception {
+        mockMvc.perform(get("/api/prescriptions").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.demo.controller;
+
+import com.example.demo.entity.Prescription;
+import com.example.demo.entity.PrescriptionMedicine;
+import com.example.demo.repository.PrescriptionRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The prescription read endpoints must cost the same number of statements however many
+ * prescriptions they return. Background jobs are slowed down so they do not add statements.
+ */
+@SpringBootTest(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "queue.index.reconcile-seconds=3600",
+    "queue.archive.enabled=false",
+    "inventory.jobs.initial-delay-minutes=60"
+})
+@AutoConfigureMockMvc
+class PrescriptionQueryCountTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final List<Long> createdIds = new ArrayList<>();
+    private Statistics statistics;
+
+    @BeforeEach
+    void enableStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        prescriptionRepository.deleteAllById(createdIds);
+    }
+
+    @Test
+    void pendingFeedUsesAFixedNumberOfQueries() throws Exception {
+        createPendingPrescriptions(3);
+        long few = statementsFor("/api/prescriptions/pending");
+
+        createPendingPrescriptions(40);
+        long many = statementsFor("/api/prescriptions/pending");
+
+        assertThat(few).isEqualTo(2);
+        assertThat(many).isEqualTo(few);
+    }
+
+    @Test
+    void statusListUsesAFixedNumberOfQueries() throws Exception {
+        createPendingPrescriptions(3);
+        long few = statementsFor("/api/prescriptions/status/Pending");
+
+        createPendingPrescriptions(40);
+        long many = statementsFor("/api/prescriptions/status/Pending");
+
+        // Summary rows carry no medicines, so a page is a single query
+        assertThat(few).isEqualTo(1);
+        assertThat(many).isEqualTo(few);
+    }
+
+    @Test
+    void singlePrescriptionUsesTwoQueries() throws Exception {
+        createPendingPrescriptions(1);
+        assertThat(statementsFor("/api/prescriptions/" + createdIds.get(0))).isEqualTo(2);
+    }
+
+    private long statementsFor(String url) throws Exception {
+        statistics.clear();
+        mockMvc.perform(get(url)).andExpect(status().isOk());
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void createPendingPrescriptions(int count) {
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        for (int i = 0; i < count; i++) {
+            Prescription prescription = new Prescription("Query Count " + runId + "-" + i, "QC-" + runId + "-" + i, "Dr. Test");
+            List<PrescriptionMedicine> medicines = new ArrayList<>();
+            for (int m = 0; m < 3; m++) {
+                PrescriptionMedicine medicine = new PrescriptionMedicine(prescription, "Medicine " + m, 1 + m);
+                medicines.add(medicine);
+            }
+            prescription.setPrescriptionMedicines(medicines);
+            prescription.setTotalMedicines(medicines.size());
+            createdIds.add(prescriptionRepository.save(prescription).getId());
+        }
+    }
+}
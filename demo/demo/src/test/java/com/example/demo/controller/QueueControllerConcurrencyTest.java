@@ -0,0 +1,96 @@
+package com.example.demo.controller;
+
+import com.example.demo.repository.QueueEntryRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class QueueControllerConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int REQUESTS_PER_THREAD = 25;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<Long> createdIds = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void cleanUp() {
+        queueEntryRepository.deleteAllById(createdIds);
+    }
+
+    @Test
+    void concurrentCheckInsNeverShareAQueueNumber() throws Exception {
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<String>>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<String> numbers = new ArrayList<>();
+                for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                    numbers.add(addStudent(runId + "-" + thread + "-" + i));
+                }
+                return numbers;
+            }));
+        }
+
+        start.countDown();
+        List<String> allNumbers = new ArrayList<>();
+        for (Future<List<String>> future : futures) {
+            allNumbers.addAll(future.get(2, TimeUnit.MINUTES));
+        }
+        executor.shutdown();
+
+        assertThat(allNumbers).hasSize(THREADS * REQUESTS_PER_THREAD);
+        assertThat(new HashSet<>(allNumbers)).hasSameSizeAs(allNumbers);
+    }
+
+    private String addStudent(String suffix) throws Exception {
+        Map<String, Object> student = new HashMap<>();
+        student.put("fullName", "Load Test " + suffix);
+        student.put("studentRegistrationNumber", "LT-" + suffix);
+        student.put("email", "loadtest-" + suffix + "@example.com");
+        student.put("nic", "NIC-" + suffix);
+        student.put("telephoneNumber", "0770000000");
+
+        Map<String, Object> medicalData = new HashMap<>();
+        medicalData.put("id", "MR-" + suffix);
+        medicalData.put("student", student);
+
+        MvcResult result = mockMvc.perform(post("/api/queue/add-student")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("medicalData", medicalData))))
+                .andReturn();
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+        JsonNode entry = objectMapper.readTree(result.getResponse().getContentAsString()).get("queueEntry");
+        createdIds.add(entry.get("id").asLong());
+        return entry.get("queueNo").asText();
+    }
+}
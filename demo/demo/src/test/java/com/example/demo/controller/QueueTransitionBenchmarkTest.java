@@ -0,0 +1,97 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.QueueEntry;
+import com.example.demo.repository.QueueEntryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Compares 100 single move-to-doctor calls with one 100-operation transitions batch.
+ * Run with: mvn test -Dtest=QueueTransitionBenchmarkTest -Dbenchmarks=true
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class QueueTransitionBenchmarkTest {
+
+    private static final int TRANSITIONS = 100;
+    private static final int ROUNDS = 5;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM queue_entries WHERE queue_no LIKE 'TB-%'");
+    }
+
+    @Test
+    void compareBatchWithSingleMoves() throws Exception {
+        long singleNanos = 0;
+        long batchNanos = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            List<String> single = createReceptionEntries("S" + round);
+            long start = System.nanoTime();
+            for (String queueNo : single) {
+                int status = mockMvc.perform(post("/api/queue/move-to-doctor/" + queueNo))
+                        .andReturn().getResponse().getStatus();
+                assertThat(status).isEqualTo(200);
+            }
+            singleNanos += System.nanoTime() - start;
+
+            List<String> batch = createReceptionEntries("B" + round);
+            List<Map<String, Object>> operations = new ArrayList<>();
+            for (String queueNo : batch) {
+                operations.add(Map.of("queueNo", queueNo, "targetStage", "doctor"));
+            }
+            String body = objectMapper.writeValueAsString(Map.of("mode", "all-or-nothing", "operations", operations));
+            start = System.nanoTime();
+            int status = mockMvc.perform(post("/api/queue/transitions")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(body))
+                    .andReturn().getResponse().getStatus();
+            batchNanos += System.nanoTime() - start;
+            assertThat(status).isEqualTo(200);
+        }
+
+        System.out.printf("%d transitions  move-to-doctor calls avg=%.1f ms  transitions batch avg=%.1f ms%n",
+            TRANSITIONS, singleNanos / 1e6 / ROUNDS, batchNanos / 1e6 / ROUNDS);
+    }
+
+    private List<String> createReceptionEntries(String round) {
+        List<QueueEntry> entries = new ArrayList<>();
+        for (int i = 0; i < TRANSITIONS; i++) {
+            String suffix = round + "-" + i;
+            entries.add(new QueueEntry("TB-" + suffix, "Bench Student " + suffix, "TB/" + suffix,
+                "tb" + suffix + "@example.com", "TBNIC" + suffix, "0770000000", "TBREC" + suffix));
+        }
+        List<String> queueNos = new ArrayList<>();
+        for (QueueEntry entry : queueEntryRepository.saveAll(entries)) {
+            queueNos.add(entry.getQueueNo());
+        }
+        return queueNos;
+    }
+}
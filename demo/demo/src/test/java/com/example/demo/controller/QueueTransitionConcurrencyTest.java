@@ -0,0 +1,139 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.QueueEntry;
+import com.example.demo.repository.QueueEntryRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class QueueTransitionConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ENTRIES = 20;
+    private static final List<String> STAGES = List.of("reception", "doctor", "pharmacy", "completed");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<Long> createdIds = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() {
+        queueEntryRepository.deleteAllById(createdIds);
+    }
+
+    @Test
+    void contendedTransitionsAreAppliedExactlyOnceAndNeverBackwards() throws Exception {
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        List<String> queueNos = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            String suffix = runId + "-" + i;
+            QueueEntry entry = queueEntryRepository.save(new QueueEntry("OC-" + suffix, "Contention " + suffix,
+                "OC/" + suffix, "oc" + suffix + "@example.com", "OCNIC" + suffix, "0770000000", "OCREC" + suffix));
+            createdIds.add(entry.getId());
+            queueNos.add(entry.getQueueNo());
+        }
+
+        // successes[entry][stage]: how many requests managed to move the entry into that stage
+        Map<String, AtomicInteger[]> successes = new ConcurrentHashMap<>();
+        for (String queueNo : queueNos) {
+            successes.put(queueNo, new AtomicInteger[]{new AtomicInteger(), new AtomicInteger(), new AtomicInteger(), new AtomicInteger()});
+        }
+        AtomicInteger backwardsAccepted = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (String queueNo : queueNos) {
+                    for (int step = 1; step < STAGES.size(); step++) {
+                        advance(queueNo, step, successes.get(queueNo)[step]);
+                        // Every thread also tries to send the entry back to reception
+                        int status = perform(put("/api/queue/update-status/" + queueNo)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"stage\":\"reception\"}")).getResponse().getStatus();
+                        if (status == 200) {
+                            backwardsAccepted.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertThat(backwardsAccepted.get()).isZero();
+        for (String queueNo : queueNos) {
+            for (int step = 1; step < STAGES.size(); step++) {
+                assertThat(successes.get(queueNo)[step].get()).as(queueNo + " -> " + STAGES.get(step)).isEqualTo(1);
+            }
+            QueueEntry stored = queueEntryRepository.findByQueueNo(queueNo).orElseThrow();
+            assertThat(stored.getStage()).isEqualTo("completed");
+            assertThat(stored.getVersion()).isEqualTo(3);
+            assertThat(stored.getMovedToDoctorTime()).isNotNull();
+            assertThat(stored.getPrescriptionTime()).isNotNull();
+            assertThat(stored.getCompletedTime()).isNotNull();
+        }
+    }
+
+    // Retry until the entry has reached the step; a 409 carries the entry's current stage
+    private void advance(String queueNo, int step, AtomicInteger successCount) throws Exception {
+        String stage = STAGES.get(step);
+        while (true) {
+            MockHttpServletRequestBuilder request = switch (stage) {
+                case "doctor" -> post("/api/queue/move-to-doctor/" + queueNo);
+                case "pharmacy" -> post("/api/queue/move-to-pharmacy/" + queueNo)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"medicines\":[]}");
+                default -> post("/api/queue/complete/" + queueNo);
+            };
+            MvcResult result = perform(request);
+            int status = result.getResponse().getStatus();
+            if (status == 200) {
+                successCount.incrementAndGet();
+                return;
+            }
+            assertThat(status).isEqualTo(409);
+            JsonNode current = objectMapper.readTree(result.getResponse().getContentAsString()).get("queueEntry");
+            if (STAGES.indexOf(current.get("stage").asText()) >= step) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder request) throws Exception {
+        return mockMvc.perform(request).andReturn();
+    }
+}
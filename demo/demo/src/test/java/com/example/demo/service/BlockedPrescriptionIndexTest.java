@@ -0,0 +1,54 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlockedPrescriptionIndexTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 9, 0);
+
+    @Test
+    void waitingPrescriptionsComeBackInCreationOrder() {
+        BlockedPrescriptionIndex index = new BlockedPrescriptionIndex();
+        index.block(30L, T0.plusMinutes(2), List.of(1L));
+        index.block(10L, T0, List.of(1L, 2L));
+        index.block(20L, T0.plusMinutes(2), List.of(1L));
+
+        assertThat(index.waitingOn(1L)).containsExactly(10L, 20L, 30L);
+        assertThat(index.waitingOn(2L)).containsExactly(10L);
+        assertThat(index.waitingOn(3L)).isEmpty();
+    }
+
+    @Test
+    void reblockingReplacesTheMedicinesWaitedOn() {
+        BlockedPrescriptionIndex index = new BlockedPrescriptionIndex();
+        index.block(10L, T0, List.of(1L, 2L));
+        index.block(10L, T0, List.of(2L));
+
+        assertThat(index.waitingOn(1L)).isEmpty();
+        assertThat(index.waitingOn(2L)).containsExactly(10L);
+
+        index.unblock(10L);
+        assertThat(index.waitingOn(2L)).isEmpty();
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void reloadReplacesTheWholeIndex() {
+        BlockedPrescriptionIndex index = new BlockedPrescriptionIndex();
+        index.block(99L, T0, List.of(5L));
+
+        index.reload(List.of(
+            new Object[]{1L, 10L, T0},
+            new Object[]{2L, 10L, T0},
+            new Object[]{1L, 11L, T0.plusMinutes(1)}));
+
+        assertThat(index.isBlocked(99L)).isFalse();
+        assertThat(index.waitingOn(1L)).containsExactly(10L, 11L);
+        assertThat(index.waitingOn(2L)).containsExactly(10L);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Medicine;
+import com.example.demo.repository.MedicineRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(ChunkedScannerTest.ScanController.class)
+class ChunkedScannerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ChunkedScanner chunkedScanner;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private MedicineFixture medicines;
+
+    @BeforeEach
+    void setUp() {
+        medicines = new MedicineFixture(medicineRepository, "Scan");
+    }
+
+    @AfterEach
+    void cleanUp() {
+        medicines.deleteAll();
+    }
+
+    @Test
+    void visitsEveryRowOnceInBoundedChunksEachInItsOwnTransaction() {
+        for (int i = 0; i < 7; i++) {
+            createMedicine();
+        }
+        List<Long> seen = new ArrayList<>();
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<Medicine> firstChunk = new ArrayList<>();
+        List<Boolean> earlierChunkStillManaged = new ArrayList<>();
+
+        long scanned = chunkedScanner.scan(medicineRepository::findByIdGreaterThanOrderByIdAsc, Medicine::getId, 3, chunk -> {
+            assertThat(TransactionSynchronizationManager.isActualTransactionActive()).isTrue();
+            if (firstChunk.isEmpty()) {
+                firstChunk.addAll(chunk);
+            } else {
+                earlierChunkStillManaged.add(entityManager.contains(firstChunk.get(0)));
+            }
+            chunkSizes.add(chunk.size());
+            chunk.forEach(medicine -> seen.add(medicine.getId()));
+        });
+
+        assertThat(scanned).isEqualTo(seen.size());
+        assertThat(seen).containsAll(medicines.ids()).doesNotHaveDuplicates().isSorted();
+        assertThat(chunkSizes).allMatch(size -> size <= 3);
+        assertThat(chunkSizes.size()).isGreaterThanOrEqualTo(3);
+        // Every chunk has its own persistence context
+        assertThat(earlierChunkStillManaged).isNotEmpty().containsOnly(false);
+    }
+
+    @Test
+    void chunksScannedDuringAWebRequestStayOutOfItsPersistenceContext() throws Exception {
+        for (int i = 0; i < 7; i++) {
+            createMedicine();
+        }
+
+        // Open-in-view binds one EntityManager to the request; the scan sets it aside and leaves it as it was
+        mockMvc.perform(get("/test/chunked-scan").param("loadedBefore", String.valueOf(medicines.ids().get(0))))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.requestBoundEntityManager").value(true))
+            .andExpect(jsonPath("$.mostManagedFromEarlierChunks").value(0))
+            .andExpect(jsonPath("$.managedAfterScan").value(0))
+            .andExpect(jsonPath("$.loadedBeforeStillManaged").value(true));
+    }
+
+    @RestController
+    static class ScanController {
+
+        @Autowired
+        private ChunkedScanner chunkedScanner;
+
+        @Autowired
+        private MedicineRepository medicineRepository;
+
+        @Autowired
+        private EntityManagerFactory entityManagerFactory;
+
+        @PersistenceContext
+        private EntityManager entityManager;
+
+        @GetMapping("/test/chunked-scan")
+        Map<String, Object> scan(@RequestParam Long loadedBefore) {
+            Medicine loaded = medicineRepository.findById(loadedBefore).orElseThrow();
+            List<Medicine> scanned = new ArrayList<>();
+            List<Long> managedFromEarlierChunks = new ArrayList<>();
+            chunkedScanner.scan(medicineRepository::findByIdGreaterThanOrderByIdAsc, Medicine::getId, 3, chunk -> {
+                managedFromEarlierChunks.add(scanned.stream().filter(entityManager::contains).count());
+                scanned.addAll(chunk);
+            });
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("requestBoundEntityManager", TransactionSynchronizationManager.hasResource(entityManagerFactory));
+            result.put("mostManagedFromEarlierChunks", managedFromEarlierChunks.stream().max(Long::compare).orElse(0L));
+            result.put("managedAfterScan", scanned.stream().filter(entityManager::contains).count());
+            result.put("loadedBeforeStillManaged", entityManager.contains(loaded));
+            return result;
+        }
+    }
+
+    private void createMedicine() {
+        medicines.create(10);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.QueueEntryRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the OR-query duplicate checks with the in-memory detector as history grows.
+ * History is bulk-inserted past the QueueIndex, so the detector is reloaded after each insert;
+ * lookups of past students pick from the visits recent enough for the detector to keep.
+ * Run with: mvn test -Dtest=DuplicateCheckInBenchmarkTest -Dbenchmarks=true
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class DuplicateCheckInBenchmarkTest {
+
+    private static final String PREFIX = "BM-";
+    private static final int[] HISTORY_SIZES = {10_000, 100_000, 1_000_000};
+    private static final int LOOKUPS = 200;
+    private static final int BATCH = 5_000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @Autowired
+    private DuplicateCheckInDetector duplicateCheckInDetector;
+
+    @Value("${queue.duplicates.completed-capacity:10000}")
+    private int completedCapacity;
+
+    // Visits one second apart, ending a minute ago, so the highest-numbered students are the most recently completed
+    private final LocalDateTime historyStart = LocalDateTime.now().minusSeconds(HISTORY_SIZES[HISTORY_SIZES.length - 1] + 60);
+
+    @AfterAll
+    void removeHistory() {
+        jdbcTemplate.update("DELETE FROM queue_entries WHERE queue_no LIKE 'BM-%'");
+        duplicateCheckInDetector.reload();
+    }
+
+    @Test
+    void compareDuplicateChecksAsHistoryGrows() {
+        Random random = new Random(42);
+        int inserted = 0;
+
+        for (int size : HISTORY_SIZES) {
+            insertHistory(inserted, size);
+            inserted = size;
+            duplicateCheckInDetector.reload();
+            assertThat(duplicateCheckInDetector.isReady()).isTrue();
+
+            long databaseNanos = 0;
+            long memoryNanos = 0;
+            int found = 0;
+            for (int i = 0; i < LOOKUPS; i++) {
+                // Half the lookups hit a recent past student, half are new students
+                boolean past = i % 2 == 0;
+                int student = past ? size - 1 - random.nextInt(Math.min(size, completedCapacity)) : size + i;
+                String email = "bench" + student + "@example.com";
+                String nic = "BMNIC" + student;
+                String recordId = "BMREC" + student;
+
+                long start = System.nanoTime();
+                queueEntryRepository.findDuplicates(email, nic, recordId);
+                List<?> existing = queueEntryRepository.findAnyExistingEntry(email, nic, recordId);
+                databaseNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                duplicateCheckInDetector.findReceptionDuplicate(email, nic, recordId);
+                Optional<String> stage = duplicateCheckInDetector.findExistingStage(email, nic, recordId);
+                memoryNanos += System.nanoTime() - start;
+
+                // Both checks must agree on who has been here before
+                assertThat(existing.isEmpty()).isEqualTo(!past);
+                assertThat(stage).isEqualTo(past ? Optional.of("completed") : Optional.empty());
+                if (stage.isPresent()) {
+                    found++;
+                }
+            }
+            assertThat(found).isEqualTo(LOOKUPS / 2);
+
+            System.out.printf("history=%,d  OR-queries avg=%.3f ms  detector avg=%.4f ms  past students found=%d%n",
+                size, databaseNanos / 1e6 / LOOKUPS, memoryNanos / 1e6 / LOOKUPS, found);
+        }
+    }
+
+    private void insertHistory(int from, int to) {
+        String sql = "INSERT INTO queue_entries (queue_no, student_name, student_id, email, nic, medical_record_id, " +
+                     "status, priority, stage, added_time, completed_time) VALUES (?, ?, ?, ?, ?, ?, 'Completed', 'Normal', 'completed', ?, ?)";
+        for (int start = from; start < to; start += BATCH) {
+            List<Object[]> rows = new ArrayList<>(BATCH);
+            for (int n = start; n < Math.min(to, start + BATCH); n++) {
+                Timestamp time = Timestamp.valueOf(historyStart.plusSeconds(n));
+                rows.add(new Object[]{PREFIX + n, "Bench Student " + n, "BM/" + n, "bench" + n + "@example.com",
+                    "BMNIC" + n, "BMREC" + n, time, time});
+            }
+            jdbcTemplate.batchUpdate(sql, rows);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Medicine;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpirySchedulerStageTest {
+
+    private static final LocalDate EXPIRY = LocalDate.of(2025, 6, 30);
+
+    @Test
+    void stagesChangeOnTheThresholdDays() {
+        assertThat(ExpiryScheduler.Stage.on(EXPIRY, EXPIRY.minusDays(30))).isEqualTo(ExpiryScheduler.Stage.VALID);
+        assertThat(ExpiryScheduler.Stage.on(EXPIRY, EXPIRY.minusDays(29))).isEqualTo(ExpiryScheduler.Stage.NEAR_EXPIRY);
+        assertThat(ExpiryScheduler.Stage.on(EXPIRY, EXPIRY.minusDays(16))).isEqualTo(ExpiryScheduler.Stage.NEAR_EXPIRY);
+        assertThat(ExpiryScheduler.Stage.on(EXPIRY, EXPIRY.minusDays(15))).isEqualTo(ExpiryScheduler.Stage.NEAR_EXPIRY_15);
+        assertThat(ExpiryScheduler.Stage.on(EXPIRY, EXPIRY.minusDays(7))).isEqualTo(ExpiryScheduler.Stage.NEAR_EXPIRY_7);
+        assertThat(ExpiryScheduler.Stage.on(EXPIRY, EXPIRY)).isEqualTo(ExpiryScheduler.Stage.NEAR_EXPIRY_7);
+        assertThat(ExpiryScheduler.Stage.on(EXPIRY, EXPIRY.plusDays(1))).isEqualTo(ExpiryScheduler.Stage.EXPIRED);
+    }
+
+    @Test
+    void nextTransitionWalksTheThresholdsInOrder() {
+        assertThat(ExpiryScheduler.Stage.nextTransition(EXPIRY, EXPIRY.minusYears(1))).isEqualTo(EXPIRY.minusDays(29));
+        assertThat(ExpiryScheduler.Stage.nextTransition(EXPIRY, EXPIRY.minusDays(29))).isEqualTo(EXPIRY.minusDays(15));
+        assertThat(ExpiryScheduler.Stage.nextTransition(EXPIRY, EXPIRY.minusDays(15))).isEqualTo(EXPIRY.minusDays(7));
+        assertThat(ExpiryScheduler.Stage.nextTransition(EXPIRY, EXPIRY.minusDays(7))).isEqualTo(EXPIRY.plusDays(1));
+        assertThat(ExpiryScheduler.Stage.nextTransition(EXPIRY, EXPIRY.plusDays(1))).isNull();
+    }
+
+    @Test
+    void stagesAgreeWithTheMedicineChecks() {
+        LocalDate today = LocalDate.now();
+        for (int offset = -3; offset <= 35; offset++) {
+            Medicine medicine = new Medicine("Stage", 10, today.plusDays(offset), "Test", 1, "10mg", null, "test");
+            ExpiryScheduler.Stage stage = ExpiryScheduler.Stage.on(medicine.getExpiry(), today);
+
+            assertThat(stage == ExpiryScheduler.Stage.EXPIRED).isEqualTo(medicine.isExpired());
+            assertThat(stage != ExpiryScheduler.Stage.VALID && stage != ExpiryScheduler.Stage.EXPIRED)
+                .isEqualTo(medicine.isNearExpiry());
+        }
+    }
+
+    @Test
+    void stagesExpectTheAlertsTheReconcilerCreates() {
+        LocalDate today = LocalDate.now();
+        for (int offset = 0; offset <= 29; offset++) {
+            ExpiryScheduler.Stage stage = ExpiryScheduler.Stage.on(today.plusDays(offset), today);
+
+            assertThat(stage.getAlertType()).isEqualTo(InventoryAlertReconciler.NEAR_EXPIRY);
+            assertThat(stage.getAlertSeverity()).isEqualTo(InventoryAlertReconciler.expirySeverity(today.plusDays(offset)));
+        }
+        assertThat(ExpiryScheduler.Stage.on(today.minusDays(1), today).getAlertType()).isEqualTo(InventoryAlertReconciler.EXPIRED);
+        assertThat(ExpiryScheduler.Stage.VALID.getAlertType()).isNull();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.InventoryAlert;
+import com.example.demo.entity.Medicine;
+import com.example.demo.repository.InventoryAlertRepository;
+import com.example.demo.repository.MedicineRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class InventoryAlertReconcilerTest {
+
+    @Autowired
+    private InventoryAlertReconciler reconciler;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private InventoryAlertRepository alertRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MedicineFixture medicines;
+
+    @BeforeEach
+    void setUp() {
+        medicines = new MedicineFixture(medicineRepository, "Alerts");
+    }
+
+    @AfterEach
+    void cleanUp() {
+        for (Long id : medicines.ids()) {
+            jdbcTemplate.update("DELETE FROM inventory_alerts WHERE medicine_id = ?", id);
+        }
+        medicines.deleteAll();
+    }
+
+    @Test
+    void createsOnlyTheMissingAlertsAndLeavesCurrentOnesAlone() {
+        Medicine medicine = createMedicine(0, LocalDate.now().plusDays(10));
+
+        InventoryAlertReconciler.Result first = reconciler.reconcile(medicine);
+        InventoryAlertReconciler.Result second = reconciler.reconcile(medicine);
+
+        assertThat(first.created()).isEqualTo(3);
+        assertThat(activeTypes(medicine)).containsExactlyInAnyOrder("LOW_STOCK", "OUT_OF_STOCK", "NEAR_EXPIRY");
+        assertThat(second).isEqualTo(new InventoryAlertReconciler.Result(0, 0, 0, 3));
+    }
+
+    @Test
+    void restockUpdatesAndResolvesAlerts() {
+        Medicine medicine = createMedicine(0, LocalDate.now().plusYears(1));
+        reconciler.reconcile(medicine);
+
+        medicine = stockService.setQuantity(medicine.getId(), 4).medicine();
+        InventoryAlertReconciler.Result lowStock = reconciler.reconcile(medicine);
+
+        assertThat(lowStock).isEqualTo(new InventoryAlertReconciler.Result(0, 1, 1, 0));
+        assertThat(activeTypes(medicine)).containsExactly("LOW_STOCK");
+
+        medicine = stockService.setQuantity(medicine.getId(), 100).medicine();
+        assertThat(reconciler.reconcile(medicine).resolved()).isEqualTo(1);
+        assertThat(activeTypes(medicine)).isEmpty();
+    }
+
+    @Test
+    void fullCheckResolvesAlertsOfDeletedMedicinesAndDuplicates() {
+        Medicine kept = createMedicine(0, LocalDate.now().plusYears(1));
+        Medicine deleted = createMedicine(0, LocalDate.now().plusYears(1));
+        reconciler.reconcile(kept);
+        reconciler.reconcile(deleted);
+        jdbcTemplate.update("INSERT INTO inventory_alerts (alert_type, medicine_id, medicine_name, alert_message, severity, status, created_date) " +
+            "VALUES ('OUT_OF_STOCK', ?, 'duplicate', 'duplicate', 'CRITICAL', 'ACTIVE', NOW())", kept.getId());
+        medicineRepository.deleteById(deleted.getId());
+
+        reconciler.reconcileAll();
+
+        assertThat(activeTypes(kept)).containsExactlyInAnyOrder("LOW_STOCK", "OUT_OF_STOCK");
+        assertThat(activeTypes(deleted)).isEmpty();
+    }
+
+    private List<String> activeTypes(Medicine medicine) {
+        return alertRepository.findByMedicineIdAndStatusOrderByCreatedDateDesc(medicine.getId(), "ACTIVE").stream()
+            .map(InventoryAlert::getAlertType)
+            .toList();
+    }
+
+    private Medicine createMedicine(int quantity, LocalDate expiry) {
+        return medicines.create(quantity, expiry);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.InventoryTransaction;
+import com.example.demo.repository.MedicineRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class InventoryLedgerTest {
+
+    @Autowired
+    private InventoryLedger inventoryLedger;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MedicineFixture medicines;
+
+    @BeforeEach
+    void setUp() {
+        medicines = new MedicineFixture(medicineRepository, "Ledger");
+    }
+
+    @AfterEach
+    void cleanUp() {
+        medicines.ids().forEach(id -> jdbcTemplate.update("DELETE FROM inventory_transactions WHERE medicine_id = ?", id));
+        medicines.deleteAll();
+    }
+
+    @Test
+    void committedStockChangesAreRecordedNewestFirst() {
+        Long id = createMedicine(50);
+
+        stockService.dispense(id, 7, false, 99L);
+        stockService.reserve(id, 5, 99L);
+
+        List<InventoryTransaction> history = inventoryLedger.history(id, LocalDateTime.now().minusHours(1),
+            LocalDateTime.now().plusHours(1), 10);
+
+        assertThat(history).extracting(InventoryTransaction::getTransactionType)
+            .containsExactly(InventoryLedger.RESERVED, InventoryLedger.DISPENSED);
+        assertThat(history.get(1).getQuantityChange()).isEqualTo(-7);
+        assertThat(history.get(0).getReservedChange()).isEqualTo(5);
+        assertThat(history).extracting(InventoryTransaction::getRelatedId).containsOnly(99L);
+    }
+
+    @Test
+    void rolledBackStockChangesAreNotRecorded() {
+        Long first = createMedicine(50);
+        Long second = createMedicine(1);
+
+        stockService.dispenseAll(List.of(new StockService.StockChange(first, 10), new StockService.StockChange(second, 5)), true);
+
+        assertThat(inventoryLedger.history(first, LocalDateTime.now().minusHours(1), LocalDateTime.now().plusHours(1), 10))
+            .isEmpty();
+    }
+
+    @Test
+    void stockCountRecordsTheQuantityItReplaced() {
+        Long id = createMedicine(50);
+        stockService.reserve(id, 5, null);
+        // Dispensed after the counting client read 50
+        stockService.dispense(id, 7, false, null);
+
+        StockService.QuantityChange change = stockService.setQuantity(id, 60);
+
+        assertThat(change.previousQuantity()).isEqualTo(43);
+        assertThat(change.medicine().getQuantity()).isEqualTo(60);
+        assertThat(change.medicine().getReservedQuantity()).isEqualTo(5);
+        InventoryTransaction adjusted = inventoryLedger.history(id, LocalDateTime.now().minusHours(1),
+            LocalDateTime.now().plusHours(1), 10).get(0);
+        assertThat(adjusted.getTransactionType()).isEqualTo(InventoryLedger.ADJUSTED);
+        assertThat(adjusted.getQuantityChange()).isEqualTo(17);
+    }
+
+    @Test
+    void balanceIsWorkedBackFromCurrentStock() {
+        Long id = createMedicine(50);
+        LocalDateTime beforeChanges = LocalDateTime.now();
+
+        stockService.dispense(id, 7, false, null);
+        stockService.reserve(id, 5, null);
+        LocalDateTime afterDispense = inventoryLedger.history(id, beforeChanges, LocalDateTime.now().plusHours(1), 10)
+            .get(1).getRecordedAt();
+
+        Map<String, Object> before = inventoryLedger.balanceAt(id, beforeChanges);
+        assertThat(before.get("quantity")).isEqualTo(50);
+        assertThat(before.get("reservedQuantity")).isEqualTo(0);
+
+        Map<String, Object> between = inventoryLedger.balanceAt(id, afterDispense);
+        assertThat(between.get("quantity")).isEqualTo(43);
+        assertThat(between.get("reservedQuantity")).isEqualTo(0);
+
+        Map<String, Object> now = inventoryLedger.balanceAt(id, LocalDateTime.now().plusMinutes(1));
+        assertThat(now.get("quantity")).isEqualTo(43);
+        assertThat(now.get("reservedQuantity")).isEqualTo(5);
+        assertThat(now.get("exact")).isEqualTo(true);
+        assertThat(now.get("lostEvents")).isEqualTo(0L);
+    }
+
+    private Long createMedicine(int quantity) {
+        return medicines.create(quantity).getId();
+    }
+}
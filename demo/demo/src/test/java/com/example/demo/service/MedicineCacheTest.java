@@ -0,0 +1,117 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.MedicineRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class MedicineCacheTest {
+
+    @Autowired
+    private MedicineCache medicineCache;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private MedicineFixture medicines;
+
+    @BeforeEach
+    void setUp() {
+        medicines = new MedicineFixture(medicineRepository, "Cache");
+    }
+
+    @AfterEach
+    void cleanUp() {
+        medicines.ids().forEach(medicineCache::evict);
+        medicines.deleteAll();
+    }
+
+    @Test
+    void secondLookupIsAHit() {
+        Long id = createMedicine(50);
+        long hitsBefore = (Long) medicineCache.getStats().get("hits");
+
+        assertThat(medicineCache.get(id)).map(MedicineCache.Stock::quantity).contains(50);
+        assertThat(medicineCache.get(id)).map(MedicineCache.Stock::quantity).contains(50);
+
+        assertThat((Long) medicineCache.getStats().get("hits")).isEqualTo(hitsBefore + 1);
+    }
+
+    @Test
+    void committedStockChangesAreWrittenThrough() {
+        Long id = createMedicine(50);
+        medicineCache.get(id);
+
+        stockService.dispense(id, 7, false);
+        stockService.reserve(id, 5);
+
+        MedicineCache.Stock stock = medicineCache.get(id).orElseThrow();
+        assertThat(stock.quantity()).isEqualTo(43);
+        assertThat(stock.reservedQuantity()).isEqualTo(5);
+        assertThat(stock.getAvailableToPromise()).isEqualTo(38);
+        assertThat(medicineCache.verify().get("mismatched")).asList().isEmpty();
+    }
+
+    @Test
+    void rolledBackStockChangesAreNotApplied() {
+        Long first = createMedicine(50);
+        Long second = createMedicine(1);
+        medicineCache.getAll(List.of(first, second));
+
+        List<StockService.StockChange> changes = List.of(
+            new StockService.StockChange(first, 10), new StockService.StockChange(second, 5));
+        stockService.dispenseAll(changes, true);
+
+        assertThat(medicineCache.get(first)).map(MedicineCache.Stock::quantity).contains(50);
+        assertThat(medicineRepository.findQuantityById(first)).isEqualTo(50);
+    }
+
+    @Test
+    void verifyDropsEntriesChangedBehindTheCache() {
+        Long id = createMedicine(50);
+        medicineCache.get(id);
+        jdbcTemplate.update("UPDATE medicines SET quantity = 20 WHERE id = ?", id);
+
+        Map<String, Object> result = medicineCache.verify();
+
+        assertThat(result.get("mismatched")).asList().containsExactly(id);
+        assertThat(medicineCache.get(id)).map(MedicineCache.Stock::quantity).contains(20);
+    }
+
+    @Test
+    void missInsideATransactionIsReadThereButNotKept() {
+        Long id = createMedicine(50);
+        long missesBefore = (Long) medicineCache.getStats().get("misses");
+
+        // The transaction's snapshot may be older than a completed write, so its read is not cached
+        Optional<MedicineCache.Stock> inTransaction = new TransactionTemplate(transactionManager)
+            .execute(status -> medicineCache.get(id));
+
+        assertThat(inTransaction).map(MedicineCache.Stock::quantity).contains(50);
+        assertThat(medicineCache.get(id)).map(MedicineCache.Stock::quantity).contains(50);
+        assertThat((Long) medicineCache.getStats().get("misses")).isEqualTo(missesBefore + 2);
+    }
+
+    private Long createMedicine(int quantity) {
+        return medicines.create(quantity).getId();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Medicine;
+import com.example.demo.repository.MedicineRepository;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Medicines created by one test, uniquely named after the test's tag; deleteAll() removes them again
+ */
+class MedicineFixture {
+
+    private final MedicineRepository medicineRepository;
+    private final String tag;
+    private final List<Long> ids = new ArrayList<>();
+
+    MedicineFixture(MedicineRepository medicineRepository, String tag) {
+        this.medicineRepository = medicineRepository;
+        this.tag = tag;
+    }
+
+    Medicine create(int quantity) {
+        return create(quantity, LocalDate.now().plusYears(1));
+    }
+
+    Medicine create(int quantity, LocalDate expiry) {
+        Medicine medicine = medicineRepository.save(new Medicine(tag + " " + UUID.randomUUID().toString().substring(0, 8),
+            quantity, expiry, "Test", 10, "10mg", null, tag.toLowerCase() + "-test"));
+        ids.add(medicine.getId());
+        return medicine;
+    }
+
+    // Ids of the medicines created so far, in creation order
+    List<Long> ids() {
+        return Collections.unmodifiableList(ids);
+    }
+
+    void deleteAll() {
+        medicineRepository.deleteAllById(ids);
+        ids.clear();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Prescription;
+import com.example.demo.repository.PrescriptionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class PrescriptionClaimConcurrencyTest {
+
+    private static final int PRESCRIPTIONS = 20;
+    private static final int PHARMACISTS = 8;
+    private static final int CLAIMS_EACH = 2;
+
+    @Autowired
+    private PrescriptionClaimService prescriptionClaimService;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    private final List<Long> createdIds = new ArrayList<>();
+
+    @BeforeEach
+    void createBacklog() {
+        // Older than anything else pending, so these are claimed first
+        LocalDateTime created = LocalDateTime.of(2000, 1, 1, 8, 0);
+        for (int i = 0; i < PRESCRIPTIONS; i++) {
+            Prescription prescription = new Prescription("Claim Test " + i, "CT-" + i, "Dr. Test");
+            prescription.setCreatedDate(created.plusMinutes(i));
+            createdIds.add(prescriptionRepository.save(prescription).getId());
+        }
+    }
+
+    @AfterEach
+    void cleanUp() {
+        prescriptionRepository.deleteAllById(createdIds);
+    }
+
+    @Test
+    void concurrentPharmacistsNeverClaimTheSamePrescription() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(PHARMACISTS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+
+        for (int p = 0; p < PHARMACISTS; p++) {
+            String pharmacist = "pharmacist-" + p;
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<Long> claimed = new ArrayList<>();
+                for (int i = 0; i < CLAIMS_EACH; i++) {
+                    prescriptionClaimService.claimNext(pharmacist)
+                        .ifPresent(claim -> claimed.add(claim.prescription().id()));
+                }
+                return claimed;
+            }));
+        }
+
+        start.countDown();
+        List<Long> allClaimed = new ArrayList<>();
+        for (Future<List<Long>> future : futures) {
+            allClaimed.addAll(future.get(1, TimeUnit.MINUTES));
+        }
+        executor.shutdown();
+
+        assertThat(allClaimed).hasSize(PHARMACISTS * CLAIMS_EACH);
+        assertThat(allClaimed).doesNotHaveDuplicates();
+        assertThat(createdIds).containsAll(allClaimed);
+    }
+
+    @Test
+    void expiredLeaseReturnsPrescriptionToTheQueue() {
+        Long first = prescriptionClaimService.claimNext("pharmacist-a").orElseThrow().prescription().id();
+        assertThat(first).isEqualTo(createdIds.get(0));
+
+        // A live lease is skipped
+        assertThat(prescriptionClaimService.claimNext("pharmacist-b").orElseThrow().prescription().id())
+            .isEqualTo(createdIds.get(1));
+
+        Prescription abandoned = prescriptionRepository.findById(first).orElseThrow();
+        abandoned.setLeaseExpiresAt(LocalDateTime.now().minusSeconds(1));
+        prescriptionRepository.save(abandoned);
+
+        assertThat(prescriptionClaimService.renew(first, "pharmacist-a")).isEmpty();
+        assertThat(prescriptionClaimService.claimNext("pharmacist-c").orElseThrow().prescription().id())
+            .isEqualTo(first);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrescriptionStatisticsTest {
+
+    @Test
+    void createsAndStatusChangesMoveTheCounters() {
+        PrescriptionStatistics statistics = new PrescriptionStatistics();
+        LocalDateTime now = LocalDateTime.now();
+        statistics.recordCreated("Pending", "Dr. A", now);
+        statistics.recordCreated("Pending", "Dr. A", now.minusHours(2));
+        statistics.recordCreated("Pending", "Dr. B", now.minusMinutes(5));
+
+        statistics.recordStatusChange("Pending", "Completed");
+        statistics.recordStatusChange("Completed", "Completed");
+
+        Map<String, Object> stats = statistics.getStats();
+        assertThat(stats.get("byStatus")).isEqualTo(Map.of("Pending", 2L, "Completed", 1L));
+        assertThat(stats.get("byDoctor")).isEqualTo(Map.of("Dr. A", 2L, "Dr. B", 1L));
+        assertThat(stats.get("totalCount")).isEqualTo(3L);
+        assertThat(stats.get("recentCount")).isEqualTo(3L);
+    }
+
+    @Test
+    void recentCountOnlyCoversTheLastDay() {
+        PrescriptionStatistics statistics = new PrescriptionStatistics();
+        LocalDateTime now = LocalDateTime.now();
+        statistics.recordCreated("Pending", "Dr. A", now.minusMinutes(1));
+        statistics.recordCreated("Pending", "Dr. A", now.minusHours(23));
+        statistics.recordCreated("Pending", "Dr. A", now.minusDays(2));
+
+        Map<String, Object> stats = statistics.getStats();
+        assertThat(stats.get("recentCount")).isEqualTo(2L);
+        assertThat(stats.get("totalCount")).isEqualTo(3L);
+    }
+
+    @Test
+    void removalsUndoCreates() {
+        PrescriptionStatistics statistics = new PrescriptionStatistics();
+        LocalDateTime created = LocalDateTime.now().minusMinutes(10);
+        statistics.recordCreated("Pending", "Dr. A", created);
+        statistics.recordCreated("Cancelled", "Dr. B", created);
+
+        statistics.recordRemoved("Cancelled", "Dr. B", created);
+
+        Map<String, Object> stats = statistics.getStats();
+        assertThat(stats.get("byStatus")).isEqualTo(Map.of("Pending", 1L));
+        assertThat(stats.get("byDoctor")).isEqualTo(Map.of("Dr. A", 1L));
+        assertThat(stats.get("recentCount")).isEqualTo(1L);
+        assertThat(stats.get("totalCount")).isEqualTo(1L);
+    }
+}
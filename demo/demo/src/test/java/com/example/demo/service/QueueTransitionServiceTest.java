@@ -0,0 +1,67 @@
+package com.example.demo.service;
+
+import com.example.demo.model.QueueEntry;
+import com.example.demo.repository.QueueEntryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class QueueTransitionServiceTest {
+
+    @Autowired
+    private QueueTransitionService queueTransitionService;
+
+    @Autowired
+    private QueueEntryRepository queueEntryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<Long> createdIds = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() {
+        queueEntryRepository.deleteAllById(createdIds);
+    }
+
+    @Test
+    void conflictReportsTheStageThatWonNotTheTransactionSnapshot() throws Exception {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        QueueEntry entry = queueEntryRepository.save(new QueueEntry("TS-" + suffix, "Snapshot " + suffix,
+            "TS/" + suffix, "ts" + suffix + "@example.com", "TSNIC" + suffix, "0770000000", "TSREC" + suffix));
+        createdIds.add(entry.getId());
+
+        ExecutorService otherUser = Executors.newSingleThreadExecutor();
+        QueueTransitionService.Transition transition = new TransactionTemplate(transactionManager).execute(status -> {
+            // Fixes this transaction's snapshot while the entry is still in reception
+            queueEntryRepository.findByQueueNo(entry.getQueueNo());
+            try {
+                // Another user moves it on and commits on their own connection
+                otherUser.submit(() -> jdbcTemplate.update(
+                    "UPDATE queue_entries SET stage = 'doctor', status = 'Waiting for Doctor', version = version + 1 WHERE id = ?",
+                    entry.getId())).get(1, TimeUnit.MINUTES);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return queueTransitionService.transition(entry.getQueueNo(), Map.of("targetStage", "doctor"), true);
+        });
+        otherUser.shutdown();
+
+        assertThat(transition.isConflict()).isTrue();
+        assertThat(transition.getCurrent().getStage()).isEqualTo("doctor");
+        assertThat(transition.getError()).endsWith("it is now in doctor");
+    }
+}
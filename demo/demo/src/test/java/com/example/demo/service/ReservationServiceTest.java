@@ -0,0 +1,143 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Medicine;
+import com.example.demo.entity.Prescription;
+import com.example.demo.entity.PrescriptionMedicine;
+import com.example.demo.repository.MedicineRepository;
+import com.example.demo.repository.PrescriptionRepository;
+import com.example.demo.repository.StockReservationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class ReservationServiceTest {
+
+    private static final int STOCK = 10;
+    private static final int PER_PRESCRIPTION = 6;
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private StockReservationRepository reservationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Long> prescriptionIds = new ArrayList<>();
+    private MedicineFixture medicines;
+    private Long medicineId;
+
+    @BeforeEach
+    void setUp() {
+        medicines = new MedicineFixture(medicineRepository, "Reserve");
+    }
+
+    @AfterEach
+    void cleanUp() {
+        // Only this test's reservations, through the prescription index
+        prescriptionIds.forEach(id -> jdbcTemplate.update("DELETE FROM stock_reservations WHERE prescription_id = ?", id));
+        prescriptionRepository.deleteAllById(prescriptionIds);
+        medicines.deleteAll();
+    }
+
+    @Test
+    void concurrentPrescriptionsCannotBothBePromisedTheLastUnits() throws Exception {
+        medicineId = createMedicine();
+        List<PrescriptionMedicine> first = createPrescription();
+        List<PrescriptionMedicine> second = createPrescription();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<List<Long>> a = executor.submit(() -> { start.await(); return reservationService.reserve(prescriptionIds.get(0), first); });
+        Future<List<Long>> b = executor.submit(() -> { start.await(); return reservationService.reserve(prescriptionIds.get(1), second); });
+        start.countDown();
+        List<Long> shortA = a.get(1, TimeUnit.MINUTES);
+        List<Long> shortB = b.get(1, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        // Exactly one of them holds the stock
+        assertThat(shortA.isEmpty() ^ shortB.isEmpty()).isTrue();
+        Medicine medicine = medicineRepository.findById(medicineId).orElseThrow();
+        assertThat(medicine.getReservedQuantity()).isEqualTo(PER_PRESCRIPTION);
+        assertThat(medicine.getAvailableToPromise()).isEqualTo(STOCK - PER_PRESCRIPTION);
+
+        // Unreserved dispensing cannot take the held units
+        assertThat(stockService.dispense(medicineId, STOCK - PER_PRESCRIPTION + 1, false).getDispensed()).isZero();
+
+        // The holder dispenses out of its reservation
+        PrescriptionMedicine holderLine = shortA.isEmpty() ? first.get(0) : second.get(0);
+        StockService.StockChange change = reservationService.dispenseLine(holderLine, PER_PRESCRIPTION, false);
+        assertThat(change.isFullyDispensed()).isTrue();
+        medicine = medicineRepository.findById(medicineId).orElseThrow();
+        assertThat(medicine.getQuantity()).isEqualTo(STOCK - PER_PRESCRIPTION);
+        assertThat(medicine.getReservedQuantity()).isZero();
+    }
+
+    @Test
+    void concurrentEvaluationsOfOnePrescriptionReserveItOnce() throws Exception {
+        medicineId = createMedicine();
+        List<PrescriptionMedicine> lines = createPrescription();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<List<Long>> a = executor.submit(() -> { start.await(); return reservationService.reserve(prescriptionIds.get(0), lines); });
+        Future<List<Long>> b = executor.submit(() -> { start.await(); return reservationService.reserve(prescriptionIds.get(0), lines); });
+        start.countDown();
+        assertThat(a.get(1, TimeUnit.MINUTES)).isEmpty();
+        assertThat(b.get(1, TimeUnit.MINUTES)).isEmpty();
+        executor.shutdown();
+
+        assertThat(reservationRepository.findActiveByPrescriptionId(prescriptionIds.get(0))).hasSize(1);
+        assertThat(medicineRepository.findById(medicineId).orElseThrow().getReservedQuantity()).isEqualTo(PER_PRESCRIPTION);
+    }
+
+    @Test
+    void releaseReturnsStockToAvailableToPromise() {
+        medicineId = createMedicine();
+        List<PrescriptionMedicine> lines = createPrescription();
+
+        assertThat(reservationService.reserve(prescriptionIds.get(0), lines)).isEmpty();
+        // Reserving again is a no-op
+        assertThat(reservationService.reserve(prescriptionIds.get(0), lines)).isEmpty();
+        assertThat(medicineRepository.findById(medicineId).orElseThrow().getReservedQuantity()).isEqualTo(PER_PRESCRIPTION);
+
+        assertThat(reservationService.release(prescriptionIds.get(0))).containsExactly(medicineId);
+        assertThat(reservationService.release(prescriptionIds.get(0))).isEmpty();
+        Medicine medicine = medicineRepository.findById(medicineId).orElseThrow();
+        assertThat(medicine.getReservedQuantity()).isZero();
+        assertThat(medicine.getAvailableToPromise()).isEqualTo(STOCK);
+    }
+
+    private Long createMedicine() {
+        return medicines.create(STOCK).getId();
+    }
+
+    private List<PrescriptionMedicine> createPrescription() {
+        Prescription prescription = new Prescription("Reservation Test", "RT-" + prescriptionIds.size(), "Dr. Test");
+        PrescriptionMedicine line = new PrescriptionMedicine(prescription, "Reserve", PER_PRESCRIPTION);
+        line.setMedicineId(medicineId);
+        prescription.setPrescriptionMedicines(new ArrayList<>(List.of(line)));
+        Prescription saved = prescriptionRepository.save(prescription);
+        prescriptionIds.add(saved.getId());
+        return saved.getPrescriptionMedicines();
+    }
+}
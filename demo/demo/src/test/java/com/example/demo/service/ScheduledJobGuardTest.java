@@ -0,0 +1,59 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ScheduledJobGuardTest {
+
+    @Test
+    void overlappingRunIsSkippedAndCounted() throws Exception {
+        ScheduledJobGuard guard = new ScheduledJobGuard();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Boolean> first = executor.submit(() -> guard.runExclusive("job", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        started.await(5, TimeUnit.SECONDS);
+        assertThat(guard.runExclusive("job", () -> {})).isFalse();
+        assertThat(guard.runExclusive("other-job", () -> {})).isTrue();
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(guard.runExclusive("job", () -> {})).isTrue();
+        executor.shutdown();
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> job = (Map<String, Object>) guard.getStats().get("job");
+        assertThat(job.get("runs")).isEqualTo(2L);
+        assertThat(job.get("skippedOverlaps")).isEqualTo(1L);
+    }
+
+    @Test
+    void failedRunIsCountedAndReleasesTheJob() {
+        ScheduledJobGuard guard = new ScheduledJobGuard();
+
+        assertThatThrownBy(() -> guard.runExclusive("job", () -> { throw new IllegalStateException("boom"); }))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("boom");
+        assertThat(guard.runExclusive("job", () -> {})).isTrue();
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> job = (Map<String, Object>) guard.getStats().get("job");
+        assertThat(job.get("failures")).isEqualTo(1L);
+        assertThat(job.get("runs")).isEqualTo(1L);
+        assertThat(job.get("lastFailure")).isEqualTo("IllegalStateException: boom");
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.MedicineRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class StockServiceConcurrencyTest {
+
+    private static final int THREADS = 48;
+    private static final int DISPENSES_PER_THREAD = 20;
+    private static final int INITIAL_STOCK = 1_000;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    private MedicineFixture medicines;
+
+    @BeforeEach
+    void setUp() {
+        medicines = new MedicineFixture(medicineRepository, "Stress");
+    }
+
+    @AfterEach
+    void cleanUp() {
+        medicines.deleteAll();
+    }
+
+    @Test
+    void concurrentDispensingNeverOversellsOrLosesDecrements() throws Exception {
+        Long first = medicines.create(INITIAL_STOCK).getId();
+        Long second = medicines.create(INITIAL_STOCK).getId();
+        AtomicInteger dispensedFirst = new AtomicInteger();
+        AtomicInteger dispensedSecond = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                Random random = new Random(thread);
+                for (int i = 0; i < DISPENSES_PER_THREAD; i++) {
+                    int quantity = 1 + random.nextInt(5);
+                    switch (i % 3) {
+                        case 0 -> dispensedFirst.addAndGet(stockService.dispense(first, quantity, true).getDispensed());
+                        case 1 -> dispensedFirst.addAndGet(stockService.dispense(first, quantity, false).getDispensed());
+                        default -> {
+                            // Multi-medicine prescription, listed in both orders to provoke lock-order problems
+                            List<StockService.StockChange> changes = thread % 2 == 0
+                                ? List.of(new StockService.StockChange(first, quantity), new StockService.StockChange(second, quantity))
+                                : List.of(new StockService.StockChange(second, quantity), new StockService.StockChange(first, quantity));
+                            for (StockService.StockChange change : stockService.dispenseAll(changes, true)) {
+                                (first.equals(change.getMedicineId()) ? dispensedFirst : dispensedSecond).addAndGet(change.getDispensed());
+                            }
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        int remainingFirst = medicineRepository.findQuantityById(first);
+        int remainingSecond = medicineRepository.findQuantityById(second);
+        assertThat(remainingFirst).isGreaterThanOrEqualTo(0);
+        assertThat(remainingSecond).isGreaterThanOrEqualTo(0);
+        assertThat(remainingFirst).isEqualTo(INITIAL_STOCK - dispensedFirst.get());
+        assertThat(remainingSecond).isEqualTo(INITIAL_STOCK - dispensedSecond.get());
+        // Demand exceeds stock for the first medicine, so the test also covers running out
+        assertThat(dispensedFirst.get()).isPositive();
+    }
+}